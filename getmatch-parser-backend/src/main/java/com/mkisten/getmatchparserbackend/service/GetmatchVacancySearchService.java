@@ -18,11 +18,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -51,6 +47,10 @@ public class GetmatchVacancySearchService {
     private final SearchProfileRepository searchProfileRepository;
     private final SearchPageCacheRepository searchPageCacheRepository;
     private final ObjectMapper objectMapper;
+    private final SearchSingleFlight searchSingleFlight;
+    private final SearchPageMemoryCache searchPageMemoryCache;
+    private final PrefetchRateLimiter prefetchRateLimiter;
+    private final CrawlerHttpClient crawlerHttpClient;
 
     @Value("${app.getmatch.public-base-url}")
     private String publicBaseUrl;
@@ -70,18 +70,12 @@ public class GetmatchVacancySearchService {
     @Value("${app.cache.ttl-minutes:30}")
     private int cacheTtlMinutes;
 
-    @Value("${app.prefetch.enabled:true}")
-    private boolean prefetchEnabled;
-
     @Value("${app.prefetch.max-pages:10}")
     private int prefetchMaxPages;
 
     @Value("${app.prefetch.recent-request-window-minutes:1440}")
     private int prefetchRecentWindowMinutes;
 
-    @Value("${app.prefetch.request-delay-ms:500}")
-    private long prefetchRequestDelayMs;
-
     public Map<String, Object> search(MultiValueMap<String, String> params) {
         SearchCriteria criteria = normalizeCriteria(params);
         registerProfile(criteria);
@@ -92,8 +86,7 @@ public class GetmatchVacancySearchService {
         }
 
         try {
-            ApiSearchResult live = crawlApi(criteria);
-            savePageCache(criteria, live);
+            ApiSearchResult live = loadOrCrawl(criteria);
             return toResponse(live);
         } catch (Exception e) {
             log.warn("GetMatch crawl failed for {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
@@ -105,65 +98,80 @@ public class GetmatchVacancySearchService {
         }
     }
 
-    public void prefetchDueProfiles() {
-        if (!prefetchEnabled) {
-            return;
-        }
+    public List<SearchProfile> findPrefetchCandidates() {
         LocalDateTime cutoff = LocalDateTime.now(MOSCOW_ZONE).minusMinutes(prefetchRecentWindowMinutes);
-        List<SearchProfile> profiles = searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
-        for (SearchProfile profile : profiles) {
-            prefetchProfile(profile);
-        }
+        return searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
     }
 
-    @Transactional
-    protected void prefetchProfile(SearchProfile profile) {
+    public PrefetchResult prefetchProfile(SearchProfile profile) {
+        int pagesFetched = 0;
         try {
             SearchCriteria baseCriteria = criteriaFromProfile(profile);
             int discoveredPages = Math.max(1, prefetchMaxPages);
             for (int page = 0; page < Math.min(prefetchMaxPages, discoveredPages); page++) {
                 SearchCriteria pageCriteria = baseCriteria.withPage(page);
-                ApiSearchResult result = crawlApi(pageCriteria);
-                savePageCache(pageCriteria, result);
+                prefetchRateLimiter.acquire(buildSearchUri(pageCriteria).getHost());
+                SearchSingleFlight.Flight<ApiSearchResult> flight = crawlAndCache(pageCriteria);
+                // Страница из чужого полёта не загружалась этим вызовом
+                if (flight.leader()) {
+                    pagesFetched++;
+                }
+                ApiSearchResult result = flight.value();
                 discoveredPages = Math.min(prefetchMaxPages, Math.max(result.pages(), page + 1));
                 if (result.items().isEmpty()) {
                     break;
                 }
-                sleepQuietly(prefetchRequestDelayMs);
             }
-            profile.setLastPrefetchedAt(LocalDateTime.now(MOSCOW_ZONE));
-            profile.setLastSuccessAt(LocalDateTime.now(MOSCOW_ZONE));
-            profile.setFailureCount(0);
-            profile.setLastError(null);
-            searchProfileRepository.save(profile);
+            searchProfileRepository.markPrefetchSucceeded(profile.getCacheKey(), LocalDateTime.now(MOSCOW_ZONE));
+            return new PrefetchResult(pagesFetched, true);
         } catch (Exception e) {
-            profile.setLastPrefetchedAt(LocalDateTime.now(MOSCOW_ZONE));
-            profile.setFailureCount(profile.getFailureCount() + 1);
-            profile.setLastError(limit(e.getMessage(), 1000));
-            searchProfileRepository.save(profile);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            searchProfileRepository.markPrefetchFailed(
+                    profile.getCacheKey(), LocalDateTime.now(MOSCOW_ZONE), limit(e.getMessage(), 1000));
             log.warn("GetMatch background prefetch failed for {}: {}", profile.getCacheKey(), e.getMessage());
+            return new PrefetchResult(pagesFetched, false);
         }
     }
 
-    private ApiSearchResult crawlApi(SearchCriteria criteria) throws IOException, InterruptedException {
-        URI uri = buildSearchUri(criteria);
-        log.info("GetMatch parser request URL: {}", uri);
+    /**
+     * Лидер перечитывает кэш перед загрузкой: предыдущий полёт мог сохранить страницу
+     * уже после проверки в search, и тогда повторно её не загружаем.
+     */
+    private ApiSearchResult loadOrCrawl(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.execute(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()), () -> {
+            ApiSearchResult fresh = loadFreshPageCache(criteria);
+            if (fresh != null) {
+                return fresh;
+            }
+            return crawlAndSave(criteria);
+        });
+    }
 
-        HttpClient client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofMillis(timeoutMs))
-                .build();
+    /**
+     * Фоновое обновление загружает страницу, даже если она ещё свежая.
+     * Если страницу уже загружает другой поток, ждёт его результат, и leader в ответе false.
+     */
+    private SearchSingleFlight.Flight<ApiSearchResult> crawlAndCache(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.executeFlight(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()),
+                () -> crawlAndSave(criteria));
+    }
 
-        HttpRequest request = HttpRequest.newBuilder(uri)
-                .timeout(Duration.ofMillis(timeoutMs))
-                .header("Accept", "application/json")
-                .header("User-Agent", userAgent)
-                .GET()
-                .build();
+    private ApiSearchResult crawlAndSave(SearchCriteria criteria) throws Exception {
+        ApiSearchResult live = crawlApi(criteria);
+        savePageCache(criteria, live);
+        return live;
+    }
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        if (response.statusCode() < 200 || response.statusCode() >= 300) {
-            throw new IOException("GetMatch returned status " + response.statusCode());
-        }
+    private ApiSearchResult crawlApi(SearchCriteria criteria) throws IOException {
+        URI uri = buildSearchUri(criteria);
+        log.info("GetMatch parser request URL: {}", uri);
+
+        CrawlerHttpClient.Page response = crawlerHttpClient.getPage(uri, Map.of(
+                "Accept", "application/json",
+                "User-Agent", userAgent
+        ), timeoutMs);
 
         JsonNode root = objectMapper.readTree(stripBom(response.body()));
         JsonNode meta = root.path("meta");
@@ -401,6 +409,7 @@ public class GetmatchVacancySearchService {
             profile.setAreas(String.join(",", criteria.areas()));
             profile.setEnabled(true);
             profile.setLastRequestedAt(LocalDateTime.now(MOSCOW_ZONE));
+            profile.setRequestCount(profile.getRequestCount() + 1);
             searchProfileRepository.save(profile);
         } catch (Exception e) {
             log.warn("Failed to register GetMatch profile {}: {}", criteria.cacheKey(), e.getMessage());
@@ -408,6 +417,10 @@ public class GetmatchVacancySearchService {
     }
 
     private ApiSearchResult loadFreshPageCache(SearchCriteria criteria) {
+        ApiSearchResult memory = searchPageMemoryCache.getFresh(criteria.cacheKey(), criteria.page(), ApiSearchResult.class);
+        if (memory != null) {
+            return memory;
+        }
         Optional<SearchPageCache> cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page());
         if (cache.isEmpty()) {
             return null;
@@ -428,7 +441,9 @@ public class GetmatchVacancySearchService {
     private ApiSearchResult deserializeCache(SearchPageCache cache, SearchCriteria criteria) {
         try {
             List<Map<String, Object>> items = objectMapper.readValue(cache.getItemsJson(), ITEM_LIST_TYPE);
-            return new ApiSearchResult(cache.getFoundCount(), cache.getPagesCount(), items);
+            ApiSearchResult result = new ApiSearchResult(cache.getFoundCount(), cache.getPagesCount(), items);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, items.size(), cache.getFetchedAt().atZone(MOSCOW_ZONE).toInstant());
+            return result;
         } catch (Exception e) {
             log.warn("Failed to load GetMatch page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
             return null;
@@ -437,6 +452,7 @@ public class GetmatchVacancySearchService {
 
     @Transactional
     protected void savePageCache(SearchCriteria criteria, ApiSearchResult result) {
+        LocalDateTime fetchedAt = LocalDateTime.now(MOSCOW_ZONE);
         try {
             SearchPageCache cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page())
                     .orElseGet(SearchPageCache::new);
@@ -446,10 +462,12 @@ public class GetmatchVacancySearchService {
             cache.setPagesCount(result.pages());
             cache.setItemsJson(objectMapper.writeValueAsString(result.items()));
             cache.setItemCount(result.items().size());
-            cache.setFetchedAt(LocalDateTime.now(MOSCOW_ZONE));
+            cache.setFetchedAt(fetchedAt);
             searchPageCacheRepository.save(cache);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, result.items().size(), fetchedAt.atZone(MOSCOW_ZONE).toInstant());
             searchPageCacheRepository.deleteExpiredByCacheKey(criteria.cacheKey(), LocalDateTime.now(MOSCOW_ZONE).minusDays(2));
         } catch (Exception e) {
+            searchPageMemoryCache.invalidate(criteria.cacheKey(), criteria.page());
             log.warn("Failed to save GetMatch page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
         }
     }
@@ -668,17 +686,6 @@ public class GetmatchVacancySearchService {
         return body != null && !body.isEmpty() && body.charAt(0) == '\uFEFF' ? body.substring(1) : body;
     }
 
-    private void sleepQuietly(long millis) {
-        if (millis <= 0) {
-            return;
-        }
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private String safe(String value) {
         return value == null ? "" : value;
     }
@@ -705,4 +712,7 @@ public class GetmatchVacancySearchService {
             return new ApiSearchResult(0, page + 1, List.of());
         }
     }
+
+    public record PrefetchResult(int pagesFetched, boolean success) {
+    }
 }
@@ -0,0 +1,81 @@
+package com.mkisten.getmatchparserbackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Схлопывает одновременные загрузки одной и той же страницы поиска:
+ * первый поток (лидер) выполняет загрузку, остальные ждут его результат.
+ */
+@Component
+public class SearchSingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderRequests;
+    private final Counter coalescedRequests;
+
+    public SearchSingleFlight(MeterRegistry meterRegistry) {
+        this.leaderRequests = Counter.builder("parser.search.singleflight")
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.coalescedRequests = Counter.builder("parser.search.singleflight")
+                .tag("role", "coalesced")
+                .register(meterRegistry);
+        meterRegistry.gauge("parser.search.singleflight.in_flight", inFlight, Map::size);
+    }
+
+    public static String pageKey(String cacheKey, int page) {
+        return cacheKey + "#page=" + page;
+    }
+
+    public <T> T execute(String key, Callable<T> loader) throws Exception {
+        return executeFlight(key, loader).value();
+    }
+
+    /**
+     * Как execute, но сообщает, выполнял ли загрузку сам вызывающий поток.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flight<T> executeFlight(String key, Callable<T> loader) throws Exception {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            coalescedRequests.increment();
+            try {
+                return new Flight<>((T) existing.join(), false);
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        leaderRequests.increment();
+        try {
+            T result = loader.call();
+            own.complete(result);
+            return new Flight<>(result, true);
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private Exception unwrap(CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return cause instanceof Exception exception ? exception : e;
+    }
+
+    public record Flight<T>(T value, boolean leader) {
+    }
+}
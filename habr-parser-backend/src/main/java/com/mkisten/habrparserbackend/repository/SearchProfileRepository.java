@@ -2,6 +2,10 @@ package com.mkisten.habrparserbackend.repository;
 
 import com.mkisten.habrparserbackend.entity.SearchProfile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -12,4 +16,30 @@ public interface SearchProfileRepository extends JpaRepository<SearchProfile, Lo
     Optional<SearchProfile> findByCacheKey(String cacheKey);
 
     List<SearchProfile> findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(LocalDateTime cutoff);
+
+    /**
+     * Отмечает успешный фоновый прогрев, не трогая счётчики пользовательских запросов.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE SearchProfile p
+            SET p.lastPrefetchedAt = :prefetchedAt, p.lastSuccessAt = :prefetchedAt, p.failureCount = 0, p.lastError = NULL
+            WHERE p.cacheKey = :cacheKey
+            """)
+    int markPrefetchSucceeded(@Param("cacheKey") String cacheKey, @Param("prefetchedAt") LocalDateTime prefetchedAt);
+
+    /**
+     * Отмечает неудачный фоновый прогрев; failureCount увеличивается в базе, а не по устаревшему снимку профиля.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE SearchProfile p
+            SET p.lastPrefetchedAt = :prefetchedAt, p.failureCount = p.failureCount + 1, p.lastError = :error
+            WHERE p.cacheKey = :cacheKey
+            """)
+    int markPrefetchFailed(@Param("cacheKey") String cacheKey,
+                           @Param("prefetchedAt") LocalDateTime prefetchedAt,
+                           @Param("error") String error);
 }
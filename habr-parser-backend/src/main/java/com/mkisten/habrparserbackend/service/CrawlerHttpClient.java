@@ -0,0 +1,189 @@
+package com.mkisten.habrparserbackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Общий HTTP-клиент парсера: один пул keep-alive соединений на приложение, HTTP/2 там,
+ * где его поддерживает сайт, распаковка gzip/deflate и ограничение одновременных запросов к хосту.
+ */
+@Component
+public class CrawlerHttpClient {
+
+    private final HttpClient client;
+    private final MeterRegistry meterRegistry;
+    private final int maxConnectionsPerHost;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public CrawlerHttpClient(MeterRegistry meterRegistry,
+                             @Value("${app.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                             @Value("${app.http.max-connections-per-host:8}") int maxConnectionsPerHost,
+                             @Value("${app.http.http2-enabled:true}") boolean http2Enabled) {
+        this.meterRegistry = meterRegistry;
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        this.client = HttpClient.newBuilder()
+                .version(http2Enabled ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(Math.max(1, connectTimeoutMs)))
+                .build();
+        meterRegistry.gauge("parser.http.in_flight", inFlight);
+    }
+
+    /**
+     * Загружает HTML-страницу; тело ответа читается целиком в пределах того же таймаута.
+     */
+    public Document getDocument(URI uri, Map<String, String> headers, int timeoutMs) throws IOException {
+        return execute(uri, headers, timeoutMs, (body, charset, finalUri) ->
+                Jsoup.parse(body, charset == null ? null : charset.name(), finalUri.toString()));
+    }
+
+    /**
+     * Загружает ответ целиком как строку вместе с итоговым адресом после редиректов.
+     */
+    public Page getPage(URI uri, Map<String, String> headers, int timeoutMs) throws IOException {
+        return execute(uri, headers, timeoutMs, (body, charset, finalUri) ->
+                new Page(finalUri, new String(body.readAllBytes(), charset == null ? StandardCharsets.UTF_8 : charset)));
+    }
+
+    private <T> T execute(URI uri, Map<String, String> headers, int timeoutMs, BodyReader<T> reader) throws IOException {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        Semaphore permits = hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnectionsPerHost, true));
+        Duration timeout = Duration.ofMillis(Math.max(1, timeoutMs));
+
+        long waitStartedAt = System.nanoTime();
+        acquire(permits, host, timeout);
+        long startedAt = System.nanoTime();
+        Timer.builder("parser.http.host.wait")
+                .tag("host", host)
+                .register(meterRegistry)
+                .record(startedAt - waitStartedAt, TimeUnit.NANOSECONDS);
+
+        String status = "IO_ERROR";
+        String protocol = "UNKNOWN";
+        inFlight.incrementAndGet();
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .timeout(timeout)
+                    .header("Accept-Encoding", "gzip, deflate")
+                    .GET();
+            headers.forEach(request::header);
+
+            // Тело читается в массив: таймаут запроса покрывает только заголовки, а ждём мы весь обмен
+            HttpResponse<byte[]> response = await(
+                    client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()), uri, timeout);
+            status = String.valueOf(response.statusCode());
+            protocol = response.version().name();
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new IOException("HTTP " + response.statusCode() + " fetching " + response.uri());
+            }
+            try (InputStream body = decode(response)) {
+                return reader.read(body, charset(response), response.uri());
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+            // Доля HTTP_2 в тегах — это и доля запросов, ушедших в уже открытое мультиплексированное соединение
+            Timer.builder("parser.http.requests")
+                    .tag("host", host)
+                    .tag("status", status)
+                    .tag("protocol", protocol)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void acquire(Semaphore permits, String host, Duration timeout) throws IOException {
+        try {
+            if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new HttpTimeoutException("Timed out waiting for a free connection to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + host);
+        }
+    }
+
+    /**
+     * Ждёт заголовки и тело не дольше timeout. Зависший обмен отменяется, чтобы не держать поток и разрешение на хост.
+     */
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> exchange, URI uri, Duration timeout)
+            throws IOException {
+        try {
+            return exchange.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            exchange.cancel(true);
+            throw new HttpTimeoutException("Timed out reading response from " + uri);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Failed to fetch " + uri, e.getCause());
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + uri);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<byte[]> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        InputStream body = new ByteArrayInputStream(response.body());
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    private static Charset charset(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        for (String part : contentType.split(";")) {
+            String param = part.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                try {
+                    return Charset.forName(param.substring("charset=".length()).replace("\"", "").trim());
+                } catch (IllegalArgumentException ignored) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream body, Charset charset, URI finalUri) throws IOException;
+    }
+
+    public record Page(URI uri, String body) {
+    }
+}
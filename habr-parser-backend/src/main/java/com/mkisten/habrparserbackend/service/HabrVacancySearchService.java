@@ -11,7 +11,6 @@ import com.mkisten.habrparserbackend.repository.SearchPageCacheRepository;
 import com.mkisten.habrparserbackend.repository.SearchProfileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.springframework.beans.factory.annotation.Value;
@@ -56,6 +55,10 @@ public class HabrVacancySearchService {
     private final SearchProfileRepository searchProfileRepository;
     private final SearchPageCacheRepository searchPageCacheRepository;
     private final ObjectMapper objectMapper;
+    private final SearchSingleFlight searchSingleFlight;
+    private final SearchPageMemoryCache searchPageMemoryCache;
+    private final PrefetchRateLimiter prefetchRateLimiter;
+    private final CrawlerHttpClient crawlerHttpClient;
 
     @Value("${app.habr.base-url}")
     private String baseUrl;
@@ -72,18 +75,12 @@ public class HabrVacancySearchService {
     @Value("${app.cache.ttl-minutes:30}")
     private int cacheTtlMinutes;
 
-    @Value("${app.prefetch.enabled:true}")
-    private boolean prefetchEnabled;
-
     @Value("${app.prefetch.max-pages:10}")
     private int prefetchMaxPages;
 
     @Value("${app.prefetch.recent-request-window-minutes:1440}")
     private int prefetchRecentWindowMinutes;
 
-    @Value("${app.prefetch.request-delay-ms:500}")
-    private long prefetchRequestDelayMs;
-
     public Map<String, Object> search(MultiValueMap<String, String> params) {
         SearchCriteria criteria = normalizeCriteria(params);
         registerProfile(criteria);
@@ -94,8 +91,7 @@ public class HabrVacancySearchService {
         }
 
         try {
-            ApiSearchResult live = crawlApi(criteria);
-            savePageCache(criteria, live);
+            ApiSearchResult live = loadOrCrawl(criteria);
             return toResponse(live);
         } catch (Exception e) {
             log.warn("Habr Career crawl failed, returning cache fallback: {}", e.getMessage());
@@ -107,47 +103,73 @@ public class HabrVacancySearchService {
         }
     }
 
-    public void prefetchDueProfiles() {
-        if (!prefetchEnabled) {
-            return;
-        }
+    public List<SearchProfile> findPrefetchCandidates() {
         LocalDateTime cutoff = LocalDateTime.now(HABR_ZONE).minusMinutes(prefetchRecentWindowMinutes);
-        List<SearchProfile> profiles = searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
-        for (SearchProfile profile : profiles) {
-            prefetchProfile(profile);
-        }
+        return searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
     }
 
-    @Transactional
-    protected void prefetchProfile(SearchProfile profile) {
+    public PrefetchResult prefetchProfile(SearchProfile profile) {
+        int pagesFetched = 0;
         try {
             SearchCriteria baseCriteria = criteriaFromProfile(profile);
             int maxPages = Math.max(1, prefetchMaxPages);
             int discoveredPages = maxPages;
             for (int page = 0; page < Math.min(maxPages, discoveredPages); page++) {
                 SearchCriteria pageCriteria = baseCriteria.withPage(page);
-                ApiSearchResult result = crawlApi(pageCriteria);
-                savePageCache(pageCriteria, result);
+                prefetchRateLimiter.acquire(buildSearchUri(pageCriteria).getHost());
+                SearchSingleFlight.Flight<ApiSearchResult> flight = crawlAndCache(pageCriteria);
+                // Страница из чужого полёта не загружалась этим вызовом
+                if (flight.leader()) {
+                    pagesFetched++;
+                }
+                ApiSearchResult result = flight.value();
                 discoveredPages = Math.min(maxPages, Math.max(result.pages(), page + 1));
                 if (result.items().isEmpty()) {
                     break;
                 }
-                sleepQuietly(prefetchRequestDelayMs);
             }
-            profile.setLastPrefetchedAt(LocalDateTime.now(HABR_ZONE));
-            profile.setLastSuccessAt(LocalDateTime.now(HABR_ZONE));
-            profile.setFailureCount(0);
-            profile.setLastError(null);
-            searchProfileRepository.save(profile);
+            searchProfileRepository.markPrefetchSucceeded(profile.getCacheKey(), LocalDateTime.now(HABR_ZONE));
+            return new PrefetchResult(pagesFetched, true);
         } catch (Exception e) {
-            profile.setLastPrefetchedAt(LocalDateTime.now(HABR_ZONE));
-            profile.setFailureCount(profile.getFailureCount() + 1);
-            profile.setLastError(limit(e.getMessage(), 1000));
-            searchProfileRepository.save(profile);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            searchProfileRepository.markPrefetchFailed(
+                    profile.getCacheKey(), LocalDateTime.now(HABR_ZONE), limit(e.getMessage(), 1000));
             log.warn("Habr Career background prefetch failed for {}: {}", profile.getCacheKey(), e.getMessage());
+            return new PrefetchResult(pagesFetched, false);
         }
     }
 
+    /**
+     * Лидер перечитывает кэш перед загрузкой: предыдущий полёт мог сохранить страницу
+     * уже после проверки в search, и тогда повторно её не загружаем.
+     */
+    private ApiSearchResult loadOrCrawl(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.execute(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()), () -> {
+            ApiSearchResult fresh = loadFreshPageCache(criteria);
+            if (fresh != null) {
+                return fresh;
+            }
+            return crawlAndSave(criteria);
+        });
+    }
+
+    /**
+     * Фоновое обновление загружает страницу, даже если она ещё свежая.
+     * Если страницу уже загружает другой поток, ждёт его результат, и leader в ответе false.
+     */
+    private SearchSingleFlight.Flight<ApiSearchResult> crawlAndCache(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.executeFlight(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()),
+                () -> crawlAndSave(criteria));
+    }
+
+    private ApiSearchResult crawlAndSave(SearchCriteria criteria) throws Exception {
+        ApiSearchResult live = crawlApi(criteria);
+        savePageCache(criteria, live);
+        return live;
+    }
+
     private ApiSearchResult crawlApi(SearchCriteria criteria) throws IOException {
         SearchResult live = crawl(criteria);
         List<Map<String, Object>> items = live.items().stream().map(this::toApiItem).toList();
@@ -159,14 +181,12 @@ public class HabrVacancySearchService {
         URI uri = buildSearchUri(criteria);
         log.info("Habr Career parser request URL: {}", uri);
 
-        Document document = Jsoup.connect(uri.toString())
-                .userAgent(userAgent)
-                .referrer(baseUrl)
-                .header("Accept-Language", "ru-RU,ru;q=0.9,en-US;q=0.8,en;q=0.7")
-                .header("Accept", "text/html,application/xhtml+xml")
-                .timeout(timeoutMs)
-                .followRedirects(true)
-                .get();
+        Document document = crawlerHttpClient.getDocument(uri, Map.of(
+                "User-Agent", userAgent,
+                "Referer", baseUrl,
+                "Accept-Language", "ru-RU,ru;q=0.9,en-US;q=0.8,en;q=0.7",
+                "Accept", "text/html,application/xhtml+xml"
+        ), timeoutMs);
 
         JsonNode state = extractState(document);
         JsonNode vacanciesNode = state.path("vacancies");
@@ -275,6 +295,7 @@ public class HabrVacancySearchService {
             profile.setAreas(String.join(",", criteria.areas()));
             profile.setEnabled(true);
             profile.setLastRequestedAt(LocalDateTime.now(HABR_ZONE));
+            profile.setRequestCount(profile.getRequestCount() + 1);
             searchProfileRepository.save(profile);
         } catch (Exception e) {
             log.warn("Failed to register Habr parser profile {}: {}", criteria.cacheKey(), e.getMessage());
@@ -282,26 +303,27 @@ public class HabrVacancySearchService {
     }
 
     private ApiSearchResult loadFreshPageCache(SearchCriteria criteria) {
-        ApiSearchResult cached = loadLatestPageCache(criteria);
-        if (cached == null) {
-            return null;
-        }
-        LocalDateTime cutoff = LocalDateTime.now(HABR_ZONE).minusMinutes(cacheTtlMinutes);
-        Optional<SearchPageCache> pageCache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page());
-        if (pageCache.isPresent() && !pageCache.get().getFetchedAt().isBefore(cutoff)) {
-            return cached;
+        ApiSearchResult memory = searchPageMemoryCache.getFresh(criteria.cacheKey(), criteria.page(), ApiSearchResult.class);
+        if (memory != null) {
+            return memory;
         }
-        return null;
+        return loadPageCache(criteria, LocalDateTime.now(HABR_ZONE).minusMinutes(cacheTtlMinutes));
     }
 
     private ApiSearchResult loadLatestPageCache(SearchCriteria criteria) {
+        return loadPageCache(criteria, null);
+    }
+
+    private ApiSearchResult loadPageCache(SearchCriteria criteria, LocalDateTime notBefore) {
         try {
             Optional<SearchPageCache> cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page());
-            if (cache.isEmpty()) {
+            if (cache.isEmpty() || (notBefore != null && cache.get().getFetchedAt().isBefore(notBefore))) {
                 return null;
             }
             List<Map<String, Object>> items = objectMapper.readValue(cache.get().getItemsJson(), ITEM_LIST_TYPE);
-            return new ApiSearchResult(cache.get().getFoundCount(), cache.get().getPagesCount(), items);
+            ApiSearchResult result = new ApiSearchResult(cache.get().getFoundCount(), cache.get().getPagesCount(), items);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, items.size(), cache.get().getFetchedAt().atZone(HABR_ZONE).toInstant());
+            return result;
         } catch (Exception e) {
             log.warn("Failed to load Habr page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
             return null;
@@ -310,6 +332,7 @@ public class HabrVacancySearchService {
 
     @Transactional
     protected void savePageCache(SearchCriteria criteria, ApiSearchResult result) {
+        LocalDateTime fetchedAt = LocalDateTime.now(HABR_ZONE);
         try {
             SearchPageCache cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page()).orElseGet(SearchPageCache::new);
             cache.setCacheKey(criteria.cacheKey());
@@ -318,10 +341,12 @@ public class HabrVacancySearchService {
             cache.setPagesCount(result.pages());
             cache.setItemsJson(objectMapper.writeValueAsString(result.items()));
             cache.setItemCount(result.items().size());
-            cache.setFetchedAt(LocalDateTime.now(HABR_ZONE));
+            cache.setFetchedAt(fetchedAt);
             searchPageCacheRepository.save(cache);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, result.items().size(), fetchedAt.atZone(HABR_ZONE).toInstant());
             searchPageCacheRepository.deleteExpiredByCacheKey(criteria.cacheKey(), LocalDateTime.now(HABR_ZONE).minus(Duration.ofDays(2)));
         } catch (Exception e) {
+            searchPageMemoryCache.invalidate(criteria.cacheKey(), criteria.page());
             log.warn("Failed to save Habr page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
         }
     }
@@ -573,17 +598,6 @@ public class HabrVacancySearchService {
         return values.stream().map(this::normalizeBlank).filter(Objects::nonNull).distinct().toList();
     }
 
-    private void sleepQuietly(long millis) {
-        if (millis <= 0) {
-            return;
-        }
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private String text(JsonNode node) {
         if (node == null || node.isMissingNode() || node.isNull()) {
             return null;
@@ -645,4 +659,7 @@ public class HabrVacancySearchService {
             return new SearchCriteria(text, areas, nextPage, requestedPerPage, onlyWithSalary, period, schedules, workFormats, cacheKey, paramsForStorage);
         }
     }
-}
\ No newline at end of file
+
+    public record PrefetchResult(int pagesFetched, boolean success) {
+    }
+}
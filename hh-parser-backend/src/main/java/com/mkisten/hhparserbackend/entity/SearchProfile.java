@@ -41,6 +41,9 @@ public class SearchProfile {
     @Column(name = "last_requested_at", nullable = false)
     private LocalDateTime lastRequestedAt;
 
+    @Column(name = "request_count", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long requestCount;
+
     @Column(name = "last_prefetched_at")
     private LocalDateTime lastPrefetchedAt;
 
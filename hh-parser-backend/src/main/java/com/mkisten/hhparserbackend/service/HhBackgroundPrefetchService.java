@@ -1,19 +1,153 @@
 package com.mkisten.hhparserbackend.service;
 
+import com.mkisten.hhparserbackend.entity.SearchProfile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class HhBackgroundPrefetchService {
 
+    private static final ZoneId HH_ZONE = ZoneId.of("Europe/Moscow");
+
     private final HhVacancySearchService hhVacancySearchService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.prefetch.enabled:true}")
+    private boolean prefetchEnabled;
+
+    @Value("${app.prefetch.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.cache.ttl-minutes:30}")
+    private int cacheTtlMinutes;
+
+    private final AtomicLong lastCycleProfiles = new AtomicLong();
+    private final AtomicLong lastCyclePages = new AtomicLong();
+    private final AtomicLong lastCycleFailures = new AtomicLong();
+    private final AtomicLong lastCycleMaxLagSeconds = new AtomicLong();
+    private ExecutorService prefetchPool;
+    private Timer cycleTimer;
+
+    @PostConstruct
+    public void startPool() {
+        int threads = Math.max(1, concurrency);
+        AtomicInteger index = new AtomicInteger(1);
+        prefetchPool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task);
+            thread.setName("hh-prefetch-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge("parser.prefetch.cycle.profiles", lastCycleProfiles);
+        meterRegistry.gauge("parser.prefetch.cycle.pages", lastCyclePages);
+        meterRegistry.gauge("parser.prefetch.cycle.failures", lastCycleFailures);
+        meterRegistry.gauge("parser.prefetch.cycle.max_lag_seconds", lastCycleMaxLagSeconds);
+        cycleTimer = meterRegistry.timer("parser.prefetch.cycle.duration");
+    }
+
+    @PreDestroy
+    public void stopPool() {
+        if (prefetchPool != null) {
+            prefetchPool.shutdownNow();
+        }
+    }
 
     @Scheduled(fixedDelayString = "${app.prefetch.fixed-delay-ms:300000}", initialDelayString = "${app.prefetch.initial-delay-ms:120000}")
     public void prefetchDueProfiles() {
-        hhVacancySearchService.prefetchDueProfiles();
+        if (!prefetchEnabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now(HH_ZONE);
+        Duration ttl = Duration.ofMinutes(cacheTtlMinutes);
+        LocalDateTime refreshCutoff = now.minus(ttl.dividedBy(2));
+
+        List<SearchProfile> due = hhVacancySearchService.findPrefetchCandidates().stream()
+                .filter(profile -> profile.getLastPrefetchedAt() == null || profile.getLastPrefetchedAt().isBefore(refreshCutoff))
+                .sorted(Comparator.comparingDouble((SearchProfile profile) -> priority(profile, now, ttl)).reversed())
+                .toList();
+        long maxLagSeconds = due.stream().mapToLong(profile -> lagBehindTtl(profile, now, ttl).toSeconds()).max().orElse(0);
+
+        List<Callable<HhVacancySearchService.PrefetchResult>> tasks = new ArrayList<>(due.size());
+        for (SearchProfile profile : due) {
+            tasks.add(() -> hhVacancySearchService.prefetchProfile(profile));
+        }
+
+        List<Future<HhVacancySearchService.PrefetchResult>> futures;
+        try {
+            futures = prefetchPool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        int profilesDone = 0;
+        int pagesFetched = 0;
+        int failures = 0;
+        for (Future<HhVacancySearchService.PrefetchResult> future : futures) {
+            profilesDone++;
+            try {
+                HhVacancySearchService.PrefetchResult result = future.get();
+                pagesFetched += result.pagesFetched();
+                if (!result.success()) {
+                    failures++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failures++;
+                log.warn("Background prefetch task failed: {}", e.getMessage());
+            }
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        cycleTimer.record(elapsed);
+        lastCycleProfiles.set(profilesDone);
+        lastCyclePages.set(pagesFetched);
+        lastCycleFailures.set(failures);
+        lastCycleMaxLagSeconds.set(maxLagSeconds);
+        log.info("Background prefetch cycle: profiles {}/{}, pages {}, failures {}, max lag behind TTL {}s, took {} ms",
+                profilesDone, due.size(), pagesFetched, failures, maxLagSeconds, elapsed.toMillis());
+    }
+
+    private double priority(SearchProfile profile, LocalDateTime now, Duration ttl) {
+        long staleMinutes = Math.max(Duration.between(refreshedAt(profile, ttl), now).toMinutes(), 1);
+        return staleMinutes * (1 + Math.log1p(profile.getRequestCount()));
+    }
+
+    private Duration lagBehindTtl(SearchProfile profile, LocalDateTime now, Duration ttl) {
+        Duration lag = Duration.between(refreshedAt(profile, ttl).plus(ttl), now);
+        return lag.isNegative() ? Duration.ZERO : lag;
+    }
+
+    private LocalDateTime refreshedAt(SearchProfile profile, Duration ttl) {
+        if (profile.getLastSuccessAt() != null) {
+            return profile.getLastSuccessAt();
+        }
+        return profile.getLastRequestedAt().minus(ttl);
     }
 }
@@ -0,0 +1,60 @@
+package com.mkisten.hhparserbackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий для всех воркеров фонового прогрева token bucket на каждый хост.
+ * Средний интервал между запросами к хосту задаёт app.prefetch.request-delay-ms.
+ */
+@Component
+public class PrefetchRateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public PrefetchRateLimiter(@Value("${app.prefetch.request-delay-ms:250}") long requestDelayMs,
+                               @Value("${app.prefetch.burst:1}") int burst) {
+        this.permitsPerNano = requestDelayMs > 0 ? 1.0 / TimeUnit.MILLISECONDS.toNanos(requestDelayMs) : 0;
+        this.burst = Math.max(burst, 1);
+    }
+
+    public void acquire(String host) throws InterruptedException {
+        if (permitsPerNano <= 0) {
+            return;
+        }
+        String key = host == null ? "" : host;
+        long waitNanos = buckets.computeIfAbsent(key, ignored -> new TokenBucket(permitsPerNano, burst)).reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static final class TokenBucket {
+
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double permitsPerNano, double capacity) {
+            this.permitsPerNano = permitsPerNano;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mkisten.hhparserbackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * L1-кэш уже десериализованных страниц поиска перед search_page_cache.
+ * Ограничен суммарным числом вакансий, записи живут не дольше app.cache.ttl-minutes.
+ */
+@Component
+public class SearchPageMemoryCache {
+
+    private final Duration ttl;
+    private final long maxItems;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Counter hits;
+    private final Counter misses;
+    private long totalWeight;
+
+    public SearchPageMemoryCache(MeterRegistry meterRegistry,
+                                 @Value("${app.cache.ttl-minutes:30}") int ttlMinutes,
+                                 @Value("${app.cache.memory-max-items:10000}") long maxItems) {
+        this.ttl = Duration.ofMinutes(Math.max(ttlMinutes, 0));
+        this.maxItems = Math.max(maxItems, 0);
+        this.hits = Counter.builder("parser.search.page_cache.l1").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("parser.search.page_cache.l1").tag("result", "miss").register(meterRegistry);
+        meterRegistry.gauge("parser.search.page_cache.l1.items", this, SearchPageMemoryCache::weight);
+    }
+
+    public <T> T getFresh(String cacheKey, int page, Class<T> type) {
+        String key = key(cacheKey, page);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt().isAfter(Instant.now()) && type.isInstance(entry.value())) {
+                hits.increment();
+                return type.cast(entry.value());
+            }
+            if (entry != null) {
+                remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String cacheKey, int page, Object value, int itemCount, Instant fetchedAt) {
+        Instant expiresAt = fetchedAt.plus(ttl);
+        long weight = Math.max(itemCount, 0) + 1L;
+        String key = key(cacheKey, page);
+        synchronized (this) {
+            remove(key);
+            if (weight > maxItems || !expiresAt.isAfter(Instant.now())) {
+                return;
+            }
+            entries.put(key, new Entry(value, weight, expiresAt));
+            totalWeight += weight;
+            evictOverflow();
+        }
+    }
+
+    public synchronized void invalidate(String cacheKey, int page) {
+        remove(key(cacheKey, page));
+    }
+
+    private synchronized double weight() {
+        return totalWeight;
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalWeight > maxItems && iterator.hasNext()) {
+            totalWeight -= iterator.next().getValue().weight();
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight();
+        }
+    }
+
+    private static String key(String cacheKey, int page) {
+        return cacheKey + "#page=" + page;
+    }
+
+    private record Entry(Object value, long weight, Instant expiresAt) {
+    }
+}
@@ -52,6 +52,7 @@ public class SecurityConfig {
                                 "/api/auth/telegram/register",
                                 "/api/auth/credentials/availability",
                                 "/api/telegram-auth/**",
+                                "/api/internal/**",
                                 "/api/test/**", "/health/**", "/actuator/**").permitAll()
 
                         // Admin endpoints - только для админов
@@ -5,6 +5,7 @@ import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
 import com.mkisten.subscriptionbackend.entity.User;
 import com.mkisten.subscriptionbackend.entity.UserRole;
 import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.service.AdminStatsService;
 import com.mkisten.subscriptionbackend.service.PaymentService;
 import com.mkisten.subscriptionbackend.service.TelegramAuthService;
 import com.mkisten.subscriptionbackend.service.UserService;
@@ -41,6 +42,7 @@ public class AdminController {
     private final UserService userService;
     private final TelegramAuthService telegramAuthService;
     private final PaymentService paymentService;
+    private final AdminStatsService adminStatsService;
 
     // ========== УПРАВЛЕНИЕ ПОЛЬЗОВАТЕЛЯМИ ==========
 
@@ -271,41 +273,8 @@ public class AdminController {
     public ResponseEntity<?> getStats(@RequestParam(required = false) ServiceCode service) {
         try {
             ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
-            List<UserServiceSubscription> allSubscriptions = userService.getAllUserServices(serviceCode);
-            List<UserServiceSubscription> activeSubscriptions = userService.getActiveSubscriptions(serviceCode);
-            List<UserServiceSubscription> expiredSubscriptions = userService.getExpiredSubscriptions(serviceCode);
-
-            // Получаем статистику платежей
-            var paymentStats = paymentService.getPaymentStats();
-
-            // Считаем распределение по планам
-            Map<SubscriptionPlan, Long> planDistribution = allSubscriptions.stream()
-                    .collect(Collectors.groupingBy(UserServiceSubscription::getSubscriptionPlan, Collectors.counting()));
-
-            // Считаем распределение по ролям
-            Map<UserRole, Long> roleDistribution = allSubscriptions.stream()
-                    .collect(Collectors.groupingBy(sub -> sub.getUser().getRole(), Collectors.counting()));
-
-            // Считаем новых пользователей за последние 30 дней
-            long newUsersLast30Days = allSubscriptions.stream()
-                    .filter(sub -> sub.getUser().getCreatedAt().isAfter(LocalDateTime.now().minusDays(30)))
-                    .count();
-
-            ExtendedStatsResponse stats = new ExtendedStatsResponse(
-                    allSubscriptions.size(),
-                    activeSubscriptions.size(),
-                    expiredSubscriptions.size(),
-                    allSubscriptions.stream().filter(UserServiceSubscription::getTrialUsed).count(),
-                    allSubscriptions.stream().filter(sub -> !sub.getTrialUsed()).count(),
-                    paymentStats.getTotalPayments(),
-                    paymentStats.getPendingPayments(),
-                    paymentStats.getVerifiedPayments(),
-                    paymentStats.getRejectedPayments(),
-                    paymentStats.getTotalRevenue(),
-                    newUsersLast30Days,
-                    planDistribution,
-                    roleDistribution
-            );
+            // Снимок считается агрегатными запросами и обновляется в фоне
+            ExtendedStatsResponse stats = adminStatsService.getStats(serviceCode);
 
             return ResponseEntity.ok(stats);
         } catch (Exception e) {
@@ -481,6 +450,7 @@ public class AdminController {
             @Schema(description = "Общий доход") double totalRevenue,
             @Schema(description = "Новых пользователей за 30 дней") long newUsersLast30Days,
             @Schema(description = "Распределение по планам") Map<SubscriptionPlan, Long> planDistribution,
-            @Schema(description = "Распределение по ролям") Map<UserRole, Long> roleDistribution
+            @Schema(description = "Распределение по ролям") Map<UserRole, Long> roleDistribution,
+            @Schema(description = "Время расчёта статистики") LocalDateTime generatedAt
     ) {}
 }
@@ -1,6 +1,10 @@
 package com.mkisten.subscriptionbackend.controller;
 
+import com.mkisten.subscriptionbackend.entity.BroadcastJob;
 import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.User;
+import com.mkisten.subscriptionbackend.service.BroadcastService;
+import com.mkisten.subscriptionbackend.service.UserExportService;
 import com.mkisten.subscriptionbackend.service.TelegramBotService;
 import com.mkisten.subscriptionbackend.service.UserService;
 import com.mkisten.subscriptionbackend.service.BotMessageService;
@@ -10,12 +14,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -28,6 +34,8 @@ public class BotManagementController {
     private final TelegramBotService telegramBotService;
     private final UserService userService;
     private final BotMessageService botMessageService;
+    private final BroadcastService broadcastService;
+    private final UserExportService userExportService;
 
     @Operation(summary = "Получить статистику бота")
     @GetMapping("/stats")
@@ -57,9 +65,11 @@ public class BotManagementController {
         }
     }
 
-    @Operation(summary = "Отправить рассылку всем пользователям")
+    @Operation(summary = "Запустить рассылку всем пользователям",
+            description = "Рассылка выполняется в фоне, прогресс доступен по /broadcast/{jobId}")
     @PostMapping("/broadcast")
-    public ResponseEntity<?> sendBroadcast(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> sendBroadcast(@RequestBody Map<String, String> request,
+                                           @AuthenticationPrincipal User currentUser) {
         try {
             String message = request.get("message");
             if (message == null || message.trim().isEmpty()) {
@@ -68,33 +78,12 @@ public class BotManagementController {
                 ));
             }
 
-            var allSubscriptions = userService.getAllUserServices(ServiceCode.VACANCY);
-            int successCount = 0;
-            int failCount = 0;
-
-            // Отправляем сообщения асинхронно
-            for (var subscription : allSubscriptions) {
-                var user = subscription.getUser();
-                try {
-                    telegramBotService.sendTextMessageToUser(user.getTelegramId(), message);
-                    successCount++;
-
-                    // Небольшая задержка чтобы не спамить Telegram API
-                    Thread.sleep(100);
-                } catch (Exception e) {
-                    log.error("Failed to send broadcast to user {}", user.getTelegramId(), e);
-                    failCount++;
-                }
-            }
+            String createdBy = currentUser != null ? currentUser.getUsername() : null;
+            BroadcastJob job = broadcastService.createJob(message, ServiceCode.VACANCY, createdBy);
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("message", "Broadcast completed");
-            result.put("totalUsers", allSubscriptions.size());
-            result.put("successCount", successCount);
-            result.put("failCount", failCount);
-            result.put("sentAt", LocalDateTime.now());
-
-            return ResponseEntity.ok(result);
+            Map<String, Object> result = broadcastJobBody(job);
+            result.put("message", "Broadcast started");
+            return ResponseEntity.accepted().body(result);
 
         } catch (Exception e) {
             log.error("Error sending broadcast", e);
@@ -105,6 +94,52 @@ public class BotManagementController {
         }
     }
 
+    @Operation(summary = "Последние рассылки")
+    @GetMapping("/broadcast")
+    public ResponseEntity<?> getBroadcasts() {
+        return ResponseEntity.ok(broadcastService.getRecentJobs().stream()
+                .map(this::broadcastJobBody)
+                .toList());
+    }
+
+    @Operation(summary = "Статус и прогресс рассылки")
+    @GetMapping("/broadcast/{jobId}")
+    public ResponseEntity<?> getBroadcast(@PathVariable Long jobId) {
+        return broadcastService.getJob(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(broadcastJobBody(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Получатели, которым не удалось отправить рассылку")
+    @GetMapping("/broadcast/{jobId}/failures")
+    public ResponseEntity<?> getBroadcastFailures(@PathVariable Long jobId,
+                                                  @RequestParam(required = false) Long afterId,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        if (broadcastService.getJob(jobId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        List<Map<String, Object>> failures = broadcastService.getFailures(jobId, afterId, limit).stream()
+                .map(recipient -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("id", recipient.getId());
+                    item.put("telegramId", recipient.getTelegramId());
+                    item.put("attempts", recipient.getAttempts());
+                    item.put("error", recipient.getError());
+                    item.put("processedAt", recipient.getProcessedAt());
+                    return item;
+                })
+                .toList();
+        return ResponseEntity.ok(failures);
+    }
+
+    @Operation(summary = "Остановить рассылку")
+    @PostMapping("/broadcast/{jobId}/cancel")
+    public ResponseEntity<?> cancelBroadcast(@PathVariable Long jobId) {
+        return broadcastService.cancel(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(broadcastJobBody(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @Operation(summary = "Отправить тестовое сообщение")
     @PostMapping("/test-message")
     public ResponseEntity<?> sendTestMessage(@RequestBody Map<String, String> request) {
@@ -185,44 +220,13 @@ public class BotManagementController {
 
     @Operation(summary = "Экспорт пользователей в CSV")
     @GetMapping(value = "/export-users", produces = "text/csv")
-    public ResponseEntity<?> exportUsers() {
-        try {
-            var subscriptions = userService.getAllUserServices(ServiceCode.VACANCY);
-
-            // Генерируем CSV
-            StringBuilder csv = new StringBuilder();
-            csv.append("Telegram ID,First Name,Last Name,Username,Email,Phone,Subscription End,Plan,Status,Days Remaining,Role,Created At\n");
-
-            for (var subscription : subscriptions) {
-                var user = subscription.getUser();
-                csv.append(user.getTelegramId()).append(",");
-                csv.append(escapeCsv(user.getFirstName())).append(",");
-                csv.append(escapeCsv(user.getLastName())).append(",");
-                csv.append(escapeCsv(user.getUsername())).append(",");
-                csv.append(escapeCsv(user.getEmail())).append(",");
-                csv.append(escapeCsv(user.getPhone())).append(",");
-                csv.append(subscription.getSubscriptionEndDate()).append(",");
-                csv.append(subscription.getSubscriptionPlan()).append(",");
-                csv.append(subscription.isActive() ? "ACTIVE" : "INACTIVE").append(",");
-                csv.append(userService.getDaysRemaining(subscription)).append(",");
-                csv.append(user.getRole()).append(",");
-                csv.append(user.getCreatedAt()).append("\n");
-            }
-
-            byte[] csvBytes = csv.toString().getBytes();
-
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=users-export-" + LocalDateTime.now().toLocalDate() + ".csv")
-                    .header("Content-Type", "text/csv; charset=utf-8")
-                    .body(csvBytes);
-
-        } catch (Exception e) {
-            log.error("Error exporting users", e);
-            return ResponseEntity.badRequest().body(Map.of(
-                    "error", "Failed to export users",
-                    "message", e.getMessage()
-            ));
-        }
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        // Строки пишутся в ответ по мере чтения из БД, CSV целиком в памяти не собирается
+        StreamingResponseBody body = output -> userExportService.writeUsersCsv(ServiceCode.VACANCY, output);
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=users-export-" + LocalDateTime.now().toLocalDate() + ".csv")
+                .header("Content-Type", "text/csv; charset=utf-8")
+                .body(body);
     }
 
     @Operation(summary = "Получить детальную статистику бота")
@@ -272,11 +276,18 @@ public class BotManagementController {
         }
     }
 
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
+    private Map<String, Object> broadcastJobBody(BroadcastJob job) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("jobId", job.getId());
+        body.put("status", job.getStatus());
+        body.put("totalUsers", job.getTotalRecipients());
+        body.put("successCount", job.getSentCount());
+        body.put("failCount", job.getFailedCount());
+        body.put("pendingCount", Math.max(0, job.getTotalRecipients() - job.getSentCount() - job.getFailedCount()));
+        body.put("createdBy", job.getCreatedBy());
+        body.put("createdAt", job.getCreatedAt());
+        body.put("startedAt", job.getStartedAt());
+        body.put("finishedAt", job.getFinishedAt());
+        return body;
     }
 }
@@ -0,0 +1,66 @@
+package com.mkisten.subscriptionbackend.controller;
+
+import com.mkisten.subscriptionbackend.dto.SubscriptionStatusBatchItem;
+import com.mkisten.subscriptionbackend.dto.SubscriptionStatusBatchRequest;
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusBatchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Межсервисные эндпоинты. Доступ по общему ключу в заголовке X-Service-Key, без пользовательского JWT.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/internal")
+@Tag(name = "Internal", description = "Межсервисные эндпоинты")
+public class InternalSubscriptionController {
+
+    static final String SERVICE_KEY_HEADER = "X-Service-Key";
+
+    private final SubscriptionStatusBatchService subscriptionStatusBatchService;
+    private final String serviceKey;
+
+    public InternalSubscriptionController(SubscriptionStatusBatchService subscriptionStatusBatchService,
+                                          @Value("${app.internal.service-key:}") String serviceKey) {
+        this.subscriptionStatusBatchService = subscriptionStatusBatchService;
+        this.serviceKey = serviceKey;
+    }
+
+    @Operation(
+            summary = "Статусы подписки пачкой",
+            description = "Возвращает статус подписки и короткоживущий токен для каждого найденного пользователя"
+    )
+    @PostMapping("/subscription/status-batch")
+    public ResponseEntity<List<SubscriptionStatusBatchItem>> getStatusBatch(
+            @RequestHeader(value = SERVICE_KEY_HEADER, required = false) String providedKey,
+            @RequestBody SubscriptionStatusBatchRequest request) {
+        if (!isAuthorized(providedKey)) {
+            log.warn("Rejected internal batch status request: invalid service key");
+            return ResponseEntity.status(403).build();
+        }
+        if (request == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(subscriptionStatusBatchService.getStatuses(request.getTelegramIds(), request.getService()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch status request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private boolean isAuthorized(String providedKey) {
+        if (serviceKey == null || serviceKey.isBlank() || providedKey == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(serviceKey.getBytes(StandardCharsets.UTF_8), providedKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
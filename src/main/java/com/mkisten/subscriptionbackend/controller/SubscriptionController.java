@@ -1,12 +1,13 @@
 package com.mkisten.subscriptionbackend.controller;
 
 import com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto;
-import com.mkisten.subscription.contract.enums.ServiceCodeDto;
-import com.mkisten.subscription.contract.enums.SubscriptionPlanDto;
 import com.mkisten.subscriptionbackend.entity.ServiceCode;
 import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
 import com.mkisten.subscriptionbackend.entity.User;
 import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusDtoMapper;
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusProjection;
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusProjection.SubscriptionStatusSnapshot;
 import com.mkisten.subscriptionbackend.service.SubscriptionStatusService;
 import com.mkisten.subscriptionbackend.service.TelegramAuthService;
 import com.mkisten.subscriptionbackend.service.UserService;
@@ -18,6 +19,9 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -25,6 +29,7 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @RestController
@@ -37,6 +42,7 @@ public class SubscriptionController {
     private final UserService userService;
     private final TelegramAuthService telegramAuthService;
     private final SubscriptionStatusService subscriptionStatusService;
+    private final SubscriptionStatusProjection subscriptionStatusProjection;
 
     @Operation(
             summary = "Получить статус подписки",
@@ -49,7 +55,8 @@ public class SubscriptionController {
     @GetMapping("/status")
     public ResponseEntity<SubscriptionStatusDto> getSubscriptionStatus(
             @AuthenticationPrincipal User user,
-            @RequestParam(required = false) ServiceCode service) {
+            @RequestParam(required = false) ServiceCode service,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         if (user == null) {
             // здесь можно кинуть InvalidTokenException/SubscriptionExpiredException
             // и отдать ApiErrorDto через GlobalExceptionHandler
@@ -57,45 +64,41 @@ public class SubscriptionController {
         }
 
         ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
-        UserServiceSubscription subscription = userService.getOrCreateService(user, serviceCode);
+        LocalDate today = LocalDate.now();
 
-        log.info("=== SUBSCRIPTION STATUS CHECK ===");
-        log.info("User: {} {}", user.getFirstName(), user.getLastName());
-        log.info("Telegram ID: {}", user.getTelegramId());
-        log.info("Service: {}", serviceCode);
-        log.info("Plan: {}", subscription.getSubscriptionPlan());
-        log.info("End Date: {}", subscription.getSubscriptionEndDate());
-        log.info("Today: {}", LocalDate.now());
-        log.info("Trial Used: {}", subscription.getTrialUsed());
-        log.info("DB Active Flag: {}", subscription.isActive());
+        // Быстрый путь: готовый снимок из read-модели, без обращения к user_services
+        SubscriptionStatusSnapshot snapshot = subscriptionStatusProjection.find(user.getId(), serviceCode);
+        if (snapshot != null) {
+            String etag = statusEtag(snapshot, user, today);
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+            }
+            SubscriptionStatusDto dto = SubscriptionStatusDtoMapper.toDto(user, serviceCode, snapshot.subscriptionPlan(), snapshot.subscriptionEndDate(),
+                    snapshot.trialUsed(), snapshot.isActive(today), snapshot.daysRemaining(today));
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(dto);
+        }
 
+        UserServiceSubscription subscription = userService.getOrCreateService(user, serviceCode);
         boolean isActive = telegramAuthService.isSubscriptionActive(subscription);
         long daysRemaining = telegramAuthService.getDaysRemaining(subscription);
+        log.debug("Subscription status for user {} service {}: plan={}, endDate={}, active={}, daysRemaining={}",
+                user.getTelegramId(), serviceCode, subscription.getSubscriptionPlan(),
+                subscription.getSubscriptionEndDate(), isActive, daysRemaining);
+
+        SubscriptionStatusDto dto = SubscriptionStatusDtoMapper.toDto(user, serviceCode, subscription.getSubscriptionPlan(),
+                subscription.getSubscriptionEndDate(), subscription.getTrialUsed(), isActive, daysRemaining);
+        SubscriptionStatusSnapshot recorded = subscriptionStatusProjection.record(subscription);
+        if (recorded == null) {
+            return ResponseEntity.ok(dto);
+        }
+        return ResponseEntity.ok().eTag(statusEtag(recorded, user, today)).cacheControl(CacheControl.noCache().cachePrivate()).body(dto);
+    }
 
-        log.info("=== CHECK RESULT ===");
-        log.info("Active: {}", isActive);
-        log.info("Days Remaining: {}", daysRemaining);
-
-        SubscriptionStatusDto dto = new SubscriptionStatusDto();
-        dto.setTelegramId(user.getTelegramId());
-        dto.setFirstName(user.getFirstName());
-        dto.setLastName(user.getLastName());
-        dto.setUsername(user.getUsername());
-        dto.setEmail(user.getEmail());
-        dto.setSubscriptionEndDate(subscription.getSubscriptionEndDate());
-        // если в контракте SubscriptionPlanDto — маппишь через valueOf
-        dto.setSubscriptionPlan(
-                subscription.getSubscriptionPlan() != null
-                        ? SubscriptionPlanDto.valueOf(subscription.getSubscriptionPlan().name())
-                        : null
-        );
-        dto.setActive(isActive);
-        dto.setDaysRemaining(daysRemaining);
-        dto.setTrialUsed(subscription.getTrialUsed());
-        dto.setRole(user.getRole().name());
-        dto.setServiceCode(ServiceCodeDto.valueOf(serviceCode.name()));
-
-        return ResponseEntity.ok(dto);
+    // Версия снимка + текущий день (активность зависит от даты) + поля профиля из ответа
+    private String statusEtag(SubscriptionStatusSnapshot snapshot, User user, LocalDate today) {
+        int profileHash = Objects.hash(user.getTelegramId(), user.getFirstName(), user.getLastName(),
+                user.getUsername(), user.getEmail(), user.getRole());
+        return "\"" + snapshot.version() + "-" + today.toEpochDay() + "-" + Integer.toHexString(profileHash) + "\"";
     }
 
     @Operation(
@@ -105,8 +108,9 @@ public class SubscriptionController {
     @GetMapping("/my-status")
     public ResponseEntity<SubscriptionStatusDto> getMySubscriptionStatus(
             @AuthenticationPrincipal User user,
-            @RequestParam(required = false) ServiceCode service) {
-        return getSubscriptionStatus(user, service);
+            @RequestParam(required = false) ServiceCode service,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return getSubscriptionStatus(user, service, ifNoneMatch);
     }
 
     @Operation(
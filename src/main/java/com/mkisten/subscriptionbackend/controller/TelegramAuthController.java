@@ -11,13 +11,19 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @RestController
@@ -33,6 +39,9 @@ public class TelegramAuthController {
     @Value("${telegram.bot.username}")
     private String botUsername;
 
+    @Value("${app.auth-session.wait-timeout-seconds:30}")
+    private long waitTimeoutSeconds;
+
     /**
      * Создание сессии для авторизации через Telegram бота
      */
@@ -66,7 +75,96 @@ public class TelegramAuthController {
     ) {
         ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
         var status = authSessionService.checkAuthStatus(sessionId, deviceId);
+        return ResponseEntity.ok(toStatusDto(sessionId, deviceId, serviceCode, status));
+    }
 
+    /**
+     * Long-poll статуса: ответ приходит, как только бот завершит авторизацию,
+     * или со статусом PENDING по истечении таймаута — тогда клиент повторяет запрос.
+     */
+    @GetMapping("/status/{sessionId}/wait")
+    public DeferredResult<ResponseEntity<SessionStatusDto>> waitForStatus(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) ServiceCode service
+    ) {
+        ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
+        DeferredResult<ResponseEntity<SessionStatusDto>> result = new DeferredResult<>(waitTimeoutSeconds * 1000);
+        CompletableFuture<Void> completion = authSessionService.awaitCompletion(sessionId, deviceId);
+        result.onTimeout(() -> {
+            completion.cancel(false);
+            synchronized (result) {
+                result.setResult(ResponseEntity.ok(toStatusDto(sessionId, deviceId, serviceCode, pendingStatus())));
+            }
+        });
+        completion.thenRun(() -> {
+            // Сессия одноразовая: забираем токен, только если ответ ещё можно отдать этому клиенту
+            synchronized (result) {
+                if (!result.isSetOrExpired()) {
+                    var status = authSessionService.checkAuthStatus(sessionId, deviceId);
+                    result.setResult(ResponseEntity.ok(toStatusDto(sessionId, deviceId, serviceCode, status)));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * SSE-подписка на статус: сразу отправляет текущий статус, затем итоговый и закрывает поток.
+     */
+    @GetMapping(value = "/status/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatus(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) ServiceCode service
+    ) {
+        ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
+        SseEmitter emitter = new SseEmitter(waitTimeoutSeconds * 1000);
+        AtomicBoolean open = new AtomicBoolean(true);
+        CompletableFuture<Void> completion = authSessionService.awaitCompletion(sessionId, deviceId);
+        Runnable close = () -> {
+            synchronized (open) {
+                open.set(false);
+            }
+            completion.cancel(false);
+        };
+        emitter.onTimeout(close);
+        emitter.onCompletion(close);
+        emitter.onError(error -> close.run());
+        if (!completion.isDone()) {
+            sendStatus(emitter, toStatusDto(sessionId, deviceId, serviceCode, pendingStatus()));
+        }
+        completion.thenRun(() -> {
+            synchronized (open) {
+                if (!open.get()) {
+                    return;
+                }
+                var status = authSessionService.checkAuthStatus(sessionId, deviceId);
+                if (sendStatus(emitter, toStatusDto(sessionId, deviceId, serviceCode, status))) {
+                    emitter.complete();
+                }
+            }
+        });
+        return emitter;
+    }
+
+    private static AuthSessionService.AuthStatusResponse pendingStatus() {
+        return new AuthSessionService.AuthStatusResponse(AuthSessionService.AuthStatus.PENDING, "Ожидание авторизации", null, null);
+    }
+
+    private boolean sendStatus(SseEmitter emitter, SessionStatusDto dto) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(dto));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Auth status stream for session {} closed: {}", dto.getSessionId(), e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private SessionStatusDto toStatusDto(String sessionId, String deviceId, ServiceCode serviceCode,
+                                         AuthSessionService.AuthStatusResponse status) {
         SessionStatusDto dto = new SessionStatusDto();
         dto.setSessionId(sessionId);
         dto.setDeviceId(deviceId);
@@ -76,8 +174,7 @@ public class TelegramAuthController {
         if (status.getStatus() == AuthSessionService.AuthStatus.PENDING) {
             dto.setAuthLink(telegramBotService.generateAuthDeepLink(sessionId, deviceId, serviceCode));
         }
-
-        return ResponseEntity.ok(dto);
+        return dto;
     }
 
     /**
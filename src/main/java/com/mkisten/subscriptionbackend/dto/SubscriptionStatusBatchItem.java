@@ -0,0 +1,22 @@
+package com.mkisten.subscriptionbackend.dto;
+
+import com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Статус подписки и короткоживущий токен пользователя")
+public class SubscriptionStatusBatchItem {
+    @Schema(description = "Telegram ID пользователя")
+    private Long telegramId;
+
+    @Schema(description = "Короткоживущий JWT пользователя для межсервисных вызовов")
+    private String token;
+
+    @Schema(description = "Статус подписки")
+    private SubscriptionStatusDto status;
+}
@@ -0,0 +1,21 @@
+package com.mkisten.subscriptionbackend.dto;
+
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Запрос статусов подписки для списка пользователей")
+public class SubscriptionStatusBatchRequest {
+    @Schema(description = "Telegram ID пользователей")
+    private List<Long> telegramIds;
+
+    @Schema(description = "Сервис, по умолчанию VACANCY")
+    private ServiceCode service;
+}
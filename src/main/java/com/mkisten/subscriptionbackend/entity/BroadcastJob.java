@@ -0,0 +1,61 @@
+package com.mkisten.subscriptionbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Рассылка администратора. Получатели фиксируются при создании в broadcast_recipients,
+ * поэтому после перезапуска рассылка продолжается с неотправленных.
+ */
+@Entity
+@Table(name = "broadcast_jobs")
+@Data
+@NoArgsConstructor
+public class BroadcastJob {
+
+    public enum Status {
+        PENDING,    // Ожидает запуска
+        RUNNING,    // Идёт отправка
+        COMPLETED,  // Все получатели обработаны
+        CANCELLED   // Остановлена администратором
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "message", nullable = false, columnDefinition = "TEXT")
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "service_code", nullable = false, length = 32)
+    private ServiceCode serviceCode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(name = "total_recipients", nullable = false)
+    private int totalRecipients;
+
+    @Column(name = "sent_count", nullable = false)
+    private int sentCount;
+
+    @Column(name = "failed_count", nullable = false)
+    private int failedCount;
+
+    @Column(name = "created_by")
+    private String createdBy;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,50 @@
+package com.mkisten.subscriptionbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "broadcast_recipients",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uniq_broadcast_recipient", columnNames = {"job_id", "telegram_id"})
+        },
+        indexes = {
+                @Index(name = "idx_broadcast_recipients_job_status", columnList = "job_id, status, id")
+        }
+)
+@Data
+@NoArgsConstructor
+public class BroadcastRecipient {
+
+    public enum Status {
+        PENDING,
+        SENT,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "telegram_id", nullable = false)
+    private Long telegramId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,48 @@
+package com.mkisten.subscriptionbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Материализованный статус подписки пользователя по сервису.
+ * Пересчитывается после каждого изменения user_services, version растёт на каждое изменение.
+ */
+@Data
+@Entity
+@Table(name = "subscription_status_view",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uniq_subscription_status_view", columnNames = {"user_id", "service_code"})
+        }
+)
+public class SubscriptionStatusView {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "service_code", nullable = false, length = 32)
+    private ServiceCode serviceCode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "subscription_plan", nullable = false)
+    private SubscriptionPlan subscriptionPlan;
+
+    @Column(name = "subscription_end_date")
+    private LocalDate subscriptionEndDate;
+
+    @Column(name = "trial_used", nullable = false)
+    private Boolean trialUsed = false;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -1,5 +1,6 @@
 package com.mkisten.subscriptionbackend.entity;
 
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusProjectionListener;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -18,6 +19,7 @@ import java.time.LocalDateTime;
         }
 )
 @Data
+@EntityListeners(SubscriptionStatusProjectionListener.class)
 public class UserServiceSubscription {
 
     @Id
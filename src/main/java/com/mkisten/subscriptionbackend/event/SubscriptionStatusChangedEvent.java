@@ -0,0 +1,21 @@
+package com.mkisten.subscriptionbackend.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Подписки, у которых ночная сверка изменила флаг активности. Публикуется после коммита пачки.
+ */
+@Getter
+public class SubscriptionStatusChangedEvent extends ApplicationEvent {
+    private final List<Long> activatedIds;
+    private final List<Long> deactivatedIds;
+
+    public SubscriptionStatusChangedEvent(Object source, List<Long> activatedIds, List<Long> deactivatedIds) {
+        super(source);
+        this.activatedIds = activatedIds;
+        this.deactivatedIds = deactivatedIds;
+    }
+}
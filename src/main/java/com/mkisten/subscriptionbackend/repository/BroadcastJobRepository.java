@@ -0,0 +1,61 @@
+package com.mkisten.subscriptionbackend.repository;
+
+import com.mkisten.subscriptionbackend.entity.BroadcastJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BroadcastJobRepository extends JpaRepository<BroadcastJob, Long> {
+
+    List<BroadcastJob> findByStatusInOrderByIdAsc(Collection<BroadcastJob.Status> statuses);
+
+    List<BroadcastJob> findTop20ByOrderByIdDesc();
+
+    /**
+     * Пересчитывает счётчики прогресса по таблице получателей.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE broadcast_jobs j SET
+                sent_count = (SELECT COUNT(*) FROM broadcast_recipients r WHERE r.job_id = j.id AND r.status = 'SENT'),
+                failed_count = (SELECT COUNT(*) FROM broadcast_recipients r WHERE r.job_id = j.id AND r.status = 'FAILED')
+            WHERE j.id = :jobId
+            """, nativeQuery = true)
+    int refreshProgress(@Param("jobId") Long jobId);
+
+    /**
+     * Переводит рассылку в RUNNING, только если её ещё не отменили и не завершили.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE broadcast_jobs
+            SET status = 'RUNNING', started_at = COALESCE(started_at, :startedAt)
+            WHERE id = :jobId AND status IN ('PENDING', 'RUNNING')
+            """, nativeQuery = true)
+    int markRunning(@Param("jobId") Long jobId, @Param("startedAt") LocalDateTime startedAt);
+
+    /**
+     * Завершает активную рассылку с итоговым статусом. Возвращает 0, если её уже отменили или завершили:
+     * отмена и завершение не перезаписывают друг друга.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE broadcast_jobs
+            SET status = :status, finished_at = :finishedAt
+            WHERE id = :jobId AND status IN ('PENDING', 'RUNNING')
+            """, nativeQuery = true)
+    int finishIfActive(@Param("jobId") Long jobId,
+                       @Param("status") String status,
+                       @Param("finishedAt") LocalDateTime finishedAt);
+}
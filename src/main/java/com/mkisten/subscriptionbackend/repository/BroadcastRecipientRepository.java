@@ -0,0 +1,62 @@
+package com.mkisten.subscriptionbackend.repository;
+
+import com.mkisten.subscriptionbackend.entity.BroadcastRecipient;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BroadcastRecipientRepository extends JpaRepository<BroadcastRecipient, Long> {
+
+    /**
+     * Фиксирует получателей рассылки одним INSERT ... SELECT по подпискам сервиса.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO broadcast_recipients (job_id, telegram_id, status, attempts)
+            SELECT DISTINCT :jobId, u.telegram_id, 'PENDING', 0
+            FROM user_services s
+            JOIN users u ON u.id = s.user_id
+            WHERE s.service_code = :serviceCode AND u.telegram_id IS NOT NULL
+            ON CONFLICT (job_id, telegram_id) DO NOTHING
+            """, nativeQuery = true)
+    int insertRecipients(@Param("jobId") Long jobId, @Param("serviceCode") String serviceCode);
+
+    @Query("""
+            SELECT r FROM BroadcastRecipient r
+            WHERE r.jobId = :jobId AND r.status = :status AND r.id > :afterId
+            ORDER BY r.id ASC
+            """)
+    List<BroadcastRecipient> findPage(@Param("jobId") Long jobId,
+                                      @Param("status") BroadcastRecipient.Status status,
+                                      @Param("afterId") Long afterId,
+                                      Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE broadcast_recipients
+            SET status = 'SENT', attempts = attempts + :attempts, error = NULL, processed_at = :now
+            WHERE id = :id
+            """, nativeQuery = true)
+    int markSent(@Param("id") Long id, @Param("attempts") int attempts, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE broadcast_recipients
+            SET status = 'FAILED', attempts = attempts + :attempts, error = :error, processed_at = :now
+            WHERE id = :id
+            """, nativeQuery = true)
+    int markFailed(@Param("id") Long id,
+                   @Param("attempts") int attempts,
+                   @Param("error") String error,
+                   @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,14 @@
+package com.mkisten.subscriptionbackend.repository;
+
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.SubscriptionStatusView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SubscriptionStatusViewRepository extends JpaRepository<SubscriptionStatusView, Long> {
+    Optional<SubscriptionStatusView> findByUserIdAndServiceCode(Long userId, ServiceCode serviceCode);
+    void deleteByUserIdAndServiceCode(Long userId, ServiceCode serviceCode);
+}
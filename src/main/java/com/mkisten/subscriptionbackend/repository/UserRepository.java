@@ -8,12 +8,14 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByTelegramId(Long telegramId);
+    List<User> findByTelegramIdIn(Collection<Long> telegramIds);
     Optional<User> findByEmail(String email);
     Optional<User> findByLogin(String login);
     boolean existsByLogin(String login);
@@ -1,13 +1,25 @@
 package com.mkisten.subscriptionbackend.repository;
 
 import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
 import com.mkisten.subscriptionbackend.entity.User;
+import com.mkisten.subscriptionbackend.entity.UserRole;
 import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserServiceSubscriptionRepository extends JpaRepository<UserServiceSubscription, Long> {
     Optional<UserServiceSubscription> findByUserAndServiceCode(User user, ServiceCode serviceCode);
@@ -15,4 +27,90 @@ public interface UserServiceSubscriptionRepository extends JpaRepository<UserSer
     List<UserServiceSubscription> findByServiceCode(ServiceCode serviceCode);
     List<UserServiceSubscription> findByServiceCodeAndSubscriptionEndDateBefore(ServiceCode serviceCode, LocalDate date);
     List<UserServiceSubscription> findByServiceCodeAndSubscriptionEndDateAfter(ServiceCode serviceCode, LocalDate date);
+
+    /**
+     * Текущая строка подписки под блокировкой FOR UPDATE: обновления read-модели по одному ключу идут по очереди.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserServiceSubscription s WHERE s.user.id = :userId AND s.serviceCode = :serviceCode")
+    Optional<UserServiceSubscription> lockByUserIdAndServiceCode(@Param("userId") Long userId,
+                                                                 @Param("serviceCode") ServiceCode serviceCode);
+
+    /**
+     * Счётчики подписок сервиса одним проходом по таблице (для статистики админки).
+     */
+    @Query("""
+            SELECT COUNT(s) AS total,
+                   COALESCE(SUM(CASE WHEN s.subscriptionEndDate > :today THEN 1 ELSE 0 END), 0) AS active,
+                   COALESCE(SUM(CASE WHEN s.subscriptionEndDate < :today THEN 1 ELSE 0 END), 0) AS expired,
+                   COALESCE(SUM(CASE WHEN s.trialUsed = true THEN 1 ELSE 0 END), 0) AS trialUsedCount,
+                   COALESCE(SUM(CASE WHEN u.createdAt > :newSince THEN 1 ELSE 0 END), 0) AS newUsersCount
+            FROM UserServiceSubscription s JOIN s.user u
+            WHERE s.serviceCode = :serviceCode
+            """)
+    SubscriptionTotals aggregateTotals(@Param("serviceCode") ServiceCode serviceCode,
+                                       @Param("today") LocalDate today,
+                                       @Param("newSince") LocalDateTime newSince);
+
+    @Query("SELECT s.subscriptionPlan AS groupKey, COUNT(s) AS groupCount FROM UserServiceSubscription s " +
+            "WHERE s.serviceCode = :serviceCode GROUP BY s.subscriptionPlan")
+    List<GroupCount<SubscriptionPlan>> countByPlan(@Param("serviceCode") ServiceCode serviceCode);
+
+    @Query("SELECT u.role AS groupKey, COUNT(s) AS groupCount FROM UserServiceSubscription s JOIN s.user u " +
+            "WHERE s.serviceCode = :serviceCode GROUP BY u.role")
+    List<GroupCount<UserRole>> countByRole(@Param("serviceCode") ServiceCode serviceCode);
+
+    /**
+     * Подписки сервиса вместе с пользователями одним запросом через серверный курсор.
+     * Читать внутри транзакции и закрывать поток после использования.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM UserServiceSubscription s JOIN FETCH s.user WHERE s.serviceCode = :serviceCode ORDER BY s.id")
+    Stream<UserServiceSubscription> streamByServiceCodeWithUser(@Param("serviceCode") ServiceCode serviceCode);
+
+    /**
+     * Сверка флага активности с датой окончания одним UPDATE на пачку: берёт не больше limit подписок,
+     * у которых флаг расходится с датой, и возвращает изменённые строки.
+     * Правило то же, что в SubscriptionCalculatorImpl: подписка активна по дату окончания включительно.
+     */
+    @Transactional
+    @Query(value = """
+            WITH batch AS (
+                SELECT id FROM user_services
+                WHERE (subscription_active = true AND (subscription_end_date IS NULL OR subscription_end_date < :today))
+                   OR (subscription_active = false AND subscription_end_date >= :today)
+                ORDER BY id
+                LIMIT :limit
+            )
+            UPDATE user_services s
+            SET subscription_active = (s.subscription_end_date IS NOT NULL AND s.subscription_end_date >= :today),
+                updated_at = :now
+            FROM batch
+            WHERE s.id = batch.id
+            RETURNING s.id AS id, s.subscription_active AS active
+            """, nativeQuery = true)
+    List<StatusChange> reconcileActiveFlags(@Param("today") LocalDate today,
+                                            @Param("now") LocalDateTime now,
+                                            @Param("limit") int limit);
+
+    interface StatusChange {
+        Long getId();
+        Boolean getActive();
+    }
+
+    interface SubscriptionTotals {
+        long getTotal();
+        long getActive();
+        long getExpired();
+        long getTrialUsedCount();
+        long getNewUsersCount();
+    }
+
+    interface GroupCount<K> {
+        K getGroupKey();
+        long getGroupCount();
+    }
 }
@@ -60,19 +60,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String jwt = authorizationHeader.substring(7);
 
         try {
-            Long telegramId = jwtUtil.extractTelegramId(jwt);
-
-            if (!jwtUtil.validateToken(jwt)) {
+            // Подпись проверяется один раз, telegramId берётся из тех же claims
+            Long telegramId = jwtUtil.verifiedTelegramId(jwt);
+            if (telegramId == null) {
                 sendError(request, response, "Invalid token");
                 return;
             }
 
-            User user = userService.findByTelegramId(telegramId);
-
-            if (!jwtUtil.validateToken(jwt, telegramId)) {
-                sendError(request, response, "Token user mismatch");
-                return;
-            }
+            User user = userService.findPrincipal(telegramId);
 
             // Создаем аутентификацию с authorities
             UsernamePasswordAuthenticationToken authToken =
@@ -125,6 +120,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 path.equals("/api/auth/telegram/register") ||
                 path.equals("/api/auth/credentials/availability") ||
                 path.startsWith("/api/telegram-auth") ||
+                path.startsWith("/api/internal/") || // защищены ключом X-Service-Key
                 path.startsWith("/api/test") ||
                 path.startsWith("/actuator") ||
                 path.startsWith("/health") ||
@@ -1,16 +1,23 @@
 package com.mkisten.subscriptionbackend.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -27,14 +34,32 @@ public class JwtUtil {
     @Value("${jwt.clock-skew:30000}") // 30 секунд допуск на рассинхронизацию времени
     private Long clockSkew;
 
-    private SecretKey getSigningKey() {
+    @Value("${jwt.verified-cache-size:10000}") // сколько недавно проверенных токенов держать в памяти
+    private int verifiedCacheSize;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // SHA-256 токена -> claims уже проверенной подписи, вытесняются по LRU
+    private final LinkedHashMap<String, Claims> verifiedClaims = new LinkedHashMap<>(256, 0.75f, true);
+
+    @PostConstruct
+    void init() {
         byte[] keyBytes = secret.getBytes();
         if (keyBytes.length < 32) {
             byte[] paddedKey = new byte[32];
             System.arraycopy(keyBytes, 0, paddedKey, 0, Math.min(keyBytes.length, 32));
-            return Keys.hmacShaKeyFor(paddedKey);
+            keyBytes = paddedKey;
         }
-        return Keys.hmacShaKeyFor(keyBytes);
+        signingKey = Keys.hmacShaKeyFor(keyBytes);
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .setAllowedClockSkewSeconds(clockSkew / 1000) // Добавляем допуск по времени
+                .build();
+    }
+
+    private SecretKey getSigningKey() {
+        return signingKey;
     }
 
     /**
@@ -65,12 +90,26 @@ public class JwtUtil {
         return createToken(claims, telegramId.toString());
     }
 
+    /**
+     * Короткоживущий токен пользователя для межсервисных вызовов (автообновление вакансий)
+     */
+    public String generateServiceToken(Long telegramId, long ttlSeconds) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("telegramId", telegramId);
+        claims.put("type", "service");
+        return createToken(claims, telegramId.toString(), ttlSeconds * 1000L);
+    }
+
     private String createToken(Map<String, Object> claims, String subject) {
+        return createToken(claims, subject, expirationMillis());
+    }
+
+    private String createToken(Map<String, Object> claims, String subject, long ttlMillis) {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expirationMillis()))
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMillis))
                 .signWith(getSigningKey(), SignatureAlgorithm.HS256)
                 .compact();
     }
@@ -116,12 +155,7 @@ public class JwtUtil {
      */
     private Claims extractAllClaims(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .setAllowedClockSkewSeconds(clockSkew / 1000) // Добавляем допуск по времени
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return verifiedClaims(token);
         } catch (io.jsonwebtoken.ExpiredJwtException e) {
             log.warn("JWT token expired: {}", e.getMessage());
             throw e; // Пробрасываем дальше для правильной обработки
@@ -137,6 +171,66 @@ public class JwtUtil {
         }
     }
 
+    /**
+     * Claims токена с проверенной подписью. Токен разбирается и проверяется один раз,
+     * повторные вызовы берут claims из кэша, пока не истёк срок действия.
+     * Возвращается копия, её можно менять.
+     */
+    public Claims verifiedClaims(String token) {
+        String digest = digest(token);
+        Claims cached;
+        synchronized (verifiedClaims) {
+            cached = verifiedClaims.get(digest);
+        }
+        if (cached != null) {
+            if (isUnexpired(cached)) {
+                return Jwts.claims(new HashMap<>(cached));
+            }
+            synchronized (verifiedClaims) {
+                verifiedClaims.remove(digest);
+            }
+        }
+
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (verifiedCacheSize > 0 && claims.getExpiration() != null) {
+            Claims snapshot = Jwts.claims(new HashMap<>(claims));
+            synchronized (verifiedClaims) {
+                verifiedClaims.put(digest, snapshot);
+                if (verifiedClaims.size() > verifiedCacheSize) {
+                    verifiedClaims.remove(verifiedClaims.keySet().iterator().next());
+                }
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Telegram ID из валидного токена или null, если токен невалиден или истёк.
+     */
+    public Long verifiedTelegramId(String token) {
+        try {
+            Claims claims = verifiedClaims(token);
+            return isUnexpired(claims) ? Long.parseLong(claims.getSubject()) : null;
+        } catch (Exception e) {
+            log.warn("Token validation failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isUnexpired(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return expiration != null && expiration.after(new Date(System.currentTimeMillis() - clockSkew)); // Учитываем clock skew
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     /**
      * Проверка истечения токена
      */
@@ -157,12 +251,7 @@ public class JwtUtil {
     public boolean validateToken(String token) {
         try {
             // Пытаемся распарсить токен
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .setAllowedClockSkewSeconds(clockSkew / 1000)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = verifiedClaims(token);
 
             // Проверяем expiration
             Date expiration = claims.getExpiration();
@@ -0,0 +1,101 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscriptionbackend.controller.AdminController;
+import com.mkisten.subscriptionbackend.controller.AdminPaymentController;
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
+import com.mkisten.subscriptionbackend.entity.UserRole;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository.GroupCount;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository.SubscriptionTotals;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Снимок статистики для /api/admin/stats. Считается агрегатными запросами в БД
+ * и периодически обновляется в фоне, поэтому запрос админки не читает таблицы подписок.
+ */
+@Slf4j
+@Service
+public class AdminStatsService {
+
+    private final UserServiceSubscriptionRepository userServiceRepository;
+    private final PaymentService paymentService;
+    private final Duration maxAge;
+    private final Map<ServiceCode, AdminController.ExtendedStatsResponse> snapshots = new ConcurrentHashMap<>();
+
+    public AdminStatsService(UserServiceSubscriptionRepository userServiceRepository,
+                             PaymentService paymentService,
+                             @Value("${app.admin-stats.refresh-ms:60000}") long refreshMs) {
+        this.userServiceRepository = userServiceRepository;
+        this.paymentService = paymentService;
+        // Снимок считается устаревшим, если фоновое обновление пропустило два цикла
+        this.maxAge = Duration.ofMillis(Math.max(1000, refreshMs) * 2);
+    }
+
+    public AdminController.ExtendedStatsResponse getStats(ServiceCode serviceCode) {
+        AdminController.ExtendedStatsResponse snapshot = snapshots.get(serviceCode);
+        if (snapshot == null || snapshot.generatedAt().isBefore(LocalDateTime.now().minus(maxAge))) {
+            snapshot = refresh(serviceCode);
+        }
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${app.admin-stats.refresh-ms:60000}")
+    public void refreshSnapshots() {
+        // Обновляем только сервисы, статистику которых уже запрашивали
+        for (ServiceCode serviceCode : snapshots.keySet()) {
+            try {
+                refresh(serviceCode);
+            } catch (Exception e) {
+                log.warn("Failed to refresh admin stats for {}: {}", serviceCode, e.getMessage());
+            }
+        }
+    }
+
+    public AdminController.ExtendedStatsResponse refresh(ServiceCode serviceCode) {
+        LocalDateTime now = LocalDateTime.now();
+        SubscriptionTotals totals = userServiceRepository.aggregateTotals(
+                serviceCode, LocalDate.now(), now.minusDays(30));
+        AdminPaymentController.PaymentStats paymentStats = paymentService.getPaymentStats();
+
+        AdminController.ExtendedStatsResponse snapshot = new AdminController.ExtendedStatsResponse(
+                (int) totals.getTotal(),
+                (int) totals.getActive(),
+                (int) totals.getExpired(),
+                totals.getTrialUsedCount(),
+                totals.getTotal() - totals.getTrialUsedCount(),
+                paymentStats.getTotalPayments(),
+                paymentStats.getPendingPayments(),
+                paymentStats.getVerifiedPayments(),
+                paymentStats.getRejectedPayments(),
+                paymentStats.getTotalRevenue(),
+                totals.getNewUsersCount(),
+                toEnumMap(SubscriptionPlan.class, userServiceRepository.countByPlan(serviceCode)),
+                toEnumMap(UserRole.class, userServiceRepository.countByRole(serviceCode)),
+                now
+        );
+        snapshots.put(serviceCode, snapshot);
+        return snapshot;
+    }
+
+    private static <K extends Enum<K>> Map<K, Long> toEnumMap(Class<K> type, List<GroupCount<K>> counts) {
+        Map<K, Long> result = new EnumMap<>(type);
+        for (GroupCount<K> count : counts) {
+            if (count.getGroupKey() != null) {
+                result.put(count.getGroupKey(), count.getGroupCount());
+            }
+        }
+        return result;
+    }
+}
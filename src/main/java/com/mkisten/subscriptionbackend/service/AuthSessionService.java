@@ -6,26 +6,47 @@ import com.mkisten.subscriptionbackend.security.JwtUtil;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сессии входа через Telegram-бота. Живут в памяти с ограниченным временем жизни,
+ * при включённой сквозной записи дублируются в auth_sessions, чтобы пережить перезапуск.
+ * Клиент может не опрашивать статус, а ждать завершения через awaitCompletion.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class AuthSessionService {
 
     private final AuthSessionRepository authSessionRepository;
     private final JwtUtil jwtUtil;
+    private final Duration ttl;
+    private final boolean writeThrough;
+    private final Map<String, AuthSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<AuthSession>> completions = new ConcurrentHashMap<>();
+
+    public AuthSessionService(AuthSessionRepository authSessionRepository,
+                              JwtUtil jwtUtil,
+                              @Value("${app.auth-session.ttl-seconds:600}") long ttlSeconds,
+                              @Value("${app.auth-session.write-through:true}") boolean writeThrough) {
+        this.authSessionRepository = authSessionRepository;
+        this.jwtUtil = jwtUtil;
+        this.ttl = Duration.ofSeconds(Math.max(1, ttlSeconds));
+        this.writeThrough = writeThrough;
+    }
 
     public AuthSession createTelegramAuthSession(String deviceId) {
         String sessionId = UUID.randomUUID().toString();
         AuthSession session = new AuthSession(sessionId, deviceId, AuthSession.AuthStatus.PENDING);
-        return authSessionRepository.save(session);
+        return register(session);
     }
 
     public AuthSession createSession(String deviceId) {
@@ -33,44 +54,42 @@ public class AuthSessionService {
     }
 
     public AuthSession completeAuthSession(String sessionId, Long telegramId, String jwtToken) {
-        AuthSession session = authSessionRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionId));
-
-        // Дополнительные проверки
-        if (session.getStatus() != AuthSession.AuthStatus.PENDING) {
-            throw new RuntimeException("Session already completed or expired: " + sessionId);
-        }
-
-        session.setTelegramId(telegramId);
-        session.setJwtToken(jwtToken);
-        session.setStatus(AuthSession.AuthStatus.COMPLETED);
-        session.setCompletedAt(LocalDateTime.now());
-
-        return authSessionRepository.save(session);
+        return complete(sessionId, null, telegramId, jwtToken);
     }
 
-
     // Перегруженный метод с проверкой deviceId
-    @Transactional
     public AuthSession completeAuthSession(String sessionId, String deviceId, Long telegramId, String jwtToken) {
-        AuthSession session = authSessionRepository.findBySessionId(sessionId)
+        return complete(sessionId, deviceId, telegramId, jwtToken);
+    }
+
+    private AuthSession complete(String sessionId, String deviceId, Long telegramId, String jwtToken) {
+        AuthSession session = findBySessionId(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found: " + sessionId));
 
-        // Проверяем соответствие deviceId
-        if (!session.getDeviceId().equals(deviceId)) {
-            throw new RuntimeException("Device ID mismatch for session: " + sessionId);
-        }
+        synchronized (session) {
+            // Проверяем соответствие deviceId
+            if (deviceId != null && !session.getDeviceId().equals(deviceId)) {
+                throw new RuntimeException("Device ID mismatch for session: " + sessionId);
+            }
 
-        if (session.getStatus() != AuthSession.AuthStatus.PENDING) {
-            throw new RuntimeException("Session already completed or expired: " + sessionId);
-        }
+            if (session.getStatus() != AuthSession.AuthStatus.PENDING) {
+                throw new RuntimeException("Session already completed or expired: " + sessionId);
+            }
 
-        session.setTelegramId(telegramId);
-        session.setJwtToken(jwtToken);
-        session.setStatus(AuthSession.AuthStatus.COMPLETED);
-        session.setCompletedAt(LocalDateTime.now());
+            session.setTelegramId(telegramId);
+            session.setJwtToken(jwtToken);
+            session.setStatus(AuthSession.AuthStatus.COMPLETED);
+            session.setCompletedAt(LocalDateTime.now());
+            session.setUpdatedAt(LocalDateTime.now());
+            persist(session);
+        }
 
-        return authSessionRepository.save(session);
+        // Ожидающие клиенты получают результат сразу, без следующего опроса
+        CompletableFuture<AuthSession> completion = completions.remove(sessionId);
+        if (completion != null) {
+            completion.complete(session);
+        }
+        return session;
     }
 //
 //    public AuthSession getSession(String sessionId) {
@@ -85,7 +104,6 @@ public class AuthSessionService {
 //                .orElse(false);
 //    }
 
-    @Transactional
     public AuthSession createAuthSession(String deviceId) {
         try {
             AuthSession session = new AuthSession();
@@ -95,19 +113,11 @@ public class AuthSessionService {
             session.setCreatedAt(LocalDateTime.now());
             session.setExpiresAt(LocalDateTime.now().plusMinutes(5)); // 5 минут
 
-            AuthSession savedSession = authSessionRepository.save(session);
+            AuthSession savedSession = register(session);
 
             log.info("Created new auth session - ID: {}, Device: {}, Status: {}",
                     savedSession.getSessionId(), savedSession.getDeviceId(), savedSession.getStatus());
 
-            // Логируем для проверки
-            Optional<AuthSession> verifiedSession = authSessionRepository.findBySessionId(savedSession.getSessionId());
-            if (verifiedSession.isPresent()) {
-                log.info("Session verified in database: {}", verifiedSession.get().getSessionId());
-            } else {
-                log.error("Session NOT FOUND immediately after creation: {}", savedSession.getSessionId());
-            }
-
             return savedSession;
         } catch (Exception e) {
             log.error("Error creating auth session for device: {}", deviceId, e);
@@ -116,27 +126,32 @@ public class AuthSessionService {
     }
 
     public Optional<AuthSession> findBySessionId(String sessionId) {
-        log.info("Searching for session by ID: {}", sessionId);
-        Optional<AuthSession> session = authSessionRepository.findBySessionId(sessionId);
-
-        if (session.isPresent()) {
-            log.info("Session found: {}", session.get());
-        } else {
-            log.warn("Session not found: {}", sessionId);
-            // Логируем все существующие сессии для отладки
-            List<AuthSession> allSessions = authSessionRepository.findAll();
-            log.info("Total sessions in database: {}", allSessions.size());
-            allSessions.forEach(s -> log.info("Existing session: {} - {}", s.getSessionId(), s.getStatus()));
+        if (sessionId == null) {
+            return Optional.empty();
         }
-
-        return session;
+        AuthSession session = sessions.get(sessionId);
+        if (session != null) {
+            return isExpired(session, LocalDateTime.now()) ? Optional.empty() : Optional.of(session);
+        }
+        if (!writeThrough) {
+            log.debug("Session not found: {}", sessionId);
+            return Optional.empty();
+        }
+        // После перезапуска сессия есть только в таблице: поднимаем её обратно в память
+        Optional<AuthSession> stored = authSessionRepository.findBySessionId(sessionId)
+                .filter(found -> !isExpired(found, LocalDateTime.now()))
+                .map(found -> sessions.computeIfAbsent(found.getSessionId(), id -> found));
+        if (stored.isEmpty()) {
+            log.debug("Session not found: {}", sessionId);
+        }
+        return stored;
     }
 
-    @Transactional(readOnly = true)
     public AuthStatusResponse checkAuthStatus(String sessionId, String deviceId) {
-        log.info("Checking auth status - Session: {}, Device: {}", sessionId, deviceId);
+        log.debug("Checking auth status - Session: {}, Device: {}", sessionId, deviceId);
 
-        Optional<AuthSession> authSessionOpt = authSessionRepository.findBySessionIdAndDeviceId(sessionId, deviceId);
+        Optional<AuthSession> authSessionOpt = findBySessionId(sessionId)
+                .filter(session -> session.getDeviceId().equals(deviceId));
 
         if (authSessionOpt.isEmpty()) {
             log.warn("Session not found: {}", sessionId);
@@ -147,7 +162,7 @@ public class AuthSessionService {
 
         if (authSession.getStatus() == AuthSession.AuthStatus.COMPLETED) {
             // Удаляем использованную сессию
-            authSessionRepository.delete(authSession);
+            remove(authSession);
             log.info("Auth completed successfully for session: {}", sessionId);
             return new AuthStatusResponse(
                     AuthStatus.COMPLETED,
@@ -158,22 +173,42 @@ public class AuthSessionService {
         }
 
         if (authSession.getStatus() == AuthSession.AuthStatus.EXPIRED) {
-            authSessionRepository.delete(authSession);
+            remove(authSession);
             log.info("Auth session expired: {}", sessionId);
             return new AuthStatusResponse(AuthStatus.NOT_FOUND, "Сессия устарела", null, null);
         }
-        
+
         // Если сессия все еще в ожидании
         return new AuthStatusResponse(AuthStatus.PENDING, "Ожидание авторизации", null, null);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Сигнал, который завершится, как только сессия перестанет ждать подтверждения
+     * (бот подтвердил вход или сессия истекла). Статус и токен он не забирает:
+     * это делает вызывающий через checkAuthStatus, пока его клиент ещё ждёт ответа.
+     * Для уже завершённой или неизвестной сессии сигнал готов сразу.
+     * Каждый вызов получает свой future — его можно отменить, не задевая других ожидающих.
+     */
+    public CompletableFuture<Void> awaitCompletion(String sessionId, String deviceId) {
+        Optional<AuthSession> session = findBySessionId(sessionId)
+                .filter(found -> found.getDeviceId().equals(deviceId));
+        if (session.isEmpty() || session.get().getStatus() != AuthSession.AuthStatus.PENDING) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<AuthSession> completion = completions.computeIfAbsent(sessionId, id -> new CompletableFuture<>());
+        // Сессия могла завершиться между проверкой и подпиской
+        if (session.get().getStatus() != AuthSession.AuthStatus.PENDING) {
+            completions.remove(sessionId, completion);
+            completion.complete(session.get());
+        }
+        return completion.thenApply(completed -> null);
+    }
+
     public AuthSession getSession(String sessionId) {
-        return authSessionRepository.findBySessionId(sessionId)
+        return findBySessionId(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found: " + sessionId));
     }
 
-    @Transactional(readOnly = true)
     public boolean isValidSession(String sessionId) {
         try {
             AuthSession session = getSession(sessionId);
@@ -185,11 +220,12 @@ public class AuthSessionService {
         }
     }
 
-    @Transactional
     public void completeAllPendingSessionsForUser(Long telegramId) {
         try {
             // Находим все pending сессии
-            List<AuthSession> pendingSessions = authSessionRepository.findByStatus(AuthSession.AuthStatus.PENDING);
+            List<AuthSession> pendingSessions = sessions.values().stream()
+                    .filter(session -> session.getStatus() == AuthSession.AuthStatus.PENDING)
+                    .toList();
 
             if (pendingSessions.isEmpty()) {
                 log.info("No pending sessions found for user: {}", telegramId);
@@ -200,16 +236,17 @@ public class AuthSessionService {
             String jwtToken = jwtUtil.generateToken(telegramId);
 
             // Завершаем все pending сессии
+            int completed = 0;
             for (AuthSession session : pendingSessions) {
-                session.setStatus(AuthSession.AuthStatus.COMPLETED);
-                session.setTelegramId(telegramId);
-                session.setJwtToken(jwtToken);
-                log.info("Completed pending session: {} for user: {}", session.getSessionId(), telegramId);
+                try {
+                    completeAuthSession(session.getSessionId(), telegramId, jwtToken);
+                    completed++;
+                    log.info("Completed pending session: {} for user: {}", session.getSessionId(), telegramId);
+                } catch (RuntimeException e) {
+                    log.debug("Skipped session {}: {}", session.getSessionId(), e.getMessage());
+                }
             }
-
-            // Сохраняем изменения
-            authSessionRepository.saveAll(pendingSessions);
-            log.info("Completed {} pending sessions for user: {}", pendingSessions.size(), telegramId);
+            log.info("Completed {} pending sessions for user: {}", completed, telegramId);
 
         } catch (Exception e) {
             log.error("Error completing pending sessions for user: {}", telegramId, e);
@@ -217,34 +254,80 @@ public class AuthSessionService {
         }
     }
 
-    // Очистка устаревших сессий каждые 10 минут
+    /**
+     * Вытесняет из памяти сессии старше TTL и отвечает ждущим клиентам, что сессия устарела.
+     */
+    @Scheduled(fixedDelayString = "${app.auth-session.cleanup-ms:30000}")
+    public void evictExpiredSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        int evicted = 0;
+        for (AuthSession session : sessions.values()) {
+            if (isExpired(session, now) && sessions.remove(session.getSessionId(), session)) {
+                evicted++;
+                CompletableFuture<AuthSession> completion = completions.remove(session.getSessionId());
+                if (completion != null) {
+                    completion.complete(session);
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.info("Evicted {} expired auth sessions", evicted);
+        }
+    }
+
+    // Таблица нужна только для восстановления после перезапуска, поэтому чистим её редко и одним запросом
     @Scheduled(fixedRate = 300000) // Каждые 5 минут
     @Transactional
     public void cleanupExpiredSessions() {
+        if (!writeThrough) {
+            return;
+        }
         try {
-            LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(10); // Удаляем сессии старше 10 минут
-            List<AuthSession> expiredSessions = authSessionRepository.findByStatusAndCreatedAtBefore(
-                    AuthSession.AuthStatus.PENDING, cutoffTime);
-
-            if (!expiredSessions.isEmpty()) {
-                log.info("Cleaning up {} expired sessions", expiredSessions.size());
-                authSessionRepository.deleteAll(expiredSessions);
-            }
+            authSessionRepository.deleteExpiredSessions(LocalDateTime.now().minus(ttl));
         } catch (Exception e) {
             log.error("Error cleaning up expired sessions", e);
         }
     }
 
+    private AuthSession register(AuthSession session) {
+        AuthSession saved = writeThrough ? authSessionRepository.save(session) : session;
+        sessions.put(saved.getSessionId(), saved);
+        return saved;
+    }
+
+    private void persist(AuthSession session) {
+        if (writeThrough) {
+            authSessionRepository.save(session);
+        }
+    }
+
+    private void remove(AuthSession session) {
+        sessions.remove(session.getSessionId(), session);
+        CompletableFuture<AuthSession> completion = completions.remove(session.getSessionId());
+        if (completion != null) {
+            completion.complete(session);
+        }
+        if (writeThrough) {
+            authSessionRepository.deleteById(session.getSessionId());
+        }
+    }
+
+    private boolean isExpired(AuthSession session, LocalDateTime now) {
+        return session.getCreatedAt() != null && session.getCreatedAt().plus(ttl).isBefore(now);
+    }
+
     public Map<String, Object> getDebugInfo() {
         Map<String, Object> debugInfo = new HashMap<>();
 
-        long totalSessions = authSessionRepository.count();
-        long pendingSessions = authSessionRepository.countPendingSessions();
+        List<AuthSession> allSessions = new ArrayList<>(sessions.values());
+        long pendingSessions = allSessions.stream()
+                .filter(session -> session.getStatus() == AuthSession.AuthStatus.PENDING)
+                .count();
 
-        debugInfo.put("totalSessions", totalSessions);
+        debugInfo.put("totalSessions", allSessions.size());
         debugInfo.put("pendingSessions", pendingSessions);
+        debugInfo.put("waitingClients", completions.size());
 
-        List<AuthSession> allSessions = authSessionRepository.findAll();
         List<Map<String, Object>> sessionsInfo = new ArrayList<>();
 
         for (AuthSession session : allSessions) {
@@ -0,0 +1,259 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscriptionbackend.entity.BroadcastJob;
+import com.mkisten.subscriptionbackend.entity.BroadcastRecipient;
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.repository.BroadcastJobRepository;
+import com.mkisten.subscriptionbackend.repository.BroadcastRecipientRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновые рассылки администратора. Рассылка сохраняется вместе со списком получателей,
+ * отправляется пулом потоков с общим ограничением скорости под лимит Telegram
+ * и после перезапуска продолжается с необработанных получателей.
+ */
+@Slf4j
+@Service
+public class BroadcastService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final BroadcastJobRepository jobRepository;
+    private final BroadcastRecipientRepository recipientRepository;
+    private final TelegramBotService telegramBotService;
+    private final TransactionTemplate transactionTemplate;
+    private final long sendIntervalNanos;
+    private final int pageSize;
+    private final ExecutorService coordinator;
+    private final ExecutorService senders;
+    private final Object rateLock = new Object();
+    private long nextSendAtNanos = System.nanoTime();
+
+    public BroadcastService(BroadcastJobRepository jobRepository,
+                            BroadcastRecipientRepository recipientRepository,
+                            TelegramBotService telegramBotService,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.broadcast.messages-per-second:25}") double messagesPerSecond,
+                            @Value("${app.broadcast.sender-threads:4}") int senderThreads,
+                            @Value("${app.broadcast.page-size:200}") int pageSize) {
+        this.jobRepository = jobRepository;
+        this.recipientRepository = recipientRepository;
+        this.telegramBotService = telegramBotService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sendIntervalNanos = messagesPerSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+        this.pageSize = Math.max(1, pageSize);
+        // Рассылки выполняются по одной: лимит Telegram общий для всего бота
+        this.coordinator = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setName("broadcast-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger index = new AtomicInteger(1);
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), task -> {
+            Thread thread = new Thread(task);
+            thread.setName("broadcast-sender-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Создаёт рассылку и фиксирует получателей в одной транзакции, отправка начинается после коммита.
+     */
+    public BroadcastJob createJob(String message, ServiceCode serviceCode, String createdBy) {
+        BroadcastJob created = transactionTemplate.execute(status -> {
+            BroadcastJob job = new BroadcastJob();
+            job.setMessage(message);
+            job.setServiceCode(serviceCode);
+            job.setCreatedBy(createdBy);
+            job = jobRepository.save(job);
+            job.setTotalRecipients(recipientRepository.insertRecipients(job.getId(), serviceCode.name()));
+            return jobRepository.save(job);
+        });
+        log.info("Broadcast job {} created by {}: {} recipients", created.getId(), createdBy, created.getTotalRecipients());
+        submit(created.getId());
+        return created;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        for (BroadcastJob job : jobRepository.findByStatusInOrderByIdAsc(
+                List.of(BroadcastJob.Status.PENDING, BroadcastJob.Status.RUNNING))) {
+            log.info("Resuming broadcast job {} ({})", job.getId(), job.getStatus());
+            submit(job.getId());
+        }
+    }
+
+    public Optional<BroadcastJob> getJob(Long jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    public List<BroadcastJob> getRecentJobs() {
+        return jobRepository.findTop20ByOrderByIdDesc();
+    }
+
+    public List<BroadcastRecipient> getFailures(Long jobId, Long afterId, int limit) {
+        return recipientRepository.findPage(jobId, BroadcastRecipient.Status.FAILED,
+                afterId == null ? 0L : afterId, PageRequest.of(0, Math.max(1, Math.min(limit, 1000))));
+    }
+
+    /**
+     * Останавливает рассылку: уже отправленные сообщения остаются, необработанные получатели пропускаются.
+     */
+    public Optional<BroadcastJob> cancel(Long jobId) {
+        if (jobRepository.finishIfActive(jobId, BroadcastJob.Status.CANCELLED.name(), LocalDateTime.now()) > 0) {
+            jobRepository.refreshProgress(jobId);
+        }
+        return jobRepository.findById(jobId);
+    }
+
+    private void submit(Long jobId) {
+        coordinator.execute(() -> {
+            try {
+                runJob(jobId);
+            } catch (Exception e) {
+                log.error("Broadcast job {} failed: {}", jobId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Отправляет рассылку постранично: страница получателей обрабатывается пулом отправителей,
+     * после каждой страницы обновляется прогресс и проверяется отмена.
+     */
+    public void runJob(Long jobId) {
+        BroadcastJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || !isActive(job)) {
+            return;
+        }
+        // Статус меняется условным UPDATE: сохранение снимка job затёрло бы отмену, пришедшую после чтения
+        if (jobRepository.markRunning(jobId, LocalDateTime.now()) == 0) {
+            return;
+        }
+
+        long afterId = 0L;
+        while (true) {
+            List<BroadcastRecipient> page = recipientRepository.findPage(
+                    jobId, BroadcastRecipient.Status.PENDING, afterId, PageRequest.of(0, pageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            List<CompletableFuture<Void>> sends = new ArrayList<>(page.size());
+            for (BroadcastRecipient recipient : page) {
+                sends.add(CompletableFuture.runAsync(() -> deliver(recipient, job.getMessage()), senders));
+            }
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+            afterId = page.get(page.size() - 1).getId();
+            jobRepository.refreshProgress(jobId);
+
+            BroadcastJob current = jobRepository.findById(jobId).orElse(null);
+            if (current == null || !isActive(current)) {
+                log.info("Broadcast job {} stopped", jobId);
+                return;
+            }
+        }
+
+        jobRepository.refreshProgress(jobId);
+        if (jobRepository.finishIfActive(jobId, BroadcastJob.Status.COMPLETED.name(), LocalDateTime.now()) == 0) {
+            log.info("Broadcast job {} stopped", jobId);
+            return;
+        }
+        jobRepository.findById(jobId).ifPresent(finished -> log.info("Broadcast job {} completed: sent {}, failed {}",
+                jobId, finished.getSentCount(), finished.getFailedCount()));
+    }
+
+    private void deliver(BroadcastRecipient recipient, String message) {
+        for (int attempt = 1; ; attempt++) {
+            acquireSendSlot();
+            try {
+                telegramBotService.sendTextMessageToUser(recipient.getTelegramId(), message);
+                recipientRepository.markSent(recipient.getId(), attempt, LocalDateTime.now());
+                return;
+            } catch (Exception e) {
+                Integer retryAfter = retryAfterSeconds(e);
+                if (retryAfter != null && attempt < MAX_ATTEMPTS) {
+                    // 429 от Telegram: притормаживаем всех отправителей, а не только этот поток
+                    delaySends(TimeUnit.SECONDS.toNanos(retryAfter));
+                    continue;
+                }
+                log.warn("Broadcast to {} failed: {}", recipient.getTelegramId(), e.getMessage());
+                recipientRepository.markFailed(recipient.getId(), attempt, truncate(e.getMessage()), LocalDateTime.now());
+                return;
+            }
+        }
+    }
+
+    private void acquireSendSlot() {
+        long waitNanos;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSendAtNanos);
+            nextSendAtNanos = slot + sendIntervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void delaySends(long nanos) {
+        synchronized (rateLock) {
+            nextSendAtNanos = Math.max(nextSendAtNanos, System.nanoTime() + nanos);
+        }
+    }
+
+    private static Integer retryAfterSeconds(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TelegramApiRequestException requestException
+                    && Integer.valueOf(429).equals(requestException.getErrorCode())) {
+                Integer retryAfter = requestException.getParameters() != null
+                        ? requestException.getParameters().getRetryAfter()
+                        : null;
+                return retryAfter == null ? 1 : retryAfter;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isActive(BroadcastJob job) {
+        return job.getStatus() == BroadcastJob.Status.PENDING || job.getStatus() == BroadcastJob.Status.RUNNING;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,81 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto;
+import com.mkisten.subscriptionbackend.dto.SubscriptionStatusBatchItem;
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.User;
+import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.security.JwtUtil;
+import com.mkisten.subscriptionbackend.service.SubscriptionStatusProjection.SubscriptionStatusSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Статусы подписки и сервисные токены для пачки пользователей одним запросом
+ * (автообновление в vacancy-backend).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SubscriptionStatusBatchService {
+
+    private final UserService userService;
+    private final SubscriptionStatusProjection subscriptionStatusProjection;
+    private final SubscriptionCalculator subscriptionCalculator;
+    private final JwtUtil jwtUtil;
+
+    @Value("${app.internal.service-token-ttl-seconds:900}")
+    private long serviceTokenTtlSeconds;
+
+    @Value("${app.internal.batch-max-size:500}")
+    private int batchMaxSize;
+
+    public List<SubscriptionStatusBatchItem> getStatuses(List<Long> telegramIds, ServiceCode service) {
+        if (telegramIds == null || telegramIds.isEmpty()) {
+            return List.of();
+        }
+        LinkedHashSet<Long> uniqueIds = new LinkedHashSet<>();
+        telegramIds.stream().filter(Objects::nonNull).forEach(uniqueIds::add);
+        if (uniqueIds.size() > batchMaxSize) {
+            throw new IllegalArgumentException("Too many telegramIds in one batch: " + uniqueIds.size() + " > " + batchMaxSize);
+        }
+
+        ServiceCode serviceCode = service != null ? service : ServiceCode.VACANCY;
+        LocalDate today = LocalDate.now();
+        List<SubscriptionStatusBatchItem> items = new ArrayList<>(uniqueIds.size());
+        for (User user : userService.findByTelegramIds(uniqueIds)) {
+            try {
+                items.add(new SubscriptionStatusBatchItem(
+                        user.getTelegramId(),
+                        jwtUtil.generateServiceToken(user.getTelegramId(), serviceTokenTtlSeconds),
+                        status(user, serviceCode, today)));
+            } catch (Exception e) {
+                log.warn("Batch status failed for user {} service {}: {}", user.getTelegramId(), serviceCode, e.getMessage());
+            }
+        }
+        log.debug("Batch subscription status: requested {}, returned {}", uniqueIds.size(), items.size());
+        return items;
+    }
+
+    private SubscriptionStatusDto status(User user, ServiceCode serviceCode, LocalDate today) {
+        SubscriptionStatusSnapshot snapshot = subscriptionStatusProjection.find(user.getId(), serviceCode);
+        if (snapshot != null) {
+            return SubscriptionStatusDtoMapper.toDto(user, serviceCode, snapshot.subscriptionPlan(), snapshot.subscriptionEndDate(),
+                    snapshot.trialUsed(), snapshot.isActive(today), snapshot.daysRemaining(today));
+        }
+        UserServiceSubscription subscription = userService.getOrCreateService(user, serviceCode);
+        subscriptionStatusProjection.record(subscription);
+        boolean active = subscriptionCalculator.calculateSubscriptionActive(subscription);
+        return SubscriptionStatusDtoMapper.toDto(user, serviceCode, subscription.getSubscriptionPlan(),
+                subscription.getSubscriptionEndDate(), subscription.getTrialUsed(), active,
+                subscriptionCalculator.getDaysRemaining(subscription));
+    }
+}
@@ -0,0 +1,38 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto;
+import com.mkisten.subscription.contract.enums.ServiceCodeDto;
+import com.mkisten.subscription.contract.enums.SubscriptionPlanDto;
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
+import com.mkisten.subscriptionbackend.entity.User;
+
+import java.time.LocalDate;
+
+/**
+ * Сборка SubscriptionStatusDto из пользователя и уже посчитанного статуса подписки.
+ */
+public final class SubscriptionStatusDtoMapper {
+
+    private SubscriptionStatusDtoMapper() {
+    }
+
+    public static SubscriptionStatusDto toDto(User user, ServiceCode serviceCode, SubscriptionPlan plan, LocalDate endDate,
+                                              Boolean trialUsed, boolean active, long daysRemaining) {
+        SubscriptionStatusDto dto = new SubscriptionStatusDto();
+        dto.setTelegramId(user.getTelegramId());
+        dto.setFirstName(user.getFirstName());
+        dto.setLastName(user.getLastName());
+        dto.setUsername(user.getUsername());
+        dto.setEmail(user.getEmail());
+        dto.setSubscriptionEndDate(endDate);
+        // если в контракте SubscriptionPlanDto — маппишь через valueOf
+        dto.setSubscriptionPlan(plan != null ? SubscriptionPlanDto.valueOf(plan.name()) : null);
+        dto.setActive(active);
+        dto.setDaysRemaining(daysRemaining);
+        dto.setTrialUsed(trialUsed);
+        dto.setRole(user.getRole().name());
+        dto.setServiceCode(ServiceCodeDto.valueOf(serviceCode.name()));
+        return dto;
+    }
+}
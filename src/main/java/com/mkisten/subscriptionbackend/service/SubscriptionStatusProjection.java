@@ -0,0 +1,179 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.SubscriptionPlan;
+import com.mkisten.subscriptionbackend.entity.SubscriptionStatusView;
+import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.repository.SubscriptionStatusViewRepository;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-модель статуса подписки для /api/subscription/status.
+ * Держит снимки в памяти и в таблице subscription_status_view. Снимок обновляется
+ * после коммита любого изменения user_services (см. SubscriptionStatusProjectionListener),
+ * а активность и остаток дней считаются от текущей даты при чтении, поэтому смена суток
+ * не требует пересчёта.
+ */
+@Slf4j
+@Service
+public class SubscriptionStatusProjection {
+
+    private final SubscriptionStatusViewRepository viewRepository;
+    private final UserServiceSubscriptionRepository subscriptionRepository;
+    private final TransactionTemplate requiresNew;
+    private final Map<Key, SubscriptionStatusSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public SubscriptionStatusProjection(SubscriptionStatusViewRepository viewRepository,
+                                        UserServiceSubscriptionRepository subscriptionRepository,
+                                        PlatformTransactionManager transactionManager) {
+        this.viewRepository = viewRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Снимок статуса или null, если его ещё нет ни в памяти, ни в таблице.
+     */
+    public SubscriptionStatusSnapshot find(Long userId, ServiceCode serviceCode) {
+        if (userId == null || serviceCode == null) {
+            return null;
+        }
+        Key key = new Key(userId, serviceCode);
+        SubscriptionStatusSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        return viewRepository.findByUserIdAndServiceCode(userId, serviceCode)
+                .map(view -> snapshots.merge(key, SubscriptionStatusSnapshot.of(view), SubscriptionStatusProjection::newer))
+                .orElse(null);
+    }
+
+    /**
+     * Записать снимок по текущему состоянию подписки: сразу, если транзакции нет,
+     * иначе после её коммита.
+     */
+    public SubscriptionStatusSnapshot record(UserServiceSubscription subscription) {
+        if (subscription == null || subscription.getUser() == null || subscription.getUser().getId() == null) {
+            return null;
+        }
+        Key key = new Key(subscription.getUser().getId(), subscription.getServiceCode());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(key);
+                }
+            });
+            return null;
+        }
+        return apply(key);
+    }
+
+    /**
+     * Удалить снимок после коммита удаления подписки.
+     */
+    public void evict(UserServiceSubscription subscription) {
+        if (subscription == null || subscription.getUser() == null || subscription.getUser().getId() == null) {
+            return;
+        }
+        Key key = new Key(subscription.getUser().getId(), subscription.getServiceCode());
+        Runnable remove = () -> {
+            snapshots.remove(key);
+            requiresNew.executeWithoutResult(status -> viewRepository.deleteByUserIdAndServiceCode(key.userId(), key.serviceCode()));
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove.run();
+                }
+            });
+        } else {
+            remove.run();
+        }
+    }
+
+    /**
+     * Пересобирает снимок из текущей строки user_services, а не из состояния на момент коммита:
+     * строка блокируется FOR UPDATE, поэтому параллельные обновления одного ключа идут по очереди
+     * и последним записывается актуальное состояние, в каком бы порядке ни пришли коммиты.
+     */
+    private SubscriptionStatusSnapshot apply(Key key) {
+        try {
+            Optional<SubscriptionStatusView> saved = requiresNew.execute(status -> {
+                Optional<UserServiceSubscription> current =
+                        subscriptionRepository.lockByUserIdAndServiceCode(key.userId(), key.serviceCode());
+                if (current.isEmpty()) {
+                    viewRepository.deleteByUserIdAndServiceCode(key.userId(), key.serviceCode());
+                    return Optional.empty();
+                }
+                UserServiceSubscription subscription = current.get();
+                SubscriptionStatusView view = viewRepository.findByUserIdAndServiceCode(key.userId(), key.serviceCode())
+                        .orElseGet(SubscriptionStatusView::new);
+                view.setUserId(key.userId());
+                view.setServiceCode(key.serviceCode());
+                view.setSubscriptionPlan(subscription.getSubscriptionPlan());
+                view.setSubscriptionEndDate(subscription.getSubscriptionEndDate());
+                view.setTrialUsed(Boolean.TRUE.equals(subscription.getTrialUsed()));
+                view.setVersion(view.getVersion() + 1);
+                view.setUpdatedAt(LocalDateTime.now());
+                return Optional.of(viewRepository.save(view));
+            });
+            if (saved == null || saved.isEmpty()) {
+                snapshots.remove(key);
+                return null;
+            }
+            return snapshots.merge(key, SubscriptionStatusSnapshot.of(saved.get()), SubscriptionStatusProjection::newer);
+        } catch (Exception e) {
+            // Без снимка запрос статуса пойдёт по медленному пути и пересоздаст его
+            snapshots.remove(key);
+            log.warn("Failed to update subscription status projection for user {} service {}: {}",
+                    key.userId(), key.serviceCode(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static SubscriptionStatusSnapshot newer(SubscriptionStatusSnapshot current, SubscriptionStatusSnapshot candidate) {
+        return candidate.version() >= current.version() ? candidate : current;
+    }
+
+    private record Key(Long userId, ServiceCode serviceCode) {
+    }
+
+    public record SubscriptionStatusSnapshot(Long userId,
+                                             ServiceCode serviceCode,
+                                             SubscriptionPlan subscriptionPlan,
+                                             LocalDate subscriptionEndDate,
+                                             boolean trialUsed,
+                                             long version) {
+
+        static SubscriptionStatusSnapshot of(SubscriptionStatusView view) {
+            return new SubscriptionStatusSnapshot(view.getUserId(), view.getServiceCode(), view.getSubscriptionPlan(),
+                    view.getSubscriptionEndDate(), Boolean.TRUE.equals(view.getTrialUsed()), view.getVersion());
+        }
+
+        // Те же правила, что в SubscriptionCalculatorImpl
+        public boolean isActive(LocalDate today) {
+            return subscriptionEndDate != null && !today.isAfter(subscriptionEndDate);
+        }
+
+        public long daysRemaining(LocalDate today) {
+            return isActive(today) ? ChronoUnit.DAYS.between(today, subscriptionEndDate) : 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA-слушатель user_services: любое сохранение подписки (продление, отмена, оплата,
+ * ночной пересчёт) обновляет SubscriptionStatusProjection после коммита.
+ */
+@Component
+public class SubscriptionStatusProjectionListener {
+
+    private final SubscriptionStatusProjection projection;
+
+    public SubscriptionStatusProjectionListener(@Lazy SubscriptionStatusProjection projection) {
+        this.projection = projection;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(UserServiceSubscription subscription) {
+        projection.record(subscription);
+    }
+
+    @PostRemove
+    public void onRemoved(UserServiceSubscription subscription) {
+        projection.evict(subscription);
+    }
+}
@@ -1,53 +1,109 @@
 package com.mkisten.subscriptionbackend.service;
 
 import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.event.SubscriptionStatusChangedEvent;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository.StatusChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class SubscriptionStatusService {
 
-    private final UserService userService;
     private final TelegramAuthService telegramAuthService;
+    private final UserServiceSubscriptionRepository userServiceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Counter batchCounter;
+    private final Counter activatedCounter;
+    private final Counter deactivatedCounter;
+    private final Timer runTimer;
+    private final AtomicLong lastRunChanged = new AtomicLong();
+
+    public SubscriptionStatusService(TelegramAuthService telegramAuthService,
+                                     UserServiceSubscriptionRepository userServiceRepository,
+                                     ApplicationEventPublisher eventPublisher,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.subscription-reconcile.batch-size:1000}") int batchSize,
+                                     @Value("${app.subscription-reconcile.max-batches:10000}") int maxBatches) {
+        this.telegramAuthService = telegramAuthService;
+        this.userServiceRepository = userServiceRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.batchCounter = meterRegistry.counter("subscription.reconcile.batches");
+        this.activatedCounter = meterRegistry.counter("subscription.reconcile.changed", "status", "activated");
+        this.deactivatedCounter = meterRegistry.counter("subscription.reconcile.changed", "status", "deactivated");
+        this.runTimer = meterRegistry.timer("subscription.reconcile.duration");
+        meterRegistry.gauge("subscription.reconcile.last.changed", lastRunChanged);
+    }
 
     /**
-     * Ежедневное обновление статусов подписок по всем сервисам
+     * Ежедневная сверка статусов подписок по всем сервисам. Идёт пачками по batchSize строк,
+     * каждая пачка — один UPDATE в своей транзакции, поэтому блокировки короткие и объём не растёт
+     * с числом подписок. Снимки статуса не трогаем: активность в них считается по дате окончания.
      */
-    @Scheduled(cron = "0 0 0 * * ?")
-    @Transactional
+    @Scheduled(cron = "${app.subscription-reconcile.cron:0 0 0 * * ?}")
     public void updateAllSubscriptionStatuses() {
         try {
             log.info("Starting bulk subscription status update...");
+            long changed = runTimer.record(() -> reconcile(LocalDate.now()));
+            log.info("Bulk subscription status update completed. Updated {} subscriptions", changed);
+        } catch (Exception e) {
+            log.error("Error updating subscription statuses", e);
+        }
+    }
 
-            List<UserServiceSubscription> allSubscriptions = userService.getAllUserServices();
-            int updatedCount = 0;
-
-            for (UserServiceSubscription subscription : allSubscriptions) {
-                boolean currentStatus = subscription.isActive();
-                boolean calculatedStatus = telegramAuthService.calculateSubscriptionActive(subscription);
-
-                if (currentStatus != calculatedStatus) {
-                    subscription.setActive(calculatedStatus);
-                    updatedCount++;
-
-                    log.info("Updated subscription status for user {} service {}: {} -> {}",
-                            subscription.getUser().getTelegramId(), subscription.getServiceCode(),
-                            currentStatus, calculatedStatus);
-                }
+    long reconcile(LocalDate today) {
+        long changed = 0;
+        lastRunChanged.set(0);
+        for (int batch = 1; batch <= maxBatches; batch++) {
+            List<StatusChange> changes = transactionTemplate.execute(status ->
+                    userServiceRepository.reconcileActiveFlags(today, LocalDateTime.now(), batchSize));
+            if (changes == null || changes.isEmpty()) {
+                break;
             }
+            batchCounter.increment();
+            publishChanges(changes);
+            changed += changes.size();
+            lastRunChanged.set(changed);
+            log.debug("Subscription status batch {}: {} updated, {} total", batch, changes.size(), changed);
+            if (changes.size() < batchSize) {
+                break;
+            }
+        }
+        return changed;
+    }
 
-            log.info("Bulk subscription status update completed. Updated {} subscriptions", updatedCount);
-
-        } catch (Exception e) {
-            log.error("Error updating subscription statuses", e);
+    private void publishChanges(List<StatusChange> changes) {
+        List<Long> activated = new ArrayList<>();
+        List<Long> deactivated = new ArrayList<>();
+        for (StatusChange change : changes) {
+            (Boolean.TRUE.equals(change.getActive()) ? activated : deactivated).add(change.getId());
         }
+        activatedCounter.increment(activated.size());
+        deactivatedCounter.increment(deactivated.size());
+        eventPublisher.publishEvent(new SubscriptionStatusChangedEvent(this, activated, deactivated));
     }
 
     /**
@@ -0,0 +1,80 @@
+package com.mkisten.subscriptionbackend.service;
+
+import com.mkisten.subscriptionbackend.entity.ServiceCode;
+import com.mkisten.subscriptionbackend.entity.User;
+import com.mkisten.subscriptionbackend.entity.UserServiceSubscription;
+import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка пользователей в CSV: строки читаются курсором и сразу пишутся в ответ,
+ * контекст персистентности периодически очищается, поэтому память не растёт с числом пользователей.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserExportService {
+
+    private static final String HEADER = "Telegram ID,First Name,Last Name,Username,Email,Phone,Subscription End,Plan,Status,Days Remaining,Role,Created At\n";
+    private static final int CLEAR_EVERY_ROWS = 500;
+
+    private final UserServiceSubscriptionRepository userServiceRepository;
+    private final UserService userService;
+    private final EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public void writeUsersCsv(ServiceCode serviceCode, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        // Заголовок уходит клиенту сразу, до первой строки из БД
+        writer.flush();
+
+        try (Stream<UserServiceSubscription> subscriptions = userServiceRepository.streamByServiceCodeWithUser(serviceCode)) {
+            int rows = 0;
+            Iterator<UserServiceSubscription> iterator = subscriptions.iterator();
+            while (iterator.hasNext()) {
+                writeRow(writer, iterator.next());
+                if (++rows % CLEAR_EVERY_ROWS == 0) {
+                    entityManager.clear();
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeRow(Writer writer, UserServiceSubscription subscription) throws IOException {
+        User user = subscription.getUser();
+        writer.append(String.valueOf(user.getTelegramId())).append(',');
+        writer.append(escapeCsv(user.getFirstName())).append(',');
+        writer.append(escapeCsv(user.getLastName())).append(',');
+        writer.append(escapeCsv(user.getUsername())).append(',');
+        writer.append(escapeCsv(user.getEmail())).append(',');
+        writer.append(escapeCsv(user.getPhone())).append(',');
+        writer.append(String.valueOf(subscription.getSubscriptionEndDate())).append(',');
+        writer.append(String.valueOf(subscription.getSubscriptionPlan())).append(',');
+        writer.append(subscription.isActive() ? "ACTIVE" : "INACTIVE").append(',');
+        writer.append(String.valueOf(userService.getDaysRemaining(subscription))).append(',');
+        writer.append(String.valueOf(user.getRole())).append(',');
+        writer.append(String.valueOf(user.getCreatedAt())).append('\n');
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -11,15 +11,22 @@ import com.mkisten.subscriptionbackend.repository.UserRepository;
 import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -34,11 +41,94 @@ public class UserService {
     private final SubscriptionCalculator subscriptionCalculator;
     private final PasswordEncoder passwordEncoder;
 
+    // Снимки пользователей для JwtAuthenticationFilter, сбрасываются при любом изменении пользователя
+    private final Map<Long, PrincipalSnapshot> principalCache = new ConcurrentHashMap<>();
+
+    @Value("${app.security.principal-cache.ttl-seconds:60}")
+    private long principalCacheTtlSeconds;
+
+    @Value("${app.security.principal-cache.max-size:10000}")
+    private int principalCacheMaxSize;
+
     public User findByTelegramId(Long telegramId) {
         return userRepository.findByTelegramId(telegramId)
                 .orElseThrow(() -> new RuntimeException("User not found with Telegram ID: " + telegramId));
     }
 
+    /**
+     * Пользователь для аутентификации запроса. Берётся из кэша снимков без обращения к БД;
+     * каждый вызов получает свою копию, поэтому изменения в ней не видны другим запросам.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public User findPrincipal(Long telegramId) {
+        long now = System.currentTimeMillis();
+        PrincipalSnapshot snapshot = principalCache.get(telegramId);
+        if (snapshot != null && snapshot.expiresAt() > now) {
+            return copyOf(snapshot.user());
+        }
+
+        User user = findByTelegramId(telegramId);
+        if (principalCacheTtlSeconds > 0) {
+            if (principalCache.size() >= principalCacheMaxSize) {
+                principalCache.clear();
+            }
+            principalCache.put(telegramId, new PrincipalSnapshot(copyOf(user), now + principalCacheTtlSeconds * 1000L));
+        }
+        return user;
+    }
+
+    /**
+     * Сбросить снимок пользователя: сразу и ещё раз после коммита текущей транзакции,
+     * чтобы параллельный запрос не закэшировал данные до коммита.
+     */
+    public void evictPrincipal(Long telegramId) {
+        if (telegramId == null) {
+            return;
+        }
+        principalCache.remove(telegramId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    principalCache.remove(telegramId);
+                }
+            });
+        }
+    }
+
+    private static User copyOf(User source) {
+        User copy = new User();
+        copy.setId(source.getId());
+        copy.setTelegramId(source.getTelegramId());
+        copy.setFirstName(source.getFirstName());
+        copy.setLastName(source.getLastName());
+        copy.setUsername(source.getUsername());
+        copy.setEmail(source.getEmail());
+        copy.setPhone(source.getPhone());
+        copy.setLogin(source.getLogin());
+        copy.setPasswordHash(source.getPasswordHash());
+        copy.setPasswordUpdatedAt(source.getPasswordUpdatedAt());
+        copy.setSubscriptionPlan(source.getSubscriptionPlan());
+        copy.setSubscriptionEndDate(source.getSubscriptionEndDate());
+        copy.setTrialUsed(source.getTrialUsed());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setLastLoginAt(source.getLastLoginAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        copy.setRole(source.getRole());
+        copy.setSubscriptionActive(source.getSubscriptionActive());
+        return copy;
+    }
+
+    private record PrincipalSnapshot(User user, long expiresAt) {
+    }
+
+    public List<User> findByTelegramIds(Collection<Long> telegramIds) {
+        if (telegramIds == null || telegramIds.isEmpty()) {
+            return List.of();
+        }
+        return userRepository.findByTelegramIdIn(telegramIds);
+    }
+
     public Optional<User> findByTelegramIdOptional(Long telegramId) {
         return userRepository.findByTelegramId(telegramId);
     }
@@ -52,6 +142,7 @@ public class UserService {
 
     public User save(User user) {
         User savedUser = userRepository.save(user);
+        evictPrincipal(savedUser.getTelegramId());
         log.debug("Saved user: {}", savedUser.getTelegramId());
         return savedUser;
     }
@@ -60,6 +151,7 @@ public class UserService {
     public void deleteUser(Long telegramId) {
         User user = findByTelegramId(telegramId);
         userRepository.delete(user);
+        evictPrincipal(telegramId);
         log.info("User deleted: {}", telegramId);
     }
 
@@ -126,6 +218,7 @@ public class UserService {
 
         user.setUpdatedAt(LocalDateTime.now());
         User savedUser = userRepository.save(user);
+        evictPrincipal(telegramId);
         log.info("User profile updated: {}", telegramId);
         return savedUser;
     }
@@ -194,7 +287,9 @@ public class UserService {
         }
 
         user.setUpdatedAt(LocalDateTime.now());
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        evictPrincipal(telegramId);
+        return savedUser;
     }
 
     public User updateLogin(Long telegramId, String login) {
@@ -340,13 +435,17 @@ public class UserService {
         }
         user.setUpdatedAt(LocalDateTime.now());
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        evictPrincipal(telegramId);
+        return savedUser;
     }
 
     public User setUserRole(Long telegramId, UserRole role) {
         User user = findByTelegramId(telegramId);
         user.setRole(role);
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        evictPrincipal(telegramId);
+        return savedUser;
     }
 
     public boolean isAdmin(User user) {
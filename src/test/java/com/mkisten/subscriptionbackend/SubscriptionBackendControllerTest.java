@@ -2,8 +2,11 @@ package com.mkisten.subscriptionbackend;
 
 import com.mkisten.subscription.contract.dto.payment.CreatePaymentRequestDto;
 import com.mkisten.subscription.contract.dto.payment.PaymentResponseDto;
+import com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto;
 import com.mkisten.subscription.contract.enums.SubscriptionPlanDto;
 import com.mkisten.subscriptionbackend.controller.*;
+import com.mkisten.subscriptionbackend.dto.SubscriptionStatusBatchItem;
+import com.mkisten.subscriptionbackend.dto.SubscriptionStatusBatchRequest;
 import com.mkisten.subscriptionbackend.entity.*;
 import com.mkisten.subscriptionbackend.security.JwtUtil;
 import com.mkisten.subscriptionbackend.service.*;
@@ -12,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -57,7 +61,8 @@ class SubscriptionBackendControllerTest {
         UserService userService = mock(UserService.class);
         TelegramAuthService telegramAuthService = mock(TelegramAuthService.class);
         SubscriptionStatusService statusService = mock(SubscriptionStatusService.class);
-        SubscriptionController controller = new SubscriptionController(userService, telegramAuthService, statusService);
+        SubscriptionController controller = new SubscriptionController(userService, telegramAuthService, statusService,
+                mock(SubscriptionStatusProjection.class));
 
         User user = new User();
         user.setTelegramId(1L);
@@ -70,12 +75,52 @@ class SubscriptionBackendControllerTest {
         when(telegramAuthService.isSubscriptionActive(subscription)).thenReturn(true);
         when(telegramAuthService.getDaysRemaining(subscription)).thenReturn(3);
 
-        ResponseEntity<?> response = controller.getSubscriptionStatus(user, ServiceCode.VACANCY);
-        com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto dto =
-                (com.mkisten.subscription.contract.dto.subscription.SubscriptionStatusDto) response.getBody();
+        ResponseEntity<?> response = controller.getSubscriptionStatus(user, ServiceCode.VACANCY, null);
+        SubscriptionStatusDto dto = (SubscriptionStatusDto) response.getBody();
         assertTrue(dto.getActive());
     }
 
+    @Test
+    void subscriptionControllerServesStatusFromProjectionWithEtag() {
+        UserService userService = mock(UserService.class);
+        SubscriptionStatusProjection projection = mock(SubscriptionStatusProjection.class);
+        SubscriptionController controller = new SubscriptionController(userService, mock(TelegramAuthService.class),
+                mock(SubscriptionStatusService.class), projection);
+
+        User user = new User();
+        user.setId(5L);
+        user.setTelegramId(1L);
+        user.setRole(UserRole.USER);
+        when(projection.find(5L, ServiceCode.VACANCY)).thenReturn(new SubscriptionStatusProjection.SubscriptionStatusSnapshot(
+                5L, ServiceCode.VACANCY, SubscriptionPlan.MONTHLY, LocalDate.now().plusDays(3), true, 7));
+
+        ResponseEntity<?> response = controller.getSubscriptionStatus(user, ServiceCode.VACANCY, null);
+        SubscriptionStatusDto dto = (SubscriptionStatusDto) response.getBody();
+        assertTrue(dto.getActive());
+        assertEquals(3L, dto.getDaysRemaining());
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
+
+        ResponseEntity<?> notModified = controller.getSubscriptionStatus(user, ServiceCode.VACANCY, etag);
+        assertEquals(304, notModified.getStatusCode().value());
+        assertNull(notModified.getBody());
+        verify(userService, never()).getOrCreateService(any(), any());
+    }
+
+    @Test
+    void internalSubscriptionControllerRequiresServiceKey() {
+        SubscriptionStatusBatchService batchService = mock(SubscriptionStatusBatchService.class);
+        InternalSubscriptionController controller = new InternalSubscriptionController(batchService, "secret");
+        SubscriptionStatusBatchRequest request = new SubscriptionStatusBatchRequest(List.of(1L), ServiceCode.VACANCY);
+        when(batchService.getStatuses(List.of(1L), ServiceCode.VACANCY))
+                .thenReturn(List.of(new SubscriptionStatusBatchItem(1L, "t", null)));
+
+        assertEquals(403, controller.getStatusBatch("wrong", request).getStatusCode().value());
+        assertEquals(403, controller.getStatusBatch(null, request).getStatusCode().value());
+        ResponseEntity<List<SubscriptionStatusBatchItem>> response = controller.getStatusBatch("secret", request);
+        assertEquals("t", response.getBody().get(0).getToken());
+    }
+
     @Test
     void telegramAuthControllerCreateSession() {
         TelegramBotService telegramBotService = mock(TelegramBotService.class);
@@ -122,7 +167,8 @@ class SubscriptionBackendControllerTest {
         TelegramBotService telegramBotService = mock(TelegramBotService.class);
         UserService userService = mock(UserService.class);
         BotMessageService botMessageService = mock(BotMessageService.class);
-        BotManagementController controller = new BotManagementController(telegramBotService, userService, botMessageService);
+        BotManagementController controller = new BotManagementController(telegramBotService, userService, botMessageService,
+                mock(BroadcastService.class), mock(UserExportService.class));
 
         UserServiceSubscription subscription = new UserServiceSubscription();
         subscription.setUser(new User());
@@ -207,7 +253,8 @@ class SubscriptionBackendControllerTest {
         UserService userService = mock(UserService.class);
         TelegramAuthService telegramAuthService = mock(TelegramAuthService.class);
         PaymentService paymentService = mock(PaymentService.class);
-        AdminController controller = new AdminController(userService, telegramAuthService, paymentService);
+        AdminController controller = new AdminController(userService, telegramAuthService, paymentService,
+                mock(AdminStatsService.class));
 
         User user = new User();
         user.setTelegramId(1L);
@@ -1,22 +1,34 @@
 package com.mkisten.subscriptionbackend;
 
+import com.mkisten.subscriptionbackend.controller.AdminPaymentController;
 import com.mkisten.subscriptionbackend.entity.*;
+import com.mkisten.subscriptionbackend.event.SubscriptionStatusChangedEvent;
 import com.mkisten.subscriptionbackend.repository.AuthSessionRepository;
 import com.mkisten.subscriptionbackend.repository.BotMessageRepository;
+import com.mkisten.subscriptionbackend.repository.BroadcastJobRepository;
+import com.mkisten.subscriptionbackend.repository.BroadcastRecipientRepository;
 import com.mkisten.subscriptionbackend.repository.PaymentRepository;
+import com.mkisten.subscriptionbackend.repository.SubscriptionStatusViewRepository;
 import com.mkisten.subscriptionbackend.repository.UserRepository;
 import com.mkisten.subscriptionbackend.repository.UserServiceSubscriptionRepository;
 import com.mkisten.subscriptionbackend.security.JwtUtil;
 import com.mkisten.subscriptionbackend.service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -72,11 +84,36 @@ class SubscriptionBackendServiceTest {
         assertEquals(SubscriptionPlan.TRIAL, lastSaved.getSubscriptionPlan());
     }
 
+    @Test
+    void userServiceCachesPrincipalUntilRoleChanges() {
+        UserRepository userRepository = mock(UserRepository.class);
+        UserService service = new UserService(userRepository, mock(UserServiceSubscriptionRepository.class),
+                mock(SubscriptionCalculator.class), mock(PasswordEncoder.class));
+        ReflectionTestUtils.setField(service, "principalCacheTtlSeconds", 60L);
+        ReflectionTestUtils.setField(service, "principalCacheMaxSize", 100);
+
+        User stored = new User();
+        stored.setTelegramId(1L);
+        stored.setRole(UserRole.USER);
+        when(userRepository.findByTelegramId(1L)).thenReturn(Optional.of(stored));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.findPrincipal(1L);
+        User cached = service.findPrincipal(1L);
+        cached.setRole(UserRole.ADMIN);
+        assertEquals(UserRole.USER, service.findPrincipal(1L).getRole());
+        verify(userRepository, times(1)).findByTelegramId(1L);
+
+        service.setUserRole(1L, UserRole.ADMIN);
+        assertEquals(UserRole.ADMIN, service.findPrincipal(1L).getRole());
+        verify(userRepository, times(3)).findByTelegramId(1L);
+    }
+
     @Test
     void subscriptionStatusServiceUpdatesUserStatus() {
-        UserService userService = mock(UserService.class);
         TelegramAuthService telegramAuthService = mock(TelegramAuthService.class);
-        SubscriptionStatusService statusService = new SubscriptionStatusService(userService, telegramAuthService);
+        SubscriptionStatusService statusService = newStatusService(telegramAuthService,
+                mock(UserServiceSubscriptionRepository.class), mock(ApplicationEventPublisher.class), 100);
 
         User user = new User();
         user.setTelegramId(1L);
@@ -92,6 +129,50 @@ class SubscriptionBackendServiceTest {
         assertTrue(subscription.isActive());
     }
 
+    @Test
+    void subscriptionStatusServiceReconcilesInBatches() {
+        UserServiceSubscriptionRepository repository = mock(UserServiceSubscriptionRepository.class);
+        ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        SubscriptionStatusService statusService = newStatusService(mock(TelegramAuthService.class), repository, publisher, 2);
+        LocalDate today = LocalDate.now();
+
+        when(repository.reconcileActiveFlags(eq(today), any(), eq(2)))
+                .thenReturn(List.of(statusChange(1L, true), statusChange(2L, false)))
+                .thenReturn(List.of(statusChange(3L, false)));
+
+        ArgumentCaptor<SubscriptionStatusChangedEvent> events = ArgumentCaptor.forClass(SubscriptionStatusChangedEvent.class);
+
+        // Неполная вторая пачка означает, что расхождений больше нет
+        assertEquals(3, ReflectionTestUtils.<Long>invokeMethod(statusService, "reconcile", today));
+        verify(repository, times(2)).reconcileActiveFlags(eq(today), any(), eq(2));
+        verify(publisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of(1L), events.getAllValues().get(0).getActivatedIds());
+        assertEquals(List.of(2L), events.getAllValues().get(0).getDeactivatedIds());
+        assertEquals(List.of(3L), events.getAllValues().get(1).getDeactivatedIds());
+    }
+
+    private static SubscriptionStatusService newStatusService(TelegramAuthService telegramAuthService,
+                                                              UserServiceSubscriptionRepository repository,
+                                                              ApplicationEventPublisher publisher,
+                                                              int batchSize) {
+        return new SubscriptionStatusService(telegramAuthService, repository, publisher,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), batchSize, 100);
+    }
+
+    private static UserServiceSubscriptionRepository.StatusChange statusChange(Long id, boolean active) {
+        return new UserServiceSubscriptionRepository.StatusChange() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Boolean getActive() {
+                return active;
+            }
+        };
+    }
+
     @Test
     void botMessageServiceLogsMessage() {
         BotMessageRepository repository = mock(BotMessageRepository.class);
@@ -158,7 +239,7 @@ class SubscriptionBackendServiceTest {
     void authSessionServiceCreateSessionSetsFields() {
         AuthSessionRepository repository = mock(AuthSessionRepository.class);
         JwtUtil jwtUtil = mock(JwtUtil.class);
-        AuthSessionService service = new AuthSessionService(repository, jwtUtil);
+        AuthSessionService service = new AuthSessionService(repository, jwtUtil, 600, true);
 
         when(repository.save(any(AuthSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -173,7 +254,7 @@ class SubscriptionBackendServiceTest {
     void authSessionServiceCheckAuthStatusNotFound() {
         AuthSessionRepository repository = mock(AuthSessionRepository.class);
         JwtUtil jwtUtil = mock(JwtUtil.class);
-        AuthSessionService service = new AuthSessionService(repository, jwtUtil);
+        AuthSessionService service = new AuthSessionService(repository, jwtUtil, 600, true);
 
         when(repository.findBySessionIdAndDeviceId("s", "d")).thenReturn(Optional.empty());
 
@@ -181,6 +262,29 @@ class SubscriptionBackendServiceTest {
         assertEquals(AuthSessionService.AuthStatus.NOT_FOUND, response.getStatus());
     }
 
+    @Test
+    void authSessionServiceAwaitCompletesWhenBotConfirms() {
+        AuthSessionRepository repository = mock(AuthSessionRepository.class);
+        AuthSessionService service = new AuthSessionService(repository, mock(JwtUtil.class), 600, false);
+
+        AuthSession session = service.createAuthSession("device");
+        var abandoned = service.awaitCompletion(session.getSessionId(), "device");
+        var pending = service.awaitCompletion(session.getSessionId(), "device");
+        assertFalse(pending.isDone());
+        // Ожидание, брошенное по таймауту, не должно мешать живому клиенту
+        abandoned.cancel(false);
+
+        service.completeAuthSession(session.getSessionId(), 7L, "jwt");
+
+        assertTrue(pending.isDone());
+        AuthSessionService.AuthStatusResponse response = service.checkAuthStatus(session.getSessionId(), "device");
+        assertEquals(AuthSessionService.AuthStatus.COMPLETED, response.getStatus());
+        assertEquals("jwt", response.getJwtToken());
+        // Сессия одноразовая, без сквозной записи таблица не используется
+        assertEquals(AuthSessionService.AuthStatus.NOT_FOUND, service.checkAuthStatus(session.getSessionId(), "device").getStatus());
+        verifyNoInteractions(repository);
+    }
+
     @Test
     void adminSetupServiceCallsUserService() {
         UserService userService = mock(UserService.class);
@@ -213,4 +317,201 @@ class SubscriptionBackendServiceTest {
         String subLink = service.generateSubscriptionLink(SubscriptionPlan.TRIAL);
         assertTrue(subLink.contains("trial"));
     }
+
+    @Test
+    void jwtUtilVerifiesTokenOnceAndKeepsCachedClaimsIntact() {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", "testSecretKeyThatIsAtLeast32CharactersLong");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 3600L);
+        ReflectionTestUtils.setField(jwtUtil, "clockSkew", 30000L);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedCacheSize", 10);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+
+        String token = jwtUtil.generateToken(42L);
+
+        assertEquals(42L, jwtUtil.verifiedTelegramId(token));
+        jwtUtil.verifiedClaims(token).remove("exp");
+        assertTrue(jwtUtil.validateToken(token, 42L));
+        assertNotNull(jwtUtil.refreshToken(token));
+        assertNull(jwtUtil.verifiedTelegramId(token + "x"));
+    }
+
+    @Test
+    void broadcastServiceSendsPendingRecipientsAndTracksFailures() {
+        BroadcastJobRepository jobRepository = mock(BroadcastJobRepository.class);
+        BroadcastRecipientRepository recipientRepository = mock(BroadcastRecipientRepository.class);
+        TelegramBotService telegramBotService = mock(TelegramBotService.class);
+        BroadcastService service = new BroadcastService(jobRepository, recipientRepository, telegramBotService,
+                mock(PlatformTransactionManager.class), 1000, 2, 100);
+        try {
+            BroadcastJob job = new BroadcastJob();
+            job.setId(5L);
+            job.setMessage("hello");
+            job.setServiceCode(ServiceCode.VACANCY);
+            when(jobRepository.findById(5L)).thenReturn(Optional.of(job));
+            when(jobRepository.markRunning(eq(5L), any())).thenReturn(1);
+            when(jobRepository.finishIfActive(eq(5L), eq("COMPLETED"), any())).thenReturn(1);
+
+            BroadcastRecipient first = new BroadcastRecipient();
+            first.setId(1L);
+            first.setJobId(5L);
+            first.setTelegramId(100L);
+            BroadcastRecipient second = new BroadcastRecipient();
+            second.setId(2L);
+            second.setJobId(5L);
+            second.setTelegramId(200L);
+            when(recipientRepository.findPage(eq(5L), eq(BroadcastRecipient.Status.PENDING), eq(0L), any()))
+                    .thenReturn(List.of(first, second));
+            when(recipientRepository.findPage(eq(5L), eq(BroadcastRecipient.Status.PENDING), eq(2L), any()))
+                    .thenReturn(List.of());
+            doThrow(new RuntimeException("blocked")).when(telegramBotService).sendTextMessageToUser(eq(200L), anyString());
+
+            service.runJob(5L);
+
+            verify(recipientRepository).markSent(eq(1L), eq(1), any());
+            verify(recipientRepository).markFailed(eq(2L), eq(1), eq("blocked"), any());
+            verify(jobRepository, atLeastOnce()).refreshProgress(5L);
+            verify(jobRepository).finishIfActive(eq(5L), eq("COMPLETED"), any());
+            verify(jobRepository, never()).save(any());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void broadcastServiceDoesNotOverwriteCancelledJob() {
+        BroadcastJobRepository jobRepository = mock(BroadcastJobRepository.class);
+        BroadcastRecipientRepository recipientRepository = mock(BroadcastRecipientRepository.class);
+        TelegramBotService telegramBotService = mock(TelegramBotService.class);
+        BroadcastService service = new BroadcastService(jobRepository, recipientRepository, telegramBotService,
+                mock(PlatformTransactionManager.class), 1000, 1, 100);
+        try {
+            BroadcastJob job = new BroadcastJob();
+            job.setId(6L);
+            job.setMessage("hello");
+            job.setServiceCode(ServiceCode.VACANCY);
+            when(jobRepository.findById(6L)).thenReturn(Optional.of(job));
+            // Отмена успела раньше: условный UPDATE не находит активную рассылку
+            when(jobRepository.markRunning(eq(6L), any())).thenReturn(0);
+
+            service.runJob(6L);
+            service.cancel(6L);
+
+            verify(recipientRepository, never()).findPage(any(), any(), any(), any());
+            verify(jobRepository).finishIfActive(eq(6L), eq("CANCELLED"), any());
+            verify(jobRepository, never()).refreshProgress(6L);
+            verify(jobRepository, never()).save(any());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void userExportServiceStreamsCsvAndClosesCursor() throws Exception {
+        UserServiceSubscriptionRepository repository = mock(UserServiceSubscriptionRepository.class);
+        UserService userService = mock(UserService.class);
+        UserExportService service = new UserExportService(repository, userService,
+                mock(EntityManager.class));
+
+        User user = new User();
+        user.setTelegramId(42L);
+        user.setFirstName("Ivan, Jr");
+        user.setRole(UserRole.USER);
+        UserServiceSubscription subscription = new UserServiceSubscription();
+        subscription.setUser(user);
+        subscription.setServiceCode(ServiceCode.VACANCY);
+        subscription.setActive(true);
+        AtomicBoolean closed = new AtomicBoolean();
+        when(repository.streamByServiceCodeWithUser(ServiceCode.VACANCY))
+                .thenReturn(Stream.of(subscription).onClose(() -> closed.set(true)));
+        when(userService.getDaysRemaining(subscription)).thenReturn(3);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.writeUsersCsv(ServiceCode.VACANCY, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("Telegram ID,"));
+        assertTrue(lines[1].startsWith("42,\"Ivan, Jr\","));
+        assertTrue(lines[1].contains(",ACTIVE,3,USER,"));
+        assertTrue(closed.get());
+        verify(repository, never()).findByServiceCode(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void adminStatsServiceBuildsSnapshotFromAggregatesAndCachesIt() {
+        UserServiceSubscriptionRepository repository = mock(UserServiceSubscriptionRepository.class);
+        PaymentService paymentService = mock(PaymentService.class);
+        AdminStatsService service = new AdminStatsService(repository, paymentService, 60000);
+
+        UserServiceSubscriptionRepository.SubscriptionTotals totals = mock(UserServiceSubscriptionRepository.SubscriptionTotals.class);
+        when(totals.getTotal()).thenReturn(10L);
+        when(totals.getActive()).thenReturn(6L);
+        when(totals.getExpired()).thenReturn(3L);
+        when(totals.getTrialUsedCount()).thenReturn(4L);
+        when(totals.getNewUsersCount()).thenReturn(2L);
+        when(repository.aggregateTotals(eq(ServiceCode.VACANCY), any(), any())).thenReturn(totals);
+        UserServiceSubscriptionRepository.GroupCount<SubscriptionPlan> trials = mock(UserServiceSubscriptionRepository.GroupCount.class);
+        when(trials.getGroupKey()).thenReturn(SubscriptionPlan.TRIAL);
+        when(trials.getGroupCount()).thenReturn(10L);
+        when(repository.countByPlan(ServiceCode.VACANCY)).thenReturn(List.of(trials));
+        UserServiceSubscriptionRepository.GroupCount<UserRole> users = mock(UserServiceSubscriptionRepository.GroupCount.class);
+        when(users.getGroupKey()).thenReturn(UserRole.USER);
+        when(users.getGroupCount()).thenReturn(9L);
+        when(repository.countByRole(ServiceCode.VACANCY)).thenReturn(List.of(users));
+        when(paymentService.getPaymentStats()).thenReturn(new AdminPaymentController.PaymentStats(5, 1, 3, 1, 300.0));
+
+        var stats = service.getStats(ServiceCode.VACANCY);
+        service.getStats(ServiceCode.VACANCY);
+
+        assertEquals(10, stats.totalUsers());
+        assertEquals(6, stats.activeSubscriptions());
+        assertEquals(3, stats.expiredSubscriptions());
+        assertEquals(4, stats.trialUsedCount());
+        assertEquals(6, stats.trialAvailableCount());
+        assertEquals(2, stats.newUsersLast30Days());
+        assertEquals(10L, stats.planDistribution().get(SubscriptionPlan.TRIAL));
+        assertEquals(9L, stats.roleDistribution().get(UserRole.USER));
+        assertEquals(300.0, stats.totalRevenue());
+        verify(repository, times(1)).aggregateTotals(any(), any(), any());
+        verify(repository, never()).findByServiceCode(any());
+    }
+
+    @Test
+    void subscriptionStatusProjectionRebuildsFromCurrentRowInsteadOfStaleChange() {
+        SubscriptionStatusViewRepository viewRepository = mock(SubscriptionStatusViewRepository.class);
+        UserServiceSubscriptionRepository subscriptionRepository = mock(UserServiceSubscriptionRepository.class);
+        SubscriptionStatusProjection projection = new SubscriptionStatusProjection(
+                viewRepository, subscriptionRepository, mock(PlatformTransactionManager.class));
+
+        User user = new User();
+        user.setId(7L);
+        UserServiceSubscription stale = new UserServiceSubscription();
+        stale.setUser(user);
+        stale.setServiceCode(ServiceCode.VACANCY);
+        stale.setSubscriptionPlan(SubscriptionPlan.TRIAL);
+        stale.setSubscriptionEndDate(LocalDate.of(2026, 1, 1));
+        UserServiceSubscription current = new UserServiceSubscription();
+        current.setUser(user);
+        current.setServiceCode(ServiceCode.VACANCY);
+        current.setSubscriptionPlan(SubscriptionPlan.MONTHLY);
+        current.setSubscriptionEndDate(LocalDate.of(2026, 2, 1));
+        SubscriptionStatusView existing = new SubscriptionStatusView();
+        existing.setVersion(3);
+        when(subscriptionRepository.lockByUserIdAndServiceCode(7L, ServiceCode.VACANCY)).thenReturn(Optional.of(current));
+        when(viewRepository.findByUserIdAndServiceCode(7L, ServiceCode.VACANCY)).thenReturn(Optional.of(existing));
+        when(viewRepository.save(any(SubscriptionStatusView.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Коммит со старым состоянием пришёл позже: снимок всё равно строится по текущей строке
+        SubscriptionStatusProjection.SubscriptionStatusSnapshot snapshot = projection.record(stale);
+
+        assertEquals(SubscriptionPlan.MONTHLY, snapshot.subscriptionPlan());
+        assertEquals(LocalDate.of(2026, 2, 1), snapshot.subscriptionEndDate());
+        assertEquals(4, snapshot.version());
+
+        when(subscriptionRepository.lockByUserIdAndServiceCode(7L, ServiceCode.VACANCY)).thenReturn(Optional.empty());
+        assertNull(projection.record(stale));
+        verify(viewRepository).deleteByUserIdAndServiceCode(7L, ServiceCode.VACANCY);
+    }
 }
@@ -0,0 +1,173 @@
+package com.mkisten.superjobparserbackend.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Нужная парсеру часть window.APP_STATE со страницы поиска SuperJob: выбранный ответ списка вакансий
+ * и сущности из entities, проиндексированные по типу и id. Читается потоково прямо из HTML,
+ * без DOM и без копии всего JSON; остальные разделы состояния пропускаются парсером.
+ */
+final class SuperjobAppState {
+
+    static final String MARKER = "window.APP_STATE=";
+    private static final String VACANCY_TYPE = "vacancy";
+
+    private final JsonNode vacancyResponse;
+    private final Map<String, Map<String, JsonNode>> entities;
+
+    private SuperjobAppState(JsonNode vacancyResponse, Map<String, Map<String, JsonNode>> entities) {
+        this.vacancyResponse = vacancyResponse;
+        this.entities = entities;
+    }
+
+    /**
+     * Читает APP_STATE из HTML страницы. responseSelector выбирает ответ из responses.lists.vacancy.
+     * Возвращает null, если на странице нет APP_STATE или в нём нет подходящего списка вакансий.
+     */
+    static SuperjobAppState read(ObjectMapper objectMapper, String html, Function<JsonNode, JsonNode> responseSelector)
+            throws IOException {
+        int start = findPayloadStart(html);
+        if (start < 0) {
+            return null;
+        }
+        StringReader reader = new StringReader(html);
+        reader.skip(start);
+        try (JsonParser parser = objectMapper.getFactory().createParser(reader)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            JsonNode vacancyResponse = null;
+            Set<String> vacancyIds = null;
+            Map<String, Map<String, JsonNode>> entities = new HashMap<>();
+            // Разбираем только корневой объект: хвост скрипта после него не читается
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("responses".equals(name)) {
+                    JsonNode vacancyResponses = readPath(objectMapper, parser, "lists", VACANCY_TYPE);
+                    if (vacancyResponses != null && vacancyResponses.isObject() && !vacancyResponses.isEmpty()) {
+                        vacancyResponse = responseSelector.apply(vacancyResponses);
+                        vacancyIds = vacancyResponse == null ? null : resultIds(vacancyResponse);
+                    }
+                } else if ("entities".equals(name)) {
+                    readEntities(objectMapper, parser, entities, vacancyIds);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (vacancyResponse == null) {
+                return null;
+            }
+            return new SuperjobAppState(vacancyResponse, entities);
+        }
+    }
+
+    JsonNode vacancyResponse() {
+        return vacancyResponse;
+    }
+
+    /**
+     * Сущность из entities или MissingNode, если её нет.
+     */
+    JsonNode entity(String type, String id) {
+        if (type == null || id == null) {
+            return MissingNode.getInstance();
+        }
+        JsonNode entity = entities.getOrDefault(type, Map.of()).get(id);
+        return entity == null ? MissingNode.getInstance() : entity;
+    }
+
+    private static int findPayloadStart(String html) {
+        if (html == null) {
+            return -1;
+        }
+        int from = 0;
+        while (true) {
+            int marker = html.indexOf(MARKER, from);
+            if (marker < 0) {
+                return -1;
+            }
+            // Маркер должен быть внутри <script>, а не в тексте страницы
+            if (html.lastIndexOf("<script", marker) > html.lastIndexOf("</script", marker)) {
+                return marker + MARKER.length();
+            }
+            from = marker + MARKER.length();
+        }
+    }
+
+    private static JsonNode readPath(ObjectMapper objectMapper, JsonParser parser, String... path) throws IOException {
+        return readPath(objectMapper, parser, path, 0);
+    }
+
+    private static JsonNode readPath(ObjectMapper objectMapper, JsonParser parser, String[] path, int depth) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        JsonNode found = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (found == null && path[depth].equals(name)) {
+                found = depth == path.length - 1
+                        ? objectMapper.readTree(parser)
+                        : readPath(objectMapper, parser, path, depth + 1);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return found;
+    }
+
+    private static void readEntities(ObjectMapper objectMapper,
+                                     JsonParser parser,
+                                     Map<String, Map<String, JsonNode>> entities,
+                                     Set<String> vacancyIds) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String type = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            // Если список уже прочитан, вакансии из других блоков страницы не материализуем
+            Set<String> wantedIds = VACANCY_TYPE.equals(type) ? vacancyIds : null;
+            Map<String, JsonNode> byId = entities.computeIfAbsent(type, key -> new HashMap<>());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String id = parser.currentName();
+                parser.nextToken();
+                if (wantedIds != null && !wantedIds.contains(id)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                byId.put(id, objectMapper.readTree(parser));
+            }
+        }
+    }
+
+    private static Set<String> resultIds(JsonNode vacancyResponse) {
+        Set<String> ids = new HashSet<>();
+        for (JsonNode idNode : vacancyResponse.path("result")) {
+            String id = idNode.asText(null);
+            if (id != null && !id.isBlank()) {
+                ids.add(id.trim());
+            }
+        }
+        return ids;
+    }
+}
@@ -14,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -55,6 +56,8 @@ public class SuperjobVacancySearchService {
     private static final String DEFAULT_BROWSER_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
             + "(KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36";
     private static final Pattern VACANCY_ID_PATTERN = Pattern.compile("-(\\d+)\\.html");
+    private static final Pattern VACANCY_HREF_PATTERN = Pattern.compile("<a\\s[^>]*?href\\s*=\\s*[\"']([^\"']*/vakansii/[^\"']*\\.html)[\"']",
+            Pattern.CASE_INSENSITIVE);
     private static final Pattern NUMBER_PATTERN = Pattern.compile("(\\d[\\d\\s]*)");
     private static final Pattern INTEGER_PATTERN = Pattern.compile("\\d+");
     private static final DateTimeFormatter API_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
@@ -71,6 +74,10 @@ public class SuperjobVacancySearchService {
     private final SearchProfileRepository searchProfileRepository;
     private final SearchPageCacheRepository searchPageCacheRepository;
     private final ObjectMapper objectMapper;
+    private final SearchSingleFlight searchSingleFlight;
+    private final SearchPageMemoryCache searchPageMemoryCache;
+    private final PrefetchRateLimiter prefetchRateLimiter;
+    private final CrawlerHttpClient crawlerHttpClient;
 
     @Value("${app.superjob.base-url}")
     private String baseUrl;
@@ -93,18 +100,12 @@ public class SuperjobVacancySearchService {
     @Value("${app.cache.ttl-minutes:30}")
     private int cacheTtlMinutes;
 
-    @Value("${app.prefetch.enabled:true}")
-    private boolean prefetchEnabled;
-
     @Value("${app.prefetch.max-pages:10}")
     private int prefetchMaxPages;
 
     @Value("${app.prefetch.recent-request-window-minutes:1440}")
     private int prefetchRecentWindowMinutes;
 
-    @Value("${app.prefetch.request-delay-ms:250}")
-    private long prefetchRequestDelayMs;
-
     public Map<String, Object> search(MultiValueMap<String, String> params) {
         SearchCriteria criteria = normalizeCriteria(params);
         registerProfile(criteria);
@@ -115,8 +116,7 @@ public class SuperjobVacancySearchService {
         }
 
         try {
-            ApiSearchResult live = crawlApi(criteria);
-            savePageCache(criteria, live);
+            ApiSearchResult live = loadOrCrawl(criteria);
             return toResponse(live);
         } catch (Exception e) {
             log.warn("SuperJob HTML crawl failed, returning cache fallback: {}", e.getMessage());
@@ -128,47 +128,73 @@ public class SuperjobVacancySearchService {
         }
     }
 
-    public void prefetchDueProfiles() {
-        if (!prefetchEnabled) {
-            return;
-        }
+    public List<SearchProfile> findPrefetchCandidates() {
         LocalDateTime cutoff = LocalDateTime.now(SOURCE_ZONE).minusMinutes(prefetchRecentWindowMinutes);
-        List<SearchProfile> profiles = searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
-        for (SearchProfile profile : profiles) {
-            prefetchProfile(profile);
-        }
+        return searchProfileRepository.findByEnabledTrueAndLastRequestedAtAfterOrderByLastRequestedAtDesc(cutoff);
     }
 
-    @Transactional
-    protected void prefetchProfile(SearchProfile profile) {
+    public PrefetchResult prefetchProfile(SearchProfile profile) {
+        int pagesFetched = 0;
         try {
             SearchCriteria baseCriteria = criteriaFromProfile(profile);
             int maxPages = Math.max(1, prefetchMaxPages);
             int discoveredPages = maxPages;
             for (int page = 0; page < Math.min(maxPages, discoveredPages); page++) {
                 SearchCriteria pageCriteria = baseCriteria.withPage(page);
-                ApiSearchResult result = crawlApi(pageCriteria);
-                savePageCache(pageCriteria, result);
+                prefetchRateLimiter.acquire(buildSearchUri(pageCriteria).getHost());
+                SearchSingleFlight.Flight<ApiSearchResult> flight = crawlAndCache(pageCriteria);
+                // Страница из чужого полёта не загружалась этим вызовом
+                if (flight.leader()) {
+                    pagesFetched++;
+                }
+                ApiSearchResult result = flight.value();
                 discoveredPages = Math.min(maxPages, Math.max(result.pages(), page + 1));
                 if (result.items().isEmpty()) {
                     break;
                 }
-                sleepQuietly(prefetchRequestDelayMs);
             }
-            profile.setLastPrefetchedAt(LocalDateTime.now(SOURCE_ZONE));
-            profile.setLastSuccessAt(LocalDateTime.now(SOURCE_ZONE));
-            profile.setFailureCount(0);
-            profile.setLastError(null);
-            searchProfileRepository.save(profile);
+            searchProfileRepository.markPrefetchSucceeded(profile.getCacheKey(), LocalDateTime.now(SOURCE_ZONE));
+            return new PrefetchResult(pagesFetched, true);
         } catch (Exception e) {
-            profile.setLastPrefetchedAt(LocalDateTime.now(SOURCE_ZONE));
-            profile.setFailureCount(profile.getFailureCount() + 1);
-            profile.setLastError(limit(e.getMessage(), 1000));
-            searchProfileRepository.save(profile);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            searchProfileRepository.markPrefetchFailed(
+                    profile.getCacheKey(), LocalDateTime.now(SOURCE_ZONE), limit(e.getMessage(), 1000));
             log.warn("Background prefetch failed for {}: {}", profile.getCacheKey(), e.getMessage());
+            return new PrefetchResult(pagesFetched, false);
         }
     }
 
+    /**
+     * Лидер перечитывает кэш перед загрузкой: предыдущий полёт мог сохранить страницу
+     * уже после проверки в search, и тогда повторно её не загружаем.
+     */
+    private ApiSearchResult loadOrCrawl(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.execute(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()), () -> {
+            ApiSearchResult fresh = loadFreshPageCache(criteria);
+            if (fresh != null) {
+                return fresh;
+            }
+            return crawlAndSave(criteria);
+        });
+    }
+
+    /**
+     * Фоновое обновление загружает страницу, даже если она ещё свежая.
+     * Если страницу уже загружает другой поток, ждёт его результат, и leader в ответе false.
+     */
+    private SearchSingleFlight.Flight<ApiSearchResult> crawlAndCache(SearchCriteria criteria) throws Exception {
+        return searchSingleFlight.executeFlight(SearchSingleFlight.pageKey(criteria.cacheKey(), criteria.page()),
+                () -> crawlAndSave(criteria));
+    }
+
+    private ApiSearchResult crawlAndSave(SearchCriteria criteria) throws Exception {
+        ApiSearchResult live = crawlApi(criteria);
+        savePageCache(criteria, live);
+        return live;
+    }
+
     private ApiSearchResult crawlApi(SearchCriteria criteria) throws Exception {
         SearchResult live = crawl(criteria);
         List<Map<String, Object>> items = live.items().stream().map(this::toApiItem).toList();
@@ -180,20 +206,21 @@ public class SuperjobVacancySearchService {
         URI uri = buildSearchUri(criteria);
         log.info("SuperJob parser request URL: {}", uri);
 
-        Document document = Jsoup.connect(uri.toString())
-                .userAgent(resolveUserAgent())
-                .referrer(baseUrl)
-                .header("Accept-Language", "ru-RU,ru;q=0.9,en-US;q=0.8,en;q=0.7")
-                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8")
-                .header("Cache-Control", "no-cache")
-                .header("Pragma", "no-cache")
-                .header("Upgrade-Insecure-Requests", "1")
-                .timeout(timeoutMs)
-                .followRedirects(true)
-                .maxBodySize(0)
-                .get();
-
-        SearchPagePayload payload = parseAppState(document, criteria).orElseGet(() -> {
+        CrawlerHttpClient.Page response = crawlerHttpClient.getPage(uri, Map.of(
+                "User-Agent", resolveUserAgent(),
+                "Referer", baseUrl,
+                "Accept-Language", "ru-RU,ru;q=0.9,en-US;q=0.8,en;q=0.7",
+                "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8",
+                "Cache-Control", "no-cache",
+                "Pragma", "no-cache",
+                "Upgrade-Insecure-Requests", "1"
+        ), timeoutMs);
+        String html = response.body();
+        String pageUrl = response.uri().toString();
+
+        // DOM строим только для разбора карточек, когда APP_STATE на странице нет
+        SearchPagePayload payload = parseAppState(html, pageUrl, criteria).orElseGet(() -> {
+            Document document = Jsoup.parse(html, pageUrl);
             List<ScrapedVacancy> cards = parseCards(document);
             Long found = parseFound(document).orElse((long) cards.size());
             Integer pages = cards.isEmpty() ? 0 : (cards.size() >= sourcePageSize ? criteria.page() + 2 : criteria.page() + 1);
@@ -238,6 +265,7 @@ public class SuperjobVacancySearchService {
             profile.setAreas(String.join(",", criteria.areas()));
             profile.setEnabled(true);
             profile.setLastRequestedAt(LocalDateTime.now(SOURCE_ZONE));
+            profile.setRequestCount(profile.getRequestCount() + 1);
             searchProfileRepository.save(profile);
         } catch (Exception e) {
             log.warn("Failed to register parser profile {}: {}", criteria.cacheKey(), e.getMessage());
@@ -245,26 +273,27 @@ public class SuperjobVacancySearchService {
     }
 
     private ApiSearchResult loadFreshPageCache(SearchCriteria criteria) {
-        ApiSearchResult cached = loadLatestPageCache(criteria);
-        if (cached == null) {
-            return null;
-        }
-        LocalDateTime cutoff = LocalDateTime.now(SOURCE_ZONE).minusMinutes(cacheTtlMinutes);
-        Optional<SearchPageCache> pageCache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page());
-        if (pageCache.isPresent() && !pageCache.get().getFetchedAt().isBefore(cutoff)) {
-            return cached;
+        ApiSearchResult memory = searchPageMemoryCache.getFresh(criteria.cacheKey(), criteria.page(), ApiSearchResult.class);
+        if (memory != null) {
+            return memory;
         }
-        return null;
+        return loadPageCache(criteria, LocalDateTime.now(SOURCE_ZONE).minusMinutes(cacheTtlMinutes));
     }
 
     private ApiSearchResult loadLatestPageCache(SearchCriteria criteria) {
+        return loadPageCache(criteria, null);
+    }
+
+    private ApiSearchResult loadPageCache(SearchCriteria criteria, LocalDateTime notBefore) {
         try {
             Optional<SearchPageCache> cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page());
-            if (cache.isEmpty()) {
+            if (cache.isEmpty() || (notBefore != null && cache.get().getFetchedAt().isBefore(notBefore))) {
                 return null;
             }
             List<Map<String, Object>> items = objectMapper.readValue(cache.get().getItemsJson(), ITEM_LIST_TYPE);
-            return new ApiSearchResult(cache.get().getFoundCount(), cache.get().getPagesCount(), items);
+            ApiSearchResult result = new ApiSearchResult(cache.get().getFoundCount(), cache.get().getPagesCount(), items);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, items.size(), cache.get().getFetchedAt().atZone(SOURCE_ZONE).toInstant());
+            return result;
         } catch (Exception e) {
             log.warn("Failed to load page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
             return null;
@@ -273,6 +302,7 @@ public class SuperjobVacancySearchService {
 
     @Transactional
     protected void savePageCache(SearchCriteria criteria, ApiSearchResult result) {
+        LocalDateTime fetchedAt = LocalDateTime.now(SOURCE_ZONE);
         try {
             SearchPageCache cache = searchPageCacheRepository.findFirstByCacheKeyAndPageNumberOrderByFetchedAtDesc(criteria.cacheKey(), criteria.page()).orElseGet(SearchPageCache::new);
             cache.setCacheKey(criteria.cacheKey());
@@ -281,10 +311,12 @@ public class SuperjobVacancySearchService {
             cache.setPagesCount(result.pages());
             cache.setItemsJson(objectMapper.writeValueAsString(result.items()));
             cache.setItemCount(result.items().size());
-            cache.setFetchedAt(LocalDateTime.now(SOURCE_ZONE));
+            cache.setFetchedAt(fetchedAt);
             searchPageCacheRepository.save(cache);
+            searchPageMemoryCache.put(criteria.cacheKey(), criteria.page(), result, result.items().size(), fetchedAt.atZone(SOURCE_ZONE).toInstant());
             searchPageCacheRepository.deleteExpiredByCacheKey(criteria.cacheKey(), LocalDateTime.now(SOURCE_ZONE).minus(Duration.ofDays(2)));
         } catch (Exception e) {
+            searchPageMemoryCache.invalidate(criteria.cacheKey(), criteria.page());
             log.warn("Failed to save page cache {} page {}: {}", criteria.cacheKey(), criteria.page(), e.getMessage());
         }
     }
@@ -396,24 +428,16 @@ public class SuperjobVacancySearchService {
         return vacancies;
     }
 
-    private Optional<SearchPagePayload> parseAppState(Document document, SearchCriteria criteria) {
+    private Optional<SearchPagePayload> parseAppState(String html, String pageUrl, SearchCriteria criteria) {
         try {
-            JsonNode appState = extractAppState(document);
+            SuperjobAppState appState = SuperjobAppState.read(objectMapper, html,
+                    vacancyResponses -> selectVacancyResponse(vacancyResponses, criteria));
             if (appState == null) {
                 return Optional.empty();
             }
 
-            JsonNode vacancyResponses = appState.path("responses").path("lists").path("vacancy");
-            if (!vacancyResponses.isObject() || vacancyResponses.isEmpty()) {
-                return Optional.empty();
-            }
-
-            JsonNode selectedResponse = selectVacancyResponse(vacancyResponses, criteria);
-            if (selectedResponse == null) {
-                return Optional.empty();
-            }
-
-            Map<String, String> alternateUrls = extractVacancyLinks(document);
+            JsonNode selectedResponse = appState.vacancyResponse();
+            Map<String, String> alternateUrls = extractVacancyLinks(html, pageUrl);
             List<ScrapedVacancy> vacancies = new ArrayList<>();
             for (JsonNode idNode : selectedResponse.path("result")) {
                 String externalId = normalizeBlank(idNode.asText(null));
@@ -436,21 +460,6 @@ public class SuperjobVacancySearchService {
         }
     }
 
-    private JsonNode extractAppState(Document document) throws Exception {
-        for (Element script : document.select("script")) {
-            String data = normalizeBlank(script.data());
-            if (data == null || !data.startsWith("window.APP_STATE=")) {
-                continue;
-            }
-            String json = data.substring("window.APP_STATE=".length()).trim();
-            if (json.endsWith(";")) {
-                json = json.substring(0, json.length() - 1);
-            }
-            return objectMapper.readTree(json);
-        }
-        return null;
-    }
-
     private JsonNode selectVacancyResponse(JsonNode vacancyResponses, SearchCriteria criteria) {
         JsonNode fallback = null;
         int expectedOffset = Math.max(criteria.page(), 0) * sourcePageSize;
@@ -471,8 +480,8 @@ public class SuperjobVacancySearchService {
         return fallback;
     }
 
-    private ScrapedVacancy parseAppStateVacancy(JsonNode appState, String externalId, String alternateUrl) {
-        JsonNode vacancyNode = appState.path("entities").path("vacancy").path(externalId);
+    private ScrapedVacancy parseAppStateVacancy(SuperjobAppState appState, String externalId, String alternateUrl) {
+        JsonNode vacancyNode = appState.entity("vacancy", externalId);
         if (vacancyNode.isMissingNode()) {
             return null;
         }
@@ -520,7 +529,7 @@ public class SuperjobVacancySearchService {
         return vacancy;
     }
 
-    private JsonNode relatedEntity(JsonNode appState, JsonNode owner, String relationName) {
+    private JsonNode relatedEntity(SuperjobAppState appState, JsonNode owner, String relationName) {
         if (owner == null || owner.isMissingNode()) {
             return null;
         }
@@ -530,7 +539,7 @@ public class SuperjobVacancySearchService {
         if (type == null || id == null) {
             return null;
         }
-        JsonNode entity = appState.path("entities").path(type).path(id);
+        JsonNode entity = appState.entity(type, id);
         return entity.isMissingNode() ? null : entity;
     }
 
@@ -580,7 +589,7 @@ public class SuperjobVacancySearchService {
         };
     }
 
-    private void applyAppStateSnippet(ScrapedVacancy vacancy, JsonNode appState, JsonNode searchSnippet) {
+    private void applyAppStateSnippet(ScrapedVacancy vacancy, SuperjobAppState appState, JsonNode searchSnippet) {
         if (searchSnippet == null || searchSnippet.isMissingNode()) {
             return;
         }
@@ -589,7 +598,7 @@ public class SuperjobVacancySearchService {
         String requirement = null;
         String responsibility = null;
         for (JsonNode sectionRef : searchSnippet.path("relationships").path("searchSnippetSections").path("data")) {
-            JsonNode section = appState.path("entities").path(sectionRef.path("type").asText("")).path(sectionRef.path("id").asText(""));
+            JsonNode section = appState.entity(sectionRef.path("type").asText(null), sectionRef.path("id").asText(null));
             String sectionType = normalizeBlank(section.path("attributes").path("sectionType").asText(null));
             String text = normalizeBlank(section.path("attributes").path("text").asText(null));
             if (sectionType == null || text == null) {
@@ -606,9 +615,9 @@ public class SuperjobVacancySearchService {
         vacancy.setSnippetResponsibility(limit(responsibility, 4000));
     }
 
-    private void applyAppStateWorkFormat(ScrapedVacancy vacancy, JsonNode appState, JsonNode vacancyNode, JsonNode detailInfo) {
+    private void applyAppStateWorkFormat(ScrapedVacancy vacancy, SuperjobAppState appState, JsonNode vacancyNode, JsonNode detailInfo) {
         for (JsonNode tagRef : vacancyNode.path("relationships").path("vacancyTags").path("data")) {
-            JsonNode tag = appState.path("entities").path(tagRef.path("type").asText("")).path(tagRef.path("id").asText(""));
+            JsonNode tag = appState.entity(tagRef.path("type").asText(null), tagRef.path("id").asText(null));
             String key = normalizeBlank(tag.path("attributes").path("key").asText(null));
             if (key == null) {
                 continue;
@@ -644,16 +653,20 @@ public class SuperjobVacancySearchService {
         }
     }
 
-    private Map<String, String> extractVacancyLinks(Document document) {
+    Map<String, String> extractVacancyLinks(String html, String pageUrl) {
         Map<String, String> links = new LinkedHashMap<>();
-        for (Element link : document.select("a[href*='/vakansii/'][href$='.html']")) {
-            String href = normalizeBlank(link.absUrl("href"));
-            if (href == null) {
-                href = normalizeBlank(link.attr("href"));
-            }
+        URI base = URI.create(pageUrl);
+        Matcher matcher = VACANCY_HREF_PATTERN.matcher(html);
+        while (matcher.find()) {
+            String href = normalizeBlank(Parser.unescapeEntities(matcher.group(1), true));
             if (href == null) {
                 continue;
             }
+            try {
+                href = base.resolve(href).toString();
+            } catch (IllegalArgumentException ignored) {
+                // оставляем ссылку как есть, как и absUrl для неразборчивых адресов
+            }
             String externalId = extractVacancyId(href);
             if (externalId != null) {
                 links.putIfAbsent(externalId, href);
@@ -848,17 +861,6 @@ public class SuperjobVacancySearchService {
         return values.stream().map(this::normalizeBlank).filter(Objects::nonNull).distinct().toList();
     }
 
-    private void sleepQuietly(long millis) {
-        if (millis <= 0) {
-            return;
-        }
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private void applySalary(ScrapedVacancy vacancy, String salaryText) {
         if (salaryText == null) {
             return;
@@ -1156,4 +1158,7 @@ public class SuperjobVacancySearchService {
         }
         return configuredUserAgent;
     }
+
+    public record PrefetchResult(int pagesFetched, boolean success) {
+    }
 }
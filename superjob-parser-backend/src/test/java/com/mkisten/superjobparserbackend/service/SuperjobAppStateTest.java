@@ -0,0 +1,186 @@
+package com.mkisten.superjobparserbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mkisten.superjobparserbackend.repository.ScrapedVacancyRepository;
+import com.mkisten.superjobparserbackend.repository.SearchPageCacheRepository;
+import com.mkisten.superjobparserbackend.repository.SearchProfileRepository;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Потоковое чтение APP_STATE сверяется с прежним разбором через DOM и полное дерево JSON на сохранённой странице.
+ */
+class SuperjobAppStateTest {
+
+    private static final String PAGE_URL = "https://www.superjob.ru/vacancy/search/?keywords=java";
+    private static final Pattern VACANCY_ID_PATTERN = Pattern.compile("-(\\d+)\\.html");
+    private static final Function<JsonNode, JsonNode> FIRST_PAGE = responses -> {
+        for (JsonNode response : responses) {
+            if (response.path("meta").path("offset").asInt(-1) == 0) {
+                return response;
+            }
+        }
+        return null;
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SuperjobVacancySearchService searchService = new SuperjobVacancySearchService(
+            mock(ScrapedVacancyRepository.class), mock(SearchProfileRepository.class), mock(SearchPageCacheRepository.class),
+            objectMapper, mock(SearchSingleFlight.class), mock(SearchPageMemoryCache.class),
+            mock(PrefetchRateLimiter.class), mock(CrawlerHttpClient.class));
+
+    @Test
+    void streamingReadMatchesTreePathWhenEntitiesFollowResponses() throws Exception {
+        String html = fixture();
+        assertTrue(html.indexOf("\"responses\"") < html.indexOf("\"entities\""));
+
+        assertSameVacancies(html);
+    }
+
+    @Test
+    void streamingReadMatchesTreePathWhenEntitiesPrecedeResponses() throws Exception {
+        String html = reorderAppState(fixture(), "entities", "router", "responses", "user");
+        assertTrue(html.indexOf("\"entities\"") < html.indexOf("\"responses\""));
+
+        assertSameVacancies(html);
+    }
+
+    @Test
+    void streamingReadSkipsVacanciesOutsideSelectedPageOnlyWhenListComesFirst() throws Exception {
+        SuperjobAppState listFirst = SuperjobAppState.read(objectMapper, fixture(), FIRST_PAGE);
+        SuperjobAppState entitiesFirst = SuperjobAppState.read(objectMapper,
+                reorderAppState(fixture(), "entities", "responses"), FIRST_PAGE);
+
+        assertTrue(listFirst.entity("vacancy", "103").isMissingNode());
+        assertFalse(entitiesFirst.entity("vacancy", "103").isMissingNode());
+        assertTrue(listFirst.entity("vacancy", null).isMissingNode());
+        assertTrue(listFirst.entity("resume", "404").isMissingNode());
+    }
+
+    @Test
+    void streamingReadIgnoresPagesWithoutAppStateScript() throws Exception {
+        String html = "<html><body><p>window.APP_STATE={\"responses\":{}}</p>"
+                + "<script>window.dataLayer=[];</script></body></html>";
+
+        assertNull(SuperjobAppState.read(objectMapper, html, FIRST_PAGE));
+        assertNull(SuperjobAppState.read(objectMapper, null, FIRST_PAGE));
+        assertNull(SuperjobAppState.read(objectMapper, fixture(), responses -> null));
+    }
+
+    private void assertSameVacancies(String html) throws Exception {
+        JsonNode tree = extractAppStateTree(html);
+        JsonNode expectedResponse = FIRST_PAGE.apply(tree.path("responses").path("lists").path("vacancy"));
+        SuperjobAppState appState = SuperjobAppState.read(objectMapper, html, FIRST_PAGE);
+
+        assertNotNull(appState);
+        assertEquals(expectedResponse, appState.vacancyResponse());
+        assertEquals(List.of("101", "102"), ids(appState.vacancyResponse()));
+        for (String id : ids(expectedResponse)) {
+            Map<String, JsonNode> expected = new LinkedHashMap<>();
+            collectGraph("vacancy", id, (type, entityId) -> tree.path("entities").path(type).path(entityId), expected);
+            Map<String, JsonNode> actual = new LinkedHashMap<>();
+            collectGraph("vacancy", id, appState::entity, actual);
+
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual, "vacancy " + id);
+        }
+
+        Map<String, String> expectedLinks = extractVacancyLinksFromDocument(Jsoup.parse(html, PAGE_URL));
+        assertEquals(expectedLinks, searchService.extractVacancyLinks(html, PAGE_URL));
+        assertEquals("https://www.superjob.ru/vakansii/kotlin-developer-102.html", expectedLinks.get("102"));
+    }
+
+    /**
+     * Сущность и всё, на что она ссылается через relationships, в виде "тип:id" → узел.
+     */
+    private static void collectGraph(String type, String id,
+                                     BiFunction<String, String, JsonNode> lookup,
+                                     Map<String, JsonNode> graph) {
+        if (type == null || id == null || graph.containsKey(type + ":" + id)) {
+            return;
+        }
+        JsonNode entity = lookup.apply(type, id);
+        if (entity.isMissingNode()) {
+            return;
+        }
+        graph.put(type + ":" + id, entity);
+        for (JsonNode relationship : entity.path("relationships")) {
+            JsonNode data = relationship.path("data");
+            for (JsonNode ref : data.isArray() ? data : List.of(data)) {
+                collectGraph(ref.path("type").asText(null), ref.path("id").asText(null), lookup, graph);
+            }
+        }
+    }
+
+    private static List<String> ids(JsonNode vacancyResponse) {
+        return StreamSupport.stream(vacancyResponse.path("result").spliterator(), false)
+                .map(JsonNode::asText)
+                .toList();
+    }
+
+    // Прежний путь: DOM, текст скрипта целиком и полное дерево JSON
+    private JsonNode extractAppStateTree(String html) throws IOException {
+        for (Element script : Jsoup.parse(html, PAGE_URL).select("script")) {
+            String data = script.data().trim();
+            if (!data.startsWith(SuperjobAppState.MARKER)) {
+                continue;
+            }
+            String json = data.substring(SuperjobAppState.MARKER.length()).trim();
+            if (json.endsWith(";")) {
+                json = json.substring(0, json.length() - 1);
+            }
+            return objectMapper.readTree(json);
+        }
+        throw new AssertionError("APP_STATE script not found");
+    }
+
+    private static Map<String, String> extractVacancyLinksFromDocument(Document document) {
+        Map<String, String> links = new LinkedHashMap<>();
+        for (Element link : document.select("a[href*='/vakansii/'][href$='.html']")) {
+            String href = link.absUrl("href");
+            Matcher matcher = VACANCY_ID_PATTERN.matcher(href);
+            if (matcher.find()) {
+                links.putIfAbsent(matcher.group(1), href);
+            }
+        }
+        return links;
+    }
+
+    private String reorderAppState(String html, String... order) throws IOException {
+        JsonNode tree = extractAppStateTree(html);
+        ObjectNode reordered = objectMapper.createObjectNode();
+        for (String name : order) {
+            reordered.set(name, tree.get(name));
+        }
+        // Маркер встречается и в тексте страницы, поэтому ищем его вместе с тегом
+        int start = html.indexOf("<script>" + SuperjobAppState.MARKER) + "<script>".length() + SuperjobAppState.MARKER.length();
+        int end = html.indexOf(";</script>", start);
+        return html.substring(0, start) + objectMapper.writeValueAsString(reordered) + html.substring(end);
+    }
+
+    private static String fixture() throws IOException {
+        try (InputStream in = SuperjobAppStateTest.class.getResourceAsStream("/fixtures/superjob-search-page.html")) {
+            assertNotNull(in, "fixture is missing");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
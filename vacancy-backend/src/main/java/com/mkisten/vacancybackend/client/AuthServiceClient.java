@@ -1,6 +1,10 @@
 package com.mkisten.vacancybackend.client;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.mkisten.vacancybackend.dto.*;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
@@ -8,7 +12,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -16,8 +24,49 @@ public class AuthServiceClient {
     @Value("${auth.service.url}")
     private String authUrl;
 
+    @Value("${auth.service.internal-key:}")
+    private String internalKey;
+
+    @Value("${app.auth.profile-cache.ttl-seconds:60}")
+    private long profileCacheTtlSeconds;
+
+    @Value("${app.auth.profile-cache.negative-ttl-seconds:10}")
+    private long profileCacheNegativeTtlSeconds;
+
+    @Value("${app.auth.profile-cache.max-size:10000}")
+    private long profileCacheMaxSize;
+
     private final RestTemplate restTemplate = new RestTemplate();
 
+    // Кэш token -> профиль: одновременные запросы по одному токену ждут одну загрузку,
+    // ответы 4xx (невалидный токен) кэшируются на более короткий срок
+    private Cache<String, CachedProfile> profileCache;
+
+    @PostConstruct
+    void initProfileCache() {
+        long positiveNanos = TimeUnit.SECONDS.toNanos(Math.max(profileCacheTtlSeconds, 0));
+        long negativeNanos = TimeUnit.SECONDS.toNanos(Math.max(profileCacheNegativeTtlSeconds, 0));
+        profileCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(profileCacheMaxSize, 0))
+                .expireAfter(new Expiry<String, CachedProfile>() {
+                    @Override
+                    public long expireAfterCreate(String token, CachedProfile value, long currentTime) {
+                        return value.error() == null ? positiveNanos : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, CachedProfile value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(token, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, CachedProfile value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     // Получение токена по Telegram ID
     public TokenResponse getTokenByTelegramId(Long telegramId) {
         String url = authUrl + "/api/auth/token?telegramId=" + telegramId;
@@ -42,15 +91,33 @@ public class AuthServiceClient {
         }
     }
 
-    // Получение профиля по токену
+    // Получение профиля по токену (через кэш)
     public ProfileResponse getCurrentUserProfile(String token) {
+        CachedProfile cached = profileCache.get(token, this::loadProfile);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.error() != null) {
+            throw cached.error();
+        }
+        return cached.profile();
+    }
+
+    private CachedProfile loadProfile(String token) {
         HttpHeaders headers = new HttpHeaders();
         headers.setBearerAuth(token);
         HttpEntity<?> entity = new HttpEntity<>(headers);
-        ResponseEntity<ProfileResponse> resp = restTemplate.exchange(
-                authUrl + "/api/auth/me", HttpMethod.GET, entity, ProfileResponse.class
-        );
-        return resp.getBody();
+        try {
+            ResponseEntity<ProfileResponse> resp = restTemplate.exchange(
+                    authUrl + "/api/auth/me", HttpMethod.GET, entity, ProfileResponse.class
+            );
+            return resp.getBody() == null ? null : new CachedProfile(resp.getBody(), null);
+        } catch (HttpStatusCodeException ex) {
+            if (ex.getStatusCode().is4xxClientError()) {
+                return new CachedProfile(null, ex);
+            }
+            throw ex;
+        }
     }
 
     // Обновление профиля (обычно PUT)
@@ -62,6 +129,7 @@ public class AuthServiceClient {
         ResponseEntity<ProfileResponse> resp = restTemplate.exchange(
                 authUrl + "/api/auth/profile", HttpMethod.PUT, entity, ProfileResponse.class
         );
+        profileCache.invalidate(token);
         return resp.getBody();
     }
 
@@ -94,6 +162,30 @@ public class AuthServiceClient {
         return resp.getBody();
     }
 
+    // Межсервисный ключ настроен — можно получать статусы и токены пачкой
+    public boolean isBatchStatusEnabled() {
+        return internalKey != null && !internalKey.isBlank();
+    }
+
+    // Статусы подписки и короткоживущие токены для пачки пользователей одним запросом
+    public Map<Long, SubscriptionStatusBatchItem> getSubscriptionStatusBatch(List<Long> telegramIds) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Service-Key", internalKey);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<SubscriptionStatusBatchRequest> entity =
+                new HttpEntity<>(new SubscriptionStatusBatchRequest(telegramIds, "VACANCY"), headers);
+        ResponseEntity<SubscriptionStatusBatchItem[]> resp = restTemplate.exchange(
+                authUrl + "/api/internal/subscription/status-batch", HttpMethod.POST, entity, SubscriptionStatusBatchItem[].class
+        );
+        Map<Long, SubscriptionStatusBatchItem> result = new LinkedHashMap<>();
+        if (resp.getBody() != null) {
+            Arrays.stream(resp.getBody())
+                    .filter(item -> item != null && item.getTelegramId() != null)
+                    .forEach(item -> result.put(item.getTelegramId(), item));
+        }
+        return result;
+    }
+
     public AiResumeAccessStatusResponse getAiResumeStatus(String token) {
         HttpHeaders headers = new HttpHeaders();
         headers.setBearerAuth(token);
@@ -139,4 +231,7 @@ public class AuthServiceClient {
         );
         return response.getBody();
     }
+
+    private record CachedProfile(ProfileResponse profile, HttpStatusCodeException error) {
+    }
 }
@@ -1,15 +1,25 @@
 package com.mkisten.vacancybackend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestTemplateConfig {
 
+    /**
+     * Таймаут чтения должен быть меньше app.search.fan-out.timeout-ms: прерывание не снимает поток
+     * с сокета, и поток bulkhead освобождается только по этому таймауту.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(@Value("${app.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+                                     @Value("${app.http.read-timeout-ms:30000}") int readTimeoutMs) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return new RestTemplate(requestFactory);
     }
 
 }
\ No newline at end of file
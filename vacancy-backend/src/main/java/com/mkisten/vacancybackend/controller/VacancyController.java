@@ -1,6 +1,8 @@
 package com.mkisten.vacancybackend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mkisten.vacancybackend.dto.SearchRequest;
+import com.mkisten.vacancybackend.dto.VacancyCursor;
 import com.mkisten.vacancybackend.dto.VacancyResponse;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import com.mkisten.vacancybackend.entity.VacancyStatus;
@@ -13,10 +15,14 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -31,6 +37,12 @@ public class VacancyController {
     private final VacancySmartService vacancySmartService;
     private final UserSettingsService userSettingsService;
     private final VacancyStreamService vacancyStreamService;
+    private final ObjectMapper objectMapper;
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
 
     @Operation(summary = "Поиск вакансий с учетом пользовательских настроек")
     @PostMapping("/search")
@@ -57,24 +69,76 @@ public class VacancyController {
         }
     }
 
-    @Operation(summary = "Получить вакансии пользователя")
+    @Operation(summary = "Получить вакансии пользователя",
+            description = "Без limit и cursor возвращает всю историю. С limit — страницу, " +
+                    "курсор следующей страницы приходит в заголовке X-Next-Cursor")
     @GetMapping
     public ResponseEntity<List<VacancyResponse>> getUserVacancies(
             @RequestHeader("Authorization") String authorization,
-            @RequestParam(required = false) VacancyStatus status) {
+            @RequestParam(required = false) VacancyStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             String token = authorization.replace("Bearer ", "");
-            List<Vacancy> vacancies = vacancyService.getUserVacancies(token, status);
-            List<VacancyResponse> response = vacancies.stream()
+            if (cursor == null && limit == null) {
+                List<Vacancy> vacancies = vacancyService.getUserVacancies(token, status);
+                List<VacancyResponse> response = vacancies.stream()
+                        .map(VacancyResponse::new)
+                        .collect(Collectors.toList());
+                return ResponseEntity.ok(response);
+            }
+
+            VacancyCursor after = cursor == null || cursor.isBlank() ? null : VacancyCursor.decode(cursor);
+            int pageSize = Math.min(Math.max(limit == null ? DEFAULT_PAGE_SIZE : limit, 1), MAX_PAGE_SIZE);
+            // Берём на одну строку больше, чтобы понять, есть ли следующая страница
+            List<Vacancy> vacancies = vacancyService.getUserVacanciesPage(token, status, after, pageSize + 1);
+            boolean hasMore = vacancies.size() > pageSize;
+            List<Vacancy> page = hasMore ? vacancies.subList(0, pageSize) : vacancies;
+            List<VacancyResponse> response = page.stream()
                     .map(VacancyResponse::new)
                     .collect(Collectors.toList());
-            return ResponseEntity.ok(response);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+            if (hasMore) {
+                builder.header(NEXT_CURSOR_HEADER, VacancyCursor.after(page.get(page.size() - 1)).encode());
+            }
+            return builder.body(response);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid vacancies page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error getting vacancies: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    @Operation(summary = "Выгрузить вакансии пользователя потоком NDJSON (format=ndjson)")
+    @GetMapping(params = "format=ndjson", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUserVacancies(
+            @RequestHeader("Authorization") String authorization,
+            @RequestParam(required = false) VacancyStatus status) {
+        String token = authorization.replace("Bearer ", "");
+        // Пользователь определяется в потоке запроса: запись тела идёт уже в async-потоке
+        Long userTelegramId = userSettingsService.getTelegramId(token);
+        StreamingResponseBody body = outputStream -> {
+            try {
+                vacancyService.streamUserVacancies(userTelegramId, status, vacancy -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(new VacancyResponse(vacancy)));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
     @Operation(summary = "SSE поток новых вакансий")
     @GetMapping(value = "/stream", produces = "text/event-stream")
     public SseEmitter streamVacancies(
@@ -0,0 +1,11 @@
+package com.mkisten.vacancybackend.dto;
+
+import lombok.Data;
+
+@Data
+public class SubscriptionStatusBatchItem {
+
+    private Long telegramId;
+    private String token;
+    private SubscriptionStatusResponse status;
+}
@@ -0,0 +1,16 @@
+package com.mkisten.vacancybackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubscriptionStatusBatchRequest {
+
+    private List<Long> telegramIds;
+    private String service;
+}
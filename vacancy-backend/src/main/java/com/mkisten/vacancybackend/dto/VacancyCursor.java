@@ -0,0 +1,40 @@
+package com.mkisten.vacancybackend.dto;
+
+import com.mkisten.vacancybackend.entity.Vacancy;
+import com.mkisten.vacancybackend.entity.VacancyStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Позиция в списке вакансий пользователя для keyset-пагинации по (status, loaded_at, id).
+ * Клиенту отдаётся как непрозрачная base64url-строка.
+ */
+public record VacancyCursor(VacancyStatus status, LocalDateTime loadedAt, String id) {
+
+    private static final String SEPARATOR = "|";
+
+    public static VacancyCursor after(Vacancy vacancy) {
+        return new VacancyCursor(vacancy.getStatus(), vacancy.getLoadedAt(), vacancy.getId());
+    }
+
+    public String encode() {
+        String raw = status.name() + SEPARATOR + (loadedAt == null ? "" : loadedAt) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static VacancyCursor decode(String value) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime loadedAt = parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]);
+            return new VacancyCursor(VacancyStatus.valueOf(parts[0]), loadedAt, parts[2]);
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mkisten.vacancybackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Вакансия, ожидающая отправки в Telegram. Запись создаётся в одной транзакции с вакансиями
+ * и удаляется диспетчером вместе с отметкой sentToTelegram.
+ */
+@Entity
+@Table(name = "telegram_outbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_telegram_outbox_user_vacancy",
+                columnNames = {"user_telegram_id", "vacancy_id"}),
+        indexes = @Index(name = "idx_telegram_outbox_next_attempt", columnList = "next_attempt_at"))
+@Getter
+@Setter
+public class TelegramOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_telegram_id", nullable = false)
+    private Long userTelegramId;
+
+    @Column(name = "vacancy_id", nullable = false)
+    private String vacancyId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+}
@@ -69,6 +69,14 @@ public class UserSettings {
     @Column(name = "next_run_at")
     private LocalDateTime nextRunAt;
 
+    // Аренда автообновления: какой узел взял пользователя в работу и до какого момента.
+    // Пишется только запросами UserSettingsRepository, обычное сохранение настроек её не трогает.
+    @Column(name = "lease_owner", length = 128, insertable = false, updatable = false)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at", insertable = false, updatable = false)
+    private LocalDateTime leaseExpiresAt;
+
     @Column(name = "theme")
     private String theme = "light";
 
@@ -1,68 +1,78 @@
 package com.mkisten.vacancybackend.entity;
 
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
 
-@IdClass(VacancyKey.class)  // <-- ДОБАВЬ ЭТУ АННОТАЦИЮ!
+/**
+ * Вакансия пользователя: строка user_vacancies хранит только состояние (статус, отправку, время загрузки),
+ * содержимое берётся из общего vacancy_catalog. Поля содержимого заполняются парсерами
+ * до сохранения; у загруженных из БД записей они читаются из каталога.
+ */
+@IdClass(VacancyKey.class)
 @Entity
-@Table(name = "vacancies", indexes = {
-        @Index(name = "idx_user_telegram_id", columnList = "user_telegram_id"),
-        @Index(name = "idx_user_sent_to_telegram", columnList = "user_telegram_id,sent_to_telegram"),
-        @Index(name = "idx_published_at", columnList = "published_at")
-},
-        uniqueConstraints = {
-                @UniqueConstraint(name = "uniq_vacancy_user_id", columnNames = {"id", "user_telegram_id"})
-        })
-
+@Table(name = "user_vacancies", indexes = {
+        @Index(name = "idx_user_vacancies_user", columnList = "user_telegram_id"),
+        @Index(name = "idx_user_vacancies_user_sent", columnList = "user_telegram_id,sent_to_telegram"),
+        @Index(name = "idx_user_vacancies_keyset", columnList = "user_telegram_id,status,loaded_at DESC,id")
+})
 @Getter
 @Setter
 public class Vacancy {
 
     @Id
     @Column(name = "id")
-    private String id; // внешний id из hh.ru
+    private String id; // внешний id из источника
 
     @Id
     @Column(name = "user_telegram_id", nullable = false)
     private Long userTelegramId; // id пользователя
 
-    @Column(name = "title", nullable = false, length = 500)
+    @Column(name = "source", nullable = false, length = 50)
+    private String source;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private VacancyStatus status = VacancyStatus.NEW;
+
+    @Column(name = "loaded_at")
+    private LocalDateTime loadedAt;
+
+    @Column(name = "sent_to_telegram")
+    private Boolean sentToTelegram = false;
+
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumns({
+            @JoinColumn(name = "source", referencedColumnName = "source", insertable = false, updatable = false),
+            @JoinColumn(name = "id", referencedColumnName = "external_id", insertable = false, updatable = false)
+    })
+    @Getter(AccessLevel.NONE)
+    private VacancyCatalogEntry catalog;
+
+    @Transient
     private String title;
 
-    @Column(name = "employer", length = 255)
+    @Transient
     private String employer;
 
-    @Column(name = "city", length = 100)
+    @Transient
     private String city;
 
-    @Column(name = "schedule", length = 50)
+    @Transient
     private String schedule;
 
-    @Column(name = "salary", length = 100)
+    @Transient
     private String salary;
 
-    @Column(name = "url", length = 500)
+    @Transient
     private String url;
 
-    @Column(name = "source", length = 50)
-    private String source;
-
-    @Enumerated(EnumType.STRING)
-    @Column(name = "status", nullable = false)
-    private VacancyStatus status = VacancyStatus.NEW;
-
-    @Column(name = "published_at")
+    @Transient
     private LocalDateTime publishedAt;
 
-    @Column(name = "loaded_at")
-    private LocalDateTime loadedAt;
-
-    @Column(name = "sent_to_telegram")
-    private Boolean sentToTelegram = false;
-
     // Конструкторы
     public Vacancy() {}
 
@@ -73,4 +83,32 @@ public class Vacancy {
         this.loadedAt = LocalDateTime.now();
         this.sentToTelegram = false;
     }
+
+    public String getTitle() {
+        return title != null || catalog == null ? title : catalog.getTitle();
+    }
+
+    public String getEmployer() {
+        return employer != null || catalog == null ? employer : catalog.getEmployer();
+    }
+
+    public String getCity() {
+        return city != null || catalog == null ? city : catalog.getCity();
+    }
+
+    public String getSchedule() {
+        return schedule != null || catalog == null ? schedule : catalog.getSchedule();
+    }
+
+    public String getSalary() {
+        return salary != null || catalog == null ? salary : catalog.getSalary();
+    }
+
+    public String getUrl() {
+        return url != null || catalog == null ? url : catalog.getUrl();
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt != null || catalog == null ? publishedAt : catalog.getPublishedAt();
+    }
 }
@@ -0,0 +1,51 @@
+package com.mkisten.vacancybackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Общий каталог вакансий: содержимое хранится один раз на (источник, внешний id),
+ * сколько бы пользователей ни нашли эту вакансию. Пользовательское состояние — в Vacancy.
+ */
+@IdClass(VacancyCatalogKey.class)
+@Entity
+@Table(name = "vacancy_catalog")
+@Getter
+@Setter
+public class VacancyCatalogEntry {
+
+    @Id
+    @Column(name = "source", length = 50)
+    private String source;
+
+    @Id
+    @Column(name = "external_id")
+    private String externalId;
+
+    @Column(name = "title", nullable = false, length = 500)
+    private String title;
+
+    @Column(name = "employer", length = 255)
+    private String employer;
+
+    @Column(name = "city", length = 100)
+    private String city;
+
+    @Column(name = "schedule", length = 50)
+    private String schedule;
+
+    @Column(name = "salary", length = 100)
+    private String salary;
+
+    @Column(name = "url", length = 500)
+    private String url;
+
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
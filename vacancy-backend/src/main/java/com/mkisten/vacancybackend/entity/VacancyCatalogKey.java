@@ -0,0 +1,45 @@
+package com.mkisten.vacancybackend.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class VacancyCatalogKey implements Serializable {
+    private String source;
+    private String externalId;
+
+    public VacancyCatalogKey() {}
+
+    public VacancyCatalogKey(String source, String externalId) {
+        this.source = source;
+        this.externalId = externalId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VacancyCatalogKey that = (VacancyCatalogKey) o;
+        return Objects.equals(source, that.source) && Objects.equals(externalId, that.externalId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, externalId);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    public void setExternalId(String externalId) {
+        this.externalId = externalId;
+    }
+}
@@ -0,0 +1,126 @@
+package com.mkisten.vacancybackend.repository;
+
+import com.mkisten.vacancybackend.entity.TelegramOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TelegramOutboxRepository extends JpaRepository<TelegramOutboxEntry, Long> {
+
+    /**
+     * Ставит в очередь все неотправленные вакансии пользователя, которых там ещё нет.
+     * Вызывается в транзакции сохранения вакансий.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO telegram_outbox (user_telegram_id, vacancy_id, created_at, next_attempt_at, attempts)
+            SELECT uv.user_telegram_id, uv.id, :now, :now, 0
+            FROM user_vacancies uv
+            WHERE uv.user_telegram_id = :userTelegramId AND uv.sent_to_telegram = false
+            ON CONFLICT (user_telegram_id, vacancy_id) DO NOTHING
+            """, nativeQuery = true)
+    int enqueueUnsent(@Param("userTelegramId") Long userTelegramId, @Param("now") LocalDateTime now);
+
+    /**
+     * Чаты с записями к отправке, кроме чатов, у которых есть записи в действующей аренде:
+     * чат целиком обслуживает один узел, и лимит на чат не нарушается.
+     */
+    @Query(value = """
+            SELECT t.user_telegram_id FROM telegram_outbox t
+            WHERE t.next_attempt_at <= :now
+              AND NOT EXISTS (
+                  SELECT 1 FROM telegram_outbox o
+                  WHERE o.user_telegram_id = t.user_telegram_id
+                    AND o.lease_owner IS NOT NULL AND o.next_attempt_at > :now)
+            GROUP BY t.user_telegram_id
+            ORDER BY MIN(t.next_attempt_at)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> findDueChats(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Блокирует все записи чатов до выдачи аренды. Узел, пришедший вторым, ждёт коммита первого
+     * и следующим запросом уже видит его аренду.
+     */
+    @Query(value = """
+            SELECT id FROM telegram_outbox
+            WHERE user_telegram_id IN (:chatIds)
+            ORDER BY id
+            FOR UPDATE
+            """, nativeQuery = true)
+    List<Long> lockChats(@Param("chatIds") List<Long> chatIds);
+
+    /**
+     * Условие next_attempt_at <= now перепроверяется под блокировкой строки,
+     * поэтому одну запись не заберут два узла. Чаты, уже арендованные другим узлом, пропускаются.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE telegram_outbox t
+            SET lease_owner = :owner, next_attempt_at = :leaseUntil
+            WHERE t.user_telegram_id IN (:chatIds) AND t.next_attempt_at <= :now
+              AND NOT EXISTS (
+                  SELECT 1 FROM telegram_outbox o
+                  WHERE o.user_telegram_id = t.user_telegram_id
+                    AND o.lease_owner IS NOT NULL AND o.lease_owner <> :owner AND o.next_attempt_at > :now)
+            """, nativeQuery = true)
+    int assignLease(@Param("chatIds") List<Long> chatIds,
+                    @Param("now") LocalDateTime now,
+                    @Param("owner") String owner,
+                    @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<TelegramOutboxEntry> findByLeaseOwnerOrderByIdAsc(String leaseOwner);
+
+    /**
+     * Забирает в аренду этому узлу до leaseUntil все готовые к отправке записи до limit чатов.
+     * Если узел упадёт, записи снова станут доступны после окончания аренды.
+     */
+    @Transactional
+    default List<TelegramOutboxEntry> claimDue(LocalDateTime now, String owner, LocalDateTime leaseUntil, int limit) {
+        List<Long> chatIds = findDueChats(now, limit);
+        if (chatIds.isEmpty()) {
+            return List.of();
+        }
+        lockChats(chatIds);
+        assignLease(chatIds, now, owner, leaseUntil);
+        return findByLeaseOwnerOrderByIdAsc(owner);
+    }
+
+    /**
+     * Продлевает аренду записей, которые всё ещё принадлежат этому узлу.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE telegram_outbox
+            SET next_attempt_at = :leaseUntil
+            WHERE id IN (:ids) AND lease_owner = :owner
+            """, nativeQuery = true)
+    int renewLease(@Param("ids") List<Long> ids,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM telegram_outbox WHERE id IN (:ids) AND lease_owner = :owner", nativeQuery = true)
+    int deleteClaimed(@Param("ids") List<Long> ids, @Param("owner") String owner);
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE telegram_outbox
+            SET attempts = attempts + 1, next_attempt_at = :nextAttemptAt, lease_owner = NULL, last_error = :error
+            WHERE id IN (:ids) AND lease_owner = :owner
+            """, nativeQuery = true)
+    int reschedule(@Param("ids") List<Long> ids,
+                   @Param("owner") String owner,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+}
@@ -2,10 +2,12 @@ package com.mkisten.vacancybackend.repository;
 
 import com.mkisten.vacancybackend.entity.UserSettings;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -26,6 +28,72 @@ public interface UserSettingsRepository extends JpaRepository<UserSettings, Long
             """)
     List<UserSettings> findDueUsers(@Param("now") LocalDateTime now, Pageable pageable);
 
+    /**
+     * Блокирует пачку пользователей, которым пора обновляться и чья аренда свободна или истекла.
+     * Строки, уже заблокированные другим узлом, пропускаются.
+     */
+    @Query(value = """
+            SELECT telegram_id FROM user_settings
+            WHERE auto_update_enabled = true
+              AND (next_run_at IS NULL OR next_run_at <= :now)
+              AND (lease_expires_at IS NULL OR lease_expires_at <= :now)
+            ORDER BY next_run_at ASC NULLS FIRST
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<Long> lockDueUserIds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = """
+            UPDATE user_settings
+            SET lease_owner = :owner, lease_expires_at = :leaseUntil
+            WHERE telegram_id IN (:telegramIds)
+            """, nativeQuery = true)
+    int assignLease(@Param("telegramIds") List<Long> telegramIds,
+                    @Param("owner") String owner,
+                    @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Продлевает аренду пользователей, которые всё ещё принадлежат этому узлу.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE user_settings
+            SET lease_expires_at = :leaseUntil
+            WHERE telegram_id IN (:telegramIds) AND lease_owner = :owner
+            """, nativeQuery = true)
+    int renewLease(@Param("telegramIds") List<Long> telegramIds,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Завершает обработку: планирует следующий запуск и снимает аренду, если она всё ещё наша.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE user_settings
+            SET last_run_at = :lastRunAt, next_run_at = :nextRunAt, lease_owner = NULL, lease_expires_at = NULL
+            WHERE telegram_id = :telegramId AND lease_owner = :owner
+            """, nativeQuery = true)
+    int completeLease(@Param("telegramId") Long telegramId,
+                      @Param("owner") String owner,
+                      @Param("lastRunAt") LocalDateTime lastRunAt,
+                      @Param("nextRunAt") LocalDateTime nextRunAt);
+
+    /**
+     * Забирает до limit пользователей в аренду этому узлу до leaseUntil.
+     */
+    @Transactional
+    default List<Long> claimDueUsers(LocalDateTime now, String owner, LocalDateTime leaseUntil, int limit) {
+        List<Long> telegramIds = lockDueUserIds(now, limit);
+        if (!telegramIds.isEmpty()) {
+            assignLease(telegramIds, owner, leaseUntil);
+        }
+        return telegramIds;
+    }
+
     boolean existsByTelegramId(Long telegramId);
 }
  
@@ -0,0 +1,14 @@
+package com.mkisten.vacancybackend.repository;
+
+import com.mkisten.vacancybackend.entity.Vacancy;
+
+import java.util.List;
+
+public interface VacancyBulkRepository {
+
+    /**
+     * Вставляет вакансии, которых ещё нет по ключу (id, user_telegram_id).
+     * Возвращает только реально вставленные строки.
+     */
+    List<Vacancy> insertIfAbsent(List<Vacancy> vacancies);
+}
@@ -0,0 +1,138 @@
+package com.mkisten.vacancybackend.repository;
+
+import com.mkisten.vacancybackend.entity.Vacancy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Пакетная вставка вакансий: на чанк один upsert в vacancy_catalog и один
+ * INSERT ... ON CONFLICT DO NOTHING RETURNING в user_vacancies,
+ * без предварительной выборки всех id пользователя и без SELECT на каждую сущность.
+ */
+@RequiredArgsConstructor
+public class VacancyBulkRepositoryImpl implements VacancyBulkRepository {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String CATALOG_PREFIX = "INSERT INTO vacancy_catalog "
+            + "(source, external_id, title, employer, city, schedule, salary, url, published_at, updated_at) VALUES ";
+    private static final String CATALOG_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Строку каталога переписываем только если содержимое действительно изменилось
+    private static final String CATALOG_SUFFIX = " ON CONFLICT (source, external_id) DO UPDATE SET "
+            + "title = EXCLUDED.title, employer = EXCLUDED.employer, city = EXCLUDED.city, "
+            + "schedule = EXCLUDED.schedule, salary = EXCLUDED.salary, url = EXCLUDED.url, "
+            + "published_at = EXCLUDED.published_at, updated_at = EXCLUDED.updated_at "
+            + "WHERE (vacancy_catalog.title, vacancy_catalog.employer, vacancy_catalog.city, vacancy_catalog.schedule, "
+            + "vacancy_catalog.salary, vacancy_catalog.url, vacancy_catalog.published_at) IS DISTINCT FROM "
+            + "(EXCLUDED.title, EXCLUDED.employer, EXCLUDED.city, EXCLUDED.schedule, "
+            + "EXCLUDED.salary, EXCLUDED.url, EXCLUDED.published_at)";
+    private static final String LINK_PREFIX = "INSERT INTO user_vacancies "
+            + "(id, user_telegram_id, source, status, loaded_at, sent_to_telegram) VALUES ";
+    private static final String LINK_ROW = "(?, ?, ?, ?, ?, ?)";
+    private static final String LINK_SUFFIX = " ON CONFLICT (id, user_telegram_id) DO NOTHING RETURNING id, user_telegram_id";
+
+    private static final Comparator<Vacancy> LOCK_ORDER = Comparator
+            .comparing(VacancyBulkRepositoryImpl::source)
+            .thenComparing(Vacancy::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Vacancy::getUserTelegramId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Vacancy> insertIfAbsent(List<Vacancy> vacancies) {
+        // Все транзакции берут блокировки строк каталога и связей в одном порядке, иначе пересекающиеся
+        // сохранения (автообновление на разных узлах, раздача общих результатов) взаимно блокируются.
+        // Сортируем весь список до нарезки на чанки: порядок внутри чанка этого не гарантирует
+        List<Vacancy> ordered = new ArrayList<>(vacancies);
+        ordered.sort(LOCK_ORDER);
+        Set<String> insertedKeys = new HashSet<>();
+        for (int from = 0; from < ordered.size(); from += CHUNK_SIZE) {
+            List<Vacancy> chunk = ordered.subList(from, Math.min(from + CHUNK_SIZE, ordered.size()));
+            upsertCatalog(chunk);
+            insertedKeys.addAll(jdbcTemplate.query(
+                    sql(LINK_PREFIX, LINK_ROW, LINK_SUFFIX, chunk.size()),
+                    ps -> bindLinks(ps, chunk),
+                    (rs, rowNum) -> key(rs.getString("id"), rs.getLong("user_telegram_id"))
+            ));
+        }
+        List<Vacancy> inserted = new ArrayList<>();
+        for (Vacancy vacancy : vacancies) {
+            if (insertedKeys.contains(key(vacancy.getId(), vacancy.getUserTelegramId()))) {
+                inserted.add(vacancy);
+            }
+        }
+        return inserted;
+    }
+
+    private void upsertCatalog(List<Vacancy> chunk) {
+        // DO UPDATE не допускает двух строк с одним ключом в одной команде
+        Map<String, Vacancy> entries = new LinkedHashMap<>();
+        for (Vacancy vacancy : chunk) {
+            entries.putIfAbsent(source(vacancy) + ":" + vacancy.getId(), vacancy);
+        }
+        List<Vacancy> rows = new ArrayList<>(entries.values());
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.update(sql(CATALOG_PREFIX, CATALOG_ROW, CATALOG_SUFFIX, rows.size()), ps -> {
+            int index = 1;
+            for (Vacancy vacancy : rows) {
+                ps.setString(index++, source(vacancy));
+                ps.setString(index++, vacancy.getId());
+                ps.setString(index++, vacancy.getTitle());
+                ps.setString(index++, vacancy.getEmployer());
+                ps.setString(index++, vacancy.getCity());
+                ps.setString(index++, vacancy.getSchedule());
+                ps.setString(index++, vacancy.getSalary());
+                ps.setString(index++, vacancy.getUrl());
+                ps.setTimestamp(index++, timestamp(vacancy.getPublishedAt()));
+                ps.setTimestamp(index++, timestamp(now));
+            }
+        });
+    }
+
+    private static void bindLinks(PreparedStatement ps, List<Vacancy> chunk) throws SQLException {
+        int index = 1;
+        for (Vacancy vacancy : chunk) {
+            ps.setString(index++, vacancy.getId());
+            ps.setLong(index++, vacancy.getUserTelegramId());
+            ps.setString(index++, source(vacancy));
+            ps.setString(index++, vacancy.getStatus().name());
+            ps.setTimestamp(index++, timestamp(vacancy.getLoadedAt()));
+            ps.setBoolean(index++, Boolean.TRUE.equals(vacancy.getSentToTelegram()));
+        }
+    }
+
+    private static String sql(String prefix, String row, String suffix, int rows) {
+        StringBuilder sql = new StringBuilder(prefix.length() + rows * (row.length() + 2) + suffix.length());
+        sql.append(prefix);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.append(suffix).toString();
+    }
+
+    private static String source(Vacancy vacancy) {
+        return vacancy.getSource() == null ? "" : vacancy.getSource();
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value == null ? null : Timestamp.valueOf(value);
+    }
+
+    private static String key(String id, Long userTelegramId) {
+        return userTelegramId + ":" + id;
+    }
+}
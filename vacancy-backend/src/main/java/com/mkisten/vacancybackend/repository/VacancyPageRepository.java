@@ -0,0 +1,25 @@
+package com.mkisten.vacancybackend.repository;
+
+import com.mkisten.vacancybackend.dto.VacancyCursor;
+import com.mkisten.vacancybackend.entity.Vacancy;
+import com.mkisten.vacancybackend.entity.VacancyStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface VacancyPageRepository {
+
+    /**
+     * Страница вакансий пользователя в порядке (status, loaded_at DESC, id) после курсора.
+     * Вакансии компаний из excludedCompanies (подстроки в нижнем регистре) отсекаются в SQL.
+     */
+    List<Vacancy> findUserVacanciesPage(Long userTelegramId, VacancyStatus status,
+                                        Collection<String> excludedCompanies, VacancyCursor after, int limit);
+
+    /**
+     * Тот же порядок и фильтры, но строки отдаются по мере чтения курсора БД, без накопления списка.
+     */
+    void streamUserVacancies(Long userTelegramId, VacancyStatus status,
+                             Collection<String> excludedCompanies, Consumer<Vacancy> consumer);
+}
@@ -0,0 +1,135 @@
+package com.mkisten.vacancybackend.repository;
+
+import com.mkisten.vacancybackend.dto.VacancyCursor;
+import com.mkisten.vacancybackend.entity.Vacancy;
+import com.mkisten.vacancybackend.entity.VacancyStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keyset-выборки вакансий пользователя через JDBC: порядок совпадает с индексом
+ * idx_user_vacancies_keyset, поэтому страница читается без сортировки всей истории.
+ */
+@RequiredArgsConstructor
+public class VacancyPageRepositoryImpl implements VacancyPageRepository {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String SELECT = "SELECT v.id, v.user_telegram_id, v.source, v.status, v.loaded_at, v.sent_to_telegram, "
+            + "c.title, c.employer, c.city, c.schedule, c.salary, c.url, c.published_at "
+            + "FROM user_vacancies v "
+            + "LEFT JOIN vacancy_catalog c ON c.source = v.source AND c.external_id = v.id "
+            + "WHERE v.user_telegram_id = ?";
+    private static final String ORDER_BY = " ORDER BY v.status ASC, v.loaded_at DESC, v.id ASC";
+
+    private static final RowMapper<Vacancy> ROW_MAPPER = (rs, rowNum) -> {
+        Vacancy vacancy = new Vacancy();
+        vacancy.setId(rs.getString("id"));
+        vacancy.setUserTelegramId(rs.getLong("user_telegram_id"));
+        vacancy.setSource(rs.getString("source"));
+        vacancy.setStatus(VacancyStatus.valueOf(rs.getString("status")));
+        Timestamp loadedAt = rs.getTimestamp("loaded_at");
+        vacancy.setLoadedAt(loadedAt == null ? null : loadedAt.toLocalDateTime());
+        vacancy.setSentToTelegram(rs.getBoolean("sent_to_telegram"));
+        vacancy.setTitle(rs.getString("title"));
+        vacancy.setEmployer(rs.getString("employer"));
+        vacancy.setCity(rs.getString("city"));
+        vacancy.setSchedule(rs.getString("schedule"));
+        vacancy.setSalary(rs.getString("salary"));
+        vacancy.setUrl(rs.getString("url"));
+        Timestamp publishedAt = rs.getTimestamp("published_at");
+        vacancy.setPublishedAt(publishedAt == null ? null : publishedAt.toLocalDateTime());
+        return vacancy;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Vacancy> findUserVacanciesPage(Long userTelegramId, VacancyStatus status,
+                                               Collection<String> excludedCompanies, VacancyCursor after, int limit) {
+        return jdbcTemplate.query(statement(userTelegramId, status, excludedCompanies, after, limit, 0), ROW_MAPPER);
+    }
+
+    @Override
+    public void streamUserVacancies(Long userTelegramId, VacancyStatus status,
+                                    Collection<String> excludedCompanies, Consumer<Vacancy> consumer) {
+        jdbcTemplate.query(statement(userTelegramId, status, excludedCompanies, null, 0, STREAM_FETCH_SIZE),
+                (RowCallbackHandler) rs -> consumer.accept(ROW_MAPPER.mapRow(rs, rs.getRow())));
+    }
+
+    private PreparedStatementCreator statement(Long userTelegramId, VacancyStatus status,
+                                               Collection<String> excludedCompanies, VacancyCursor after,
+                                               int limit, int fetchSize) {
+        StringBuilder sql = new StringBuilder(SELECT);
+        List<Object> params = new ArrayList<>();
+        params.add(userTelegramId);
+        if (status != null) {
+            sql.append(" AND v.status = ?");
+            params.add(status.name());
+        }
+        boolean excludeCompanies = excludedCompanies != null && !excludedCompanies.isEmpty();
+        if (excludeCompanies) {
+            // Как и раньше: вакансия без работодателя не отсекается
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM unnest(?) AS p(pattern) "
+                    + "WHERE strpos(lower(trim(c.employer)), p.pattern) > 0)");
+            params.add(excludedCompanies);
+        }
+        if (after != null) {
+            appendKeyset(sql, params, after);
+        }
+        sql.append(ORDER_BY);
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            if (fetchSize > 0) {
+                ps.setFetchSize(fetchSize);
+            }
+            int index = 1;
+            for (Object param : params) {
+                if (param instanceof Collection<?> values) {
+                    Array array = connection.createArrayOf("text", values.toArray());
+                    ps.setArray(index++, array);
+                } else if (param instanceof Timestamp timestamp) {
+                    ps.setTimestamp(index++, timestamp);
+                } else {
+                    ps.setObject(index++, param);
+                }
+            }
+            return ps;
+        };
+    }
+
+    /**
+     * Строки строго после курсора в порядке status ASC, loaded_at DESC (NULL первыми), id ASC.
+     */
+    private static void appendKeyset(StringBuilder sql, List<Object> params, VacancyCursor after) {
+        sql.append(" AND (v.status > ? OR (v.status = ? AND ");
+        params.add(after.status().name());
+        params.add(after.status().name());
+        if (after.loadedAt() == null) {
+            sql.append("((v.loaded_at IS NULL AND v.id > ?) OR v.loaded_at IS NOT NULL)");
+            params.add(after.id());
+        } else {
+            Timestamp loadedAt = Timestamp.valueOf(after.loadedAt());
+            sql.append("(v.loaded_at < ? OR (v.loaded_at = ? AND v.id > ?))");
+            params.add(loadedAt);
+            params.add(loadedAt);
+            params.add(after.id());
+        }
+        sql.append("))");
+    }
+}
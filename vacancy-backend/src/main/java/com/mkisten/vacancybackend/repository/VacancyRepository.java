@@ -11,27 +11,39 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.Set;
 
 @Repository
-public interface VacancyRepository extends JpaRepository<Vacancy, VacancyKey> {
+public interface VacancyRepository extends JpaRepository<Vacancy, VacancyKey>, VacancyBulkRepository,
+        VacancyPageRepository {
 
-    List<Vacancy> findByUserTelegramIdOrderByStatusAscLoadedAtDesc(Long userTelegramId);
+    // Содержимое вакансий лежит в vacancy_catalog, поэтому выборки списков сразу подтягивают каталог
+    @Query("SELECT v FROM Vacancy v LEFT JOIN FETCH v.catalog WHERE v.userTelegramId = :userTelegramId " +
+            "ORDER BY v.status ASC, v.loadedAt DESC")
+    List<Vacancy> findByUserTelegramIdOrderByStatusAscLoadedAtDesc(@Param("userTelegramId") Long userTelegramId);
 
+    @Query("SELECT v FROM Vacancy v LEFT JOIN FETCH v.catalog " +
+            "WHERE v.userTelegramId = :userTelegramId AND v.status = :status ORDER BY v.loadedAt DESC")
     List<Vacancy> findByUserTelegramIdAndStatusOrderByLoadedAtDesc(
-            Long userTelegramId, VacancyStatus status);
+            @Param("userTelegramId") Long userTelegramId, @Param("status") VacancyStatus status);
 
-    java.util.Optional<Vacancy> findByIdAndUserTelegramId(String id, Long userTelegramId);
+    @Query("SELECT v FROM Vacancy v LEFT JOIN FETCH v.catalog WHERE v.id = :id AND v.userTelegramId = :userTelegramId")
+    java.util.Optional<Vacancy> findByIdAndUserTelegramId(@Param("id") String id,
+                                                          @Param("userTelegramId") Long userTelegramId);
+
+    @Query("SELECT v FROM Vacancy v LEFT JOIN FETCH v.catalog " +
+            "WHERE v.userTelegramId = :userTelegramId AND v.id IN :ids")
+    List<Vacancy> findByUserTelegramIdAndIdIn(@Param("userTelegramId") Long userTelegramId,
+                                              @Param("ids") java.util.Collection<String> ids);
 
     boolean existsByIdAndUserTelegramId(String id, Long userTelegramId);
 
-    List<Vacancy> findByUserTelegramIdAndSentToTelegramFalseOrderByPublishedAtAsc(Long userTelegramId);
+    @Query("SELECT v FROM Vacancy v LEFT JOIN FETCH v.catalog c " +
+            "WHERE v.userTelegramId = :userTelegramId AND v.sentToTelegram = false ORDER BY c.publishedAt ASC")
+    List<Vacancy> findByUserTelegramIdAndSentToTelegramFalseOrderByPublishedAtAsc(
+            @Param("userTelegramId") Long userTelegramId);
 
     int countByUserTelegramIdAndSentToTelegramFalse(Long userTelegramId);
 
-    @Query("SELECT v.id FROM Vacancy v WHERE v.userTelegramId = :userTelegramId")
-    Set<String> findVacancyIdsByUser(@Param("userTelegramId") Long userTelegramId);
-
     @Transactional
     @Modifying
     @Query("UPDATE Vacancy v SET v.status = :status WHERE v.userTelegramId = :userTelegramId AND v.id = :vacancyId")
@@ -0,0 +1,73 @@
+package com.mkisten.vacancybackend.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Локальная проверка HS256-токенов, выданных subscription-backend (JwtUtil.generateToken),
+ * без похода в /api/auth/validate. Ключи перечисляются через запятую: первый — текущий,
+ * остальные — предыдущие, пока идёт ротация.
+ */
+@Component
+public class LocalJwtVerifier {
+
+    private final boolean enabled;
+    private final List<JwtParser> parsers;
+
+    public LocalJwtVerifier(@Value("${app.auth.local-jwt.enabled:false}") boolean enabled,
+                            @Value("${app.auth.local-jwt.secrets:}") String secrets,
+                            @Value("${app.auth.local-jwt.clock-skew-seconds:30}") long clockSkewSeconds) {
+        List<JwtParser> built = new ArrayList<>();
+        Arrays.stream(secrets.split(","))
+                .map(String::trim)
+                .filter(secret -> !secret.isEmpty())
+                .forEach(secret -> built.add(Jwts.parserBuilder()
+                        .setSigningKey(Keys.hmacShaKeyFor(keyBytes(secret)))
+                        .setAllowedClockSkewSeconds(clockSkewSeconds)
+                        .build()));
+        if (enabled && built.isEmpty()) {
+            throw new IllegalStateException("app.auth.local-jwt.secrets must be set when local JWT verification is enabled");
+        }
+        this.enabled = enabled;
+        this.parsers = List.copyOf(built);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Проверяет подпись и срок действия, возвращает Telegram ID из subject.
+     */
+    public Long verify(String token) {
+        JwtException lastError = null;
+        for (JwtParser parser : parsers) {
+            try {
+                Claims claims = parser.parseClaimsJws(token).getBody();
+                return Long.parseLong(claims.getSubject());
+            } catch (io.jsonwebtoken.security.SignatureException e) {
+                // подписан другим ключом — пробуем следующий
+                lastError = e;
+            } catch (NumberFormatException e) {
+                throw new io.jsonwebtoken.MalformedJwtException("Invalid telegram ID in token", e);
+            }
+        }
+        throw lastError != null ? lastError : new io.jsonwebtoken.MalformedJwtException("No signing keys configured");
+    }
+
+    // Тот же вывод ключа, что и в JwtUtil.getSigningKey: короткий секрет дополняется нулями до 32 байт
+    private static byte[] keyBytes(String secret) {
+        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        return keyBytes.length < 32 ? Arrays.copyOf(keyBytes, 32) : keyBytes;
+    }
+}
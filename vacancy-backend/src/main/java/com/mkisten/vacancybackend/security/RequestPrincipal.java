@@ -0,0 +1,42 @@
+package com.mkisten.vacancybackend.security;
+
+import com.mkisten.vacancybackend.client.AuthServiceClient;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Telegram ID пользователя, уже определённый SubscriptionAuthFilter для текущего запроса.
+ * Вне HTTP-запроса (автообновление, фоновые потоки) идёт в AuthServiceClient.
+ * Контекст запроса привязан к потоку, поэтому в задачи пулов telegramId передаётся явно.
+ */
+public final class RequestPrincipal {
+
+    static final String TELEGRAM_ID_ATTRIBUTE = "telegramId";
+
+    private RequestPrincipal() {
+    }
+
+    public static Long telegramId(String token, AuthServiceClient authServiceClient) {
+        Long resolved = resolvedTelegramId(token);
+        if (resolved != null) {
+            return resolved;
+        }
+        return authServiceClient.getCurrentUserProfile(token).getTelegramId();
+    }
+
+    private static Long resolvedTelegramId(String token) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (token == null || !(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        // telegramId относится к токену из заголовка, а не к произвольному переданному
+        if (!("Bearer " + token).equals(request.getHeader("Authorization"))) {
+            return null;
+        }
+        Object telegramId = request.getAttribute(TELEGRAM_ID_ATTRIBUTE);
+        return telegramId instanceof Long id ? id : null;
+    }
+}
@@ -2,6 +2,9 @@ package com.mkisten.vacancybackend.security;
 
 import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.dto.SubscriptionStatusResponse;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,6 +29,9 @@ import java.util.List;
 public class SubscriptionAuthFilter extends OncePerRequestFilter {
 
     private final AuthServiceClient authServiceClient;
+    private final LocalJwtVerifier localJwtVerifier;
+    private final SubscriptionStatusCache subscriptionStatusCache;
+    private final MeterRegistry meterRegistry;
 
     @Override
     protected void doFilterInternal(
@@ -55,9 +61,9 @@ public class SubscriptionAuthFilter extends OncePerRequestFilter {
         String token = header.substring(7);
 
         try {
-            // 3. Валидация токена через auth‑сервис
-            boolean isValid = authServiceClient.validateToken(token);
-            if (!isValid) {
+            // 3-4. Валидация токена и статус подписки: локально по подписи + кэш, либо через auth‑сервис
+            SubscriptionStatusResponse subStatus = resolveSubscription(token);
+            if (subStatus == null) {
                 writeError(response,
                         HttpStatus.UNAUTHORIZED,
                         "INVALID_TOKEN",
@@ -65,12 +71,8 @@ public class SubscriptionAuthFilter extends OncePerRequestFilter {
                 return;
             }
 
-            // 4. Статус подписки через auth‑сервис
-            SubscriptionStatusResponse subStatus =
-                    authServiceClient.getSubscriptionStatus(token);
-
             // 5. Кладём полезные данные в request, чтобы контроллеры могли их читать
-            request.setAttribute("telegramId", subStatus.getTelegramId());
+            request.setAttribute(RequestPrincipal.TELEGRAM_ID_ATTRIBUTE, subStatus.getTelegramId());
             request.setAttribute("subscriptionStatus", subStatus);
 
             // 6. Помечаем запрос как аутентифицированный для Spring Security
@@ -100,6 +102,42 @@ public class SubscriptionAuthFilter extends OncePerRequestFilter {
         }
     }
 
+    private SubscriptionStatusResponse resolveSubscription(String token) {
+        boolean local = localJwtVerifier.isEnabled();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return local ? resolveLocally(token) : resolveRemotely(token);
+        } finally {
+            sample.stop(Timer.builder("vacancy.auth.filter.latency")
+                    .tag("mode", local ? "local" : "remote")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    private SubscriptionStatusResponse resolveRemotely(String token) {
+        if (!authServiceClient.validateToken(token)) {
+            return null;
+        }
+        return authServiceClient.getSubscriptionStatus(token);
+    }
+
+    private SubscriptionStatusResponse resolveLocally(String token) {
+        Long telegramId;
+        try {
+            telegramId = localJwtVerifier.verify(token);
+        } catch (JwtException e) {
+            log.debug("Local JWT verification failed: {}", e.getMessage());
+            return null;
+        }
+        SubscriptionStatusResponse status = subscriptionStatusCache.get(token);
+        if (status == null || !telegramId.equals(status.getTelegramId())) {
+            subscriptionStatusCache.invalidate(token);
+            return null;
+        }
+        return status;
+    }
+
     /**
      * Здесь список эндпоинтов, которые должны работать без авторизации.
      * ВНИМАНИЕ: path включает context-path (/api), потому что берём getRequestURI().
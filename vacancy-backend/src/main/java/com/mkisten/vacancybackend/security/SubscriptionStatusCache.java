@@ -0,0 +1,39 @@
+package com.mkisten.vacancybackend.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.mkisten.vacancybackend.client.AuthServiceClient;
+import com.mkisten.vacancybackend.dto.SubscriptionStatusResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Короткоживущий кэш статуса подписки по токену для режима локальной проверки JWT.
+ * После половины TTL запись обновляется в фоне, запрос при этом получает текущее значение.
+ */
+@Component
+public class SubscriptionStatusCache {
+
+    private final LoadingCache<String, SubscriptionStatusResponse> statuses;
+
+    public SubscriptionStatusCache(AuthServiceClient authServiceClient,
+                                   @Value("${app.auth.subscription-cache.ttl-seconds:30}") long ttlSeconds,
+                                   @Value("${app.auth.subscription-cache.max-size:10000}") long maxSize) {
+        Duration ttl = Duration.ofSeconds(Math.max(ttlSeconds, 2));
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(ttl)
+                .refreshAfterWrite(ttl.dividedBy(2))
+                .build(authServiceClient::getSubscriptionStatus);
+    }
+
+    public SubscriptionStatusResponse get(String token) {
+        return statuses.get(token);
+    }
+
+    public void invalidate(String token) {
+        statuses.invalidate(token);
+    }
+}
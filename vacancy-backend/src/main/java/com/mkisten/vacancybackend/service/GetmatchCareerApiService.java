@@ -1,7 +1,5 @@
 package com.mkisten.vacancybackend.service;
 
-import com.mkisten.vacancybackend.client.AuthServiceClient;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import lombok.RequiredArgsConstructor;
@@ -32,7 +30,6 @@ import java.util.Map;
 public class GetmatchCareerApiService {
 
     private final RestTemplate restTemplate;
-    private final AuthServiceClient authServiceClient;
 
     @Value("${app.getmatch.base-url}")
     private String baseUrl;
@@ -49,13 +46,11 @@ public class GetmatchCareerApiService {
             .parseDefaulting(ChronoField.OFFSET_SECONDS, 0)
             .toFormatter();
 
-    public List<Vacancy> searchVacancies(SearchRequest request, String token) {
+    public List<Vacancy> searchVacancies(SearchRequest request, Long telegramId) {
         if (!enabled) {
             return new ArrayList<>();
         }
         try {
-            ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-            Long telegramId = profile.getTelegramId();
             int days = request.getDays() != null ? request.getDays() : 30;
             LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
 
@@ -1,7 +1,5 @@
 package com.mkisten.vacancybackend.service;
 
-import com.mkisten.vacancybackend.client.AuthServiceClient;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import lombok.RequiredArgsConstructor;
@@ -30,7 +28,6 @@ import java.util.Map;
 public class HHruApiService {
 
     private final RestTemplate restTemplate;
-    private final AuthServiceClient authServiceClient;
 
     @Value("${app.hhru.base-url}")
     private String baseUrl;
@@ -54,15 +51,11 @@ public class HHruApiService {
             .toFormatter();
 
     /**
-     * Новый метод: теперь всегда нужен token пользователя.
+     * telegramId уже определён вызывающим: поиск идёт в потоке VacancySearchFanOut, без контекста запроса.
      */
-    public List<Vacancy> searchVacancies(SearchRequest request, String token) {
+    public List<Vacancy> searchVacancies(SearchRequest request, Long telegramId) {
         try {
 
-            // Получаем профиль пользователя через AuthServiceClient
-            ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-            Long telegramId = profile.getTelegramId();
-
             int days = request.getDays() != null ? request.getDays() : 1;
             LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
 
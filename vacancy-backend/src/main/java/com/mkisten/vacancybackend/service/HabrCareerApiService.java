@@ -1,7 +1,5 @@
 package com.mkisten.vacancybackend.service;
 
-import com.mkisten.vacancybackend.client.AuthServiceClient;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import lombok.RequiredArgsConstructor;
@@ -31,7 +29,6 @@ import java.util.Map;
 public class HabrCareerApiService {
 
     private final RestTemplate restTemplate;
-    private final AuthServiceClient authServiceClient;
 
     @Value("${app.habr.base-url}")
     private String baseUrl;
@@ -58,9 +55,9 @@ public class HabrCareerApiService {
             .toFormatter();
 
     /**
-     * Новый метод: теперь всегда нужен token пользователя.
+     * Найденные вакансии помечаются переданным telegramId.
      */
-    public List<Vacancy> searchVacancies(SearchRequest request, String token) {
+    public List<Vacancy> searchVacancies(SearchRequest request, Long telegramId) {
         if (!enabled) {
             return new ArrayList<>();
         }
@@ -70,10 +67,6 @@ public class HabrCareerApiService {
                 return new ArrayList<>();
             }
 
-            // Получаем профиль пользователя через AuthServiceClient
-            ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-            Long telegramId = profile.getTelegramId();
-
             int days = request.getDays() != null ? request.getDays() : 1;
             LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
 
@@ -0,0 +1,158 @@
+package com.mkisten.vacancybackend.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Автомат Ахо-Корасик: за один проход по тексту проверяет, содержит ли он хотя бы одну из подстрок.
+ * Регистр сворачивается посимвольно (в том числе для кириллицы), текст не копируется и не приводится к нижнему регистру целиком.
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = new KeywordMatcher(List.of());
+
+    // Переходы узла хранятся отсортированными массивами меток, поиск — бинарный
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    private final boolean[] terminal;
+
+    private KeywordMatcher(Collection<String> patterns) {
+        List<char[]> nodeLabels = new ArrayList<>();
+        List<int[]> nodeTargets = new ArrayList<>();
+        List<Boolean> nodeTerminal = new ArrayList<>();
+        nodeLabels.add(new char[0]);
+        nodeTargets.add(new int[0]);
+        nodeTerminal.add(false);
+
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = fold(pattern.charAt(i));
+                int next = find(nodeLabels.get(state), nodeTargets.get(state), c);
+                if (next < 0) {
+                    next = nodeLabels.size();
+                    nodeLabels.add(new char[0]);
+                    nodeTargets.add(new int[0]);
+                    nodeTerminal.add(false);
+                    insert(nodeLabels, nodeTargets, state, c, next);
+                }
+                state = next;
+            }
+            nodeTerminal.set(state, true);
+        }
+
+        int size = nodeLabels.size();
+        this.labels = nodeLabels.toArray(new char[0][]);
+        this.targets = nodeTargets.toArray(new int[0][]);
+        this.terminal = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            terminal[i] = nodeTerminal.get(i);
+        }
+        this.fail = new int[size];
+        buildFailLinks();
+    }
+
+    /**
+     * Собирает автомат из CSV-строки настроек: элементы обрезаются, пустые пропускаются.
+     */
+    public static KeywordMatcher fromCsv(String csv) {
+        if (csv == null || csv.isBlank()) {
+            return EMPTY;
+        }
+        List<String> patterns = new ArrayList<>();
+        for (String raw : csv.split(",")) {
+            String trimmed = raw.trim();
+            if (!trimmed.isEmpty()) {
+                patterns.add(trimmed);
+            }
+        }
+        return of(patterns);
+    }
+
+    public static KeywordMatcher of(Collection<String> patterns) {
+        List<String> nonEmpty = patterns.stream().filter(pattern -> pattern != null && !pattern.isEmpty()).toList();
+        return nonEmpty.isEmpty() ? EMPTY : new KeywordMatcher(nonEmpty);
+    }
+
+    public boolean isEmpty() {
+        return labels.length == 1;
+    }
+
+    /**
+     * true, если text содержит хотя бы один шаблон без учёта регистра. null считается пустой строкой.
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null || isEmpty()) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next = find(labels[state], targets[state], c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = find(labels[state], targets[state], c);
+            }
+            state = next < 0 ? 0 : next;
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void buildFailLinks() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                int next = find(labels[f], targets[f], c);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = find(labels[f], targets[f], c);
+                }
+                fail[child] = next < 0 || next == child ? 0 : next;
+                // Шаблон, оканчивающийся в суффиксе, тоже считается совпадением
+                terminal[child] |= terminal[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int find(char[] nodeLabels, int[] nodeTargets, char c) {
+        int index = Arrays.binarySearch(nodeLabels, c);
+        return index < 0 ? -1 : nodeTargets[index];
+    }
+
+    private static void insert(List<char[]> nodeLabels, List<int[]> nodeTargets, int state, char c, int target) {
+        char[] oldLabels = nodeLabels.get(state);
+        int[] oldTargets = nodeTargets.get(state);
+        int position = -Arrays.binarySearch(oldLabels, c) - 1;
+        char[] newLabels = new char[oldLabels.length + 1];
+        int[] newTargets = new int[oldTargets.length + 1];
+        System.arraycopy(oldLabels, 0, newLabels, 0, position);
+        System.arraycopy(oldTargets, 0, newTargets, 0, position);
+        newLabels[position] = c;
+        newTargets[position] = target;
+        System.arraycopy(oldLabels, position, newLabels, position + 1, oldLabels.length - position);
+        System.arraycopy(oldTargets, position, newTargets, position + 1, oldTargets.length - position);
+        nodeLabels.set(state, newLabels);
+        nodeTargets.set(state, newTargets);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
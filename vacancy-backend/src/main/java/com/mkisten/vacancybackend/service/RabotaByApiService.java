@@ -1,8 +1,6 @@
 package com.mkisten.vacancybackend.service;
 
-import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.dto.CityDto;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import lombok.RequiredArgsConstructor;
@@ -48,7 +46,6 @@ public class RabotaByApiService {
     );
     private static final ZoneId RABOTA_BY_ZONE = ZoneId.of("Europe/Minsk");
 
-    private final AuthServiceClient authServiceClient;
     private final RabotaByAreaService rabotaByAreaService;
 
     @Value("${app.rabota-by.enabled:false}")
@@ -69,13 +66,11 @@ public class RabotaByApiService {
     @Value("${app.rabota-by.max-pages:5}")
     private int maxPages;
 
-    public List<Vacancy> searchVacancies(SearchRequest request, String token) {
+    public List<Vacancy> searchVacancies(SearchRequest request, Long telegramId) {
         if (!enabled || !StringUtils.hasText(request.getQuery()) || !shouldUseRabotaBy(request)) {
             return new ArrayList<>();
         }
         try {
-            ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-            Long telegramId = profile.getTelegramId();
             int days = request.getDays() != null ? request.getDays() : 30;
             LocalDateTime cutoff = LocalDateTime.now(RABOTA_BY_ZONE).minusDays(days);
             List<Vacancy> allVacancies = new ArrayList<>();
@@ -0,0 +1,54 @@
+package com.mkisten.vacancybackend.service;
+
+import com.mkisten.vacancybackend.dto.SearchRequest;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * Канонический ключ критериев поиска: пользователи с одинаковым ключом получают
+ * одинаковую выдачу источников, поэтому поиск для них выполняется один раз.
+ * Исключения по словам и компаниям в ключ не входят — они применяются к каждому пользователю отдельно.
+ */
+public record SearchCriteriaKey(List<String> queries,
+                                int days,
+                                List<String> workTypes,
+                                List<String> countries,
+                                String cityId) {
+
+    public static SearchCriteriaKey of(SearchRequest request) {
+        TreeSet<String> queries = new TreeSet<>();
+        if (StringUtils.hasText(request.getQuery())) {
+            for (String raw : request.getQuery().split(",")) {
+                String normalized = raw.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+                if (!normalized.isEmpty()) {
+                    queries.add(normalized);
+                }
+            }
+        }
+        String cityId = StringUtils.hasText(request.getCityId()) ? request.getCityId().trim() : null;
+        return new SearchCriteriaKey(
+                List.copyOf(queries),
+                request.getDays() == null ? 1 : request.getDays(),
+                normalize(request.getWorkTypes()),
+                normalize(request.getCountries()),
+                cityId
+        );
+    }
+
+    private static List<String> normalize(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return List.of();
+        }
+        TreeSet<String> result = new TreeSet<>();
+        for (String value : values) {
+            if (StringUtils.hasText(value)) {
+                result.add(value.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return List.copyOf(result);
+    }
+}
@@ -1,8 +1,6 @@
 package com.mkisten.vacancybackend.service;
 
-import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.dto.CityDto;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import lombok.RequiredArgsConstructor;
@@ -71,7 +69,6 @@ public class SuperjobCareerApiService {
     );
 
     private final RestTemplate restTemplate;
-    private final AuthServiceClient authServiceClient;
     private final HHruAreaService hhruAreaService;
 
     @Value("${app.superjob.base-url}")
@@ -89,13 +86,11 @@ public class SuperjobCareerApiService {
             .parseDefaulting(ChronoField.OFFSET_SECONDS, 0)
             .toFormatter();
 
-    public List<Vacancy> searchVacancies(SearchRequest request, String token) {
+    public List<Vacancy> searchVacancies(SearchRequest request, Long telegramId) {
         if (!enabled) {
             return new ArrayList<>();
         }
         try {
-            ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-            Long telegramId = profile.getTelegramId();
             int days = request.getDays() != null ? request.getDays() : 30;
             LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
             CityDto resolvedCity = hhruAreaService.findCityById(request.getCityId());
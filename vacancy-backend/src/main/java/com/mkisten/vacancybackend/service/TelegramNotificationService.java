@@ -1,84 +1,21 @@
 package com.mkisten.vacancybackend.service;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.entity.Vacancy;
-import com.mkisten.vacancybackend.repository.VacancyRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class TelegramNotificationService {
 
     private final AuthServiceClient authServiceClient;
-    private final VacancyRepository vacancyRepository;
 
-    @Value("${app.telegram.max-vacancies-per-message:10}")
-    private int maxVacanciesPerMessage;
-
-    public TelegramNotificationService(AuthServiceClient authServiceClient, VacancyRepository vacancyRepository) {
+    public TelegramNotificationService(AuthServiceClient authServiceClient) {
         this.authServiceClient = authServiceClient;
-        this.vacancyRepository = vacancyRepository;
-    }
-
-    private final Cache<Long, List<Vacancy>> vacanciesCache = Caffeine.newBuilder()
-            .expireAfterWrite(15, TimeUnit.MINUTES)
-            .maximumSize(1000)
-            .build();
-
-    public void sendAllUnsentVacanciesToTelegram(String userToken, Long userTelegramId) {
-        List<Vacancy> unsent = vacanciesCache.get(userTelegramId, id ->
-                new ArrayList<>(vacancyRepository.findByUserTelegramIdAndSentToTelegramFalseOrderByPublishedAtAsc(id)));
-
-        if (unsent == null || unsent.isEmpty()) {
-            log.info("Нет новых вакансий для отправки в Telegram для пользователя {}", userTelegramId);
-            vacanciesCache.invalidate(userTelegramId);
-            return;
-        }
-
-        log.info("Всего неотправленных вакансий для пользователя {}: {}", userTelegramId, unsent.size());
-
-        List<String> sentIds = new ArrayList<>();
-        int batchNumber = 0;
-
-        while (!unsent.isEmpty()) {
-            batchNumber++;
-            List<Vacancy> batch = unsent.stream().limit(maxVacanciesPerMessage).collect(Collectors.toList());
-            String message = formatNewVacanciesMessage(batch);
-
-            try {
-                sendTextMessage(userToken, message);
-                log.info("Batch #{}: отправлено {} вакансий для user {}", batchNumber, batch.size(), userTelegramId);
-                sentIds.addAll(batch.stream().map(Vacancy::getId).toList());
-                unsent.removeAll(batch);
-            } catch (Exception e) {
-                log.error("Ошибка отправки Telegram batch #{}: {}", batchNumber, e.getMessage());
-                break;
-            }
-        }
-
-        if (!sentIds.isEmpty()) {
-            int updated = vacancyRepository.markAsSentToTelegram(userTelegramId, sentIds);
-            log.info("Помечено отправленными в БД {} вакансий для user {}", updated, userTelegramId);
-            if (updated != sentIds.size()) {
-                log.warn("После отправки батчей user {}: ожидали отметить {} вакансий, но обновили только {}. Возможны повторы.", userTelegramId, sentIds.size(), updated);
-            }
-            int remainingUnsent = vacancyRepository.countByUserTelegramIdAndSentToTelegramFalse(userTelegramId);
-            if (remainingUnsent > 0) {
-                log.warn("После отправки user {} в очереди осталось {} неотправленных вакансий. Возможны повторы.", userTelegramId, remainingUnsent);
-            }
-        }
-
-        vacanciesCache.invalidate(userTelegramId);
     }
 
     public void sendTextMessage(String userToken, String text) {
@@ -122,7 +59,10 @@ public class TelegramNotificationService {
         sendTextMessage(userToken, message);
     }
 
-    private String formatNewVacanciesMessage(List<Vacancy> vacancies) {
+    /**
+     * Дайджест новых вакансий; отправку из очереди выполняет TelegramOutboxDispatcher.
+     */
+    String formatNewVacanciesMessage(List<Vacancy> vacancies) {
         StringBuilder sb = new StringBuilder();
         if (vacancies.size() == 1) {
             sb.append("🎯 Найдена новая вакансия:\n\n");
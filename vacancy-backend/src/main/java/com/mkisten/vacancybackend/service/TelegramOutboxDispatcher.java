@@ -0,0 +1,348 @@
+package com.mkisten.vacancybackend.service;
+
+import com.mkisten.vacancybackend.client.AuthServiceClient;
+import com.mkisten.vacancybackend.dto.TokenResponse;
+import com.mkisten.vacancybackend.entity.TelegramOutboxEntry;
+import com.mkisten.vacancybackend.entity.Vacancy;
+import com.mkisten.vacancybackend.repository.TelegramOutboxRepository;
+import com.mkisten.vacancybackend.repository.VacancyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Отправляет вакансии из telegram_outbox. Работает в собственном потоке, поэтому медленный Telegram
+ * не задерживает автообновление. Ожидающие вакансии чата склеиваются в дайджесты,
+ * отправка идёт с учётом лимитов Telegram, при ошибке — повтор с экспоненциальной паузой.
+ * Отметка sentToTelegram и удаление записи из очереди выполняются одной транзакцией после успешной отправки.
+ * Чат арендуется целиком, аренда продлевается между дайджестами, пока очередь чата не отправлена.
+ */
+@Slf4j
+@Service
+public class TelegramOutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final TelegramOutboxRepository outboxRepository;
+    private final VacancyRepository vacancyRepository;
+    private final AuthServiceClient authServiceClient;
+    private final TelegramNotificationService telegramService;
+    private final TransactionTemplate transactionTemplate;
+    private final TelegramRateLimiter rateLimiter;
+    private final boolean enabled;
+    private final long pollIntervalMs;
+    private final int batchChats;
+    private final int maxVacanciesPerMessage;
+    private final int maxAttempts;
+    private final long backoffBaseSeconds;
+    private final long backoffMaxSeconds;
+    private final int leaseMinutes;
+    private final long leaseRenewNanos;
+    private final String nodeId;
+    private final Counter sentMessages;
+    private final Counter failedMessages;
+    private final Counter sentVacancies;
+    private final Counter abandonedVacancies;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+
+    public TelegramOutboxDispatcher(TelegramOutboxRepository outboxRepository,
+                                    VacancyRepository vacancyRepository,
+                                    AuthServiceClient authServiceClient,
+                                    TelegramNotificationService telegramService,
+                                    TransactionTemplate transactionTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.telegram.outbox.enabled:true}") boolean enabled,
+                                    @Value("${app.telegram.outbox.poll-interval-ms:5000}") long pollIntervalMs,
+                                    @Value("${app.telegram.outbox.batch-chats:50}") int batchChats,
+                                    @Value("${app.telegram.max-vacancies-per-message:10}") int maxVacanciesPerMessage,
+                                    @Value("${app.telegram.outbox.global-per-second:25}") double globalPerSecond,
+                                    @Value("${app.telegram.outbox.per-chat-interval-ms:1100}") long perChatIntervalMs,
+                                    @Value("${app.telegram.outbox.max-attempts:8}") int maxAttempts,
+                                    @Value("${app.telegram.outbox.backoff-base-seconds:30}") long backoffBaseSeconds,
+                                    @Value("${app.telegram.outbox.backoff-max-seconds:3600}") long backoffMaxSeconds,
+                                    @Value("${app.telegram.outbox.lease-minutes:5}") int leaseMinutes,
+                                    @Value("${app.telegram.outbox.lease-renew-seconds:60}") long leaseRenewSeconds) {
+        this.outboxRepository = outboxRepository;
+        this.vacancyRepository = vacancyRepository;
+        this.authServiceClient = authServiceClient;
+        this.telegramService = telegramService;
+        this.transactionTemplate = transactionTemplate;
+        this.rateLimiter = new TelegramRateLimiter(globalPerSecond, perChatIntervalMs);
+        this.enabled = enabled;
+        this.pollIntervalMs = Math.max(100, pollIntervalMs);
+        this.batchChats = Math.max(1, batchChats);
+        this.maxVacanciesPerMessage = Math.max(1, maxVacanciesPerMessage);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseSeconds = Math.max(1, backoffBaseSeconds);
+        this.backoffMaxSeconds = Math.max(this.backoffBaseSeconds, backoffMaxSeconds);
+        this.leaseMinutes = Math.max(1, leaseMinutes);
+        // Продлеваем не реже, чем раз в половину аренды
+        this.leaseRenewNanos = TimeUnit.SECONDS.toNanos(Math.max(0, Math.min(leaseRenewSeconds, this.leaseMinutes * 30L)));
+        this.nodeId = resolveNodeId();
+        this.sentMessages = Counter.builder("telegram.outbox.messages").tag("result", "sent").register(meterRegistry);
+        this.failedMessages = Counter.builder("telegram.outbox.messages").tag("result", "failed").register(meterRegistry);
+        this.sentVacancies = meterRegistry.counter("telegram.outbox.vacancies.sent");
+        this.abandonedVacancies = meterRegistry.counter("telegram.outbox.vacancies.abandoned");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setName("telegram-outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Telegram outbox dispatcher started, node: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void drain() {
+        try {
+            // Пока забираем полную пачку чатов — очередь не пуста, продолжаем без паузы
+            while (running && dispatchOnce() >= batchChats) {
+                log.debug("Telegram outbox: full batch dispatched, continuing");
+            }
+        } catch (Exception e) {
+            log.error("Telegram outbox dispatch failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Забирает в аренду записи до batchChats чатов и отправляет их. Возвращает число обработанных чатов.
+     */
+    public int dispatchOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        List<TelegramOutboxEntry> claimed = outboxRepository.claimDue(
+                now, nodeId, now.plusMinutes(leaseMinutes), batchChats);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, List<TelegramOutboxEntry>> byChat = new LinkedHashMap<>();
+        for (TelegramOutboxEntry entry : claimed) {
+            byChat.computeIfAbsent(entry.getUserTelegramId(), id -> new ArrayList<>()).add(entry);
+        }
+
+        List<ChatDigest> digests = new ArrayList<>();
+        for (Map.Entry<Long, List<TelegramOutboxEntry>> chat : byChat.entrySet()) {
+            ChatDigest digest = prepareDigest(chat.getKey(), chat.getValue());
+            if (digest != null) {
+                digests.add(digest);
+            }
+        }
+
+        // Чаты обходятся по очереди: пока один ждёт свой интервал, отправляются сообщения в другие
+        long renewAt = System.nanoTime() + leaseRenewNanos;
+        while (running && !digests.isEmpty()) {
+            long nowMs = System.currentTimeMillis();
+            ChatDigest next = digests.stream()
+                    .min(Comparator.comparingLong(digest -> rateLimiter.delayMillis(digest.chatId, nowMs)))
+                    .orElseThrow();
+            long delay = rateLimiter.delayMillis(next.chatId, nowMs);
+            if (delay > 0 && !sleep(delay)) {
+                return byChat.size();
+            }
+            if (System.nanoTime() - renewAt >= 0) {
+                renewLease(digests);
+                renewAt = System.nanoTime() + leaseRenewNanos;
+            }
+            if (!sendNext(next) || next.messages.isEmpty()) {
+                digests.remove(next);
+            }
+        }
+        return byChat.size();
+    }
+
+    /**
+     * Продлевает аренду всех ещё не отправленных записей, чтобы другой узел не забрал их посреди отправки.
+     */
+    private void renewLease(List<ChatDigest> digests) {
+        List<Long> ids = digests.stream()
+                .flatMap(digest -> digest.messages.stream())
+                .flatMap(message -> message.entries().stream())
+                .map(TelegramOutboxEntry::getId)
+                .toList();
+        int renewed = outboxRepository.renewLease(ids, nodeId, LocalDateTime.now().plusMinutes(leaseMinutes));
+        if (renewed < ids.size()) {
+            log.warn("Telegram outbox lease lost for {} of {} entries", ids.size() - renewed, ids.size());
+        }
+    }
+
+    private ChatDigest prepareDigest(Long chatId, List<TelegramOutboxEntry> entries) {
+        List<String> vacancyIds = entries.stream().map(TelegramOutboxEntry::getVacancyId).toList();
+        Map<String, Vacancy> vacancies = vacancyRepository.findByUserTelegramIdAndIdIn(chatId, vacancyIds).stream()
+                .collect(Collectors.toMap(Vacancy::getId, Function.identity(), (first, second) -> first));
+
+        // Удалённые и уже отправленные вакансии повторно не отправляем
+        List<TelegramOutboxEntry> pending = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        for (TelegramOutboxEntry entry : entries) {
+            Vacancy vacancy = vacancies.get(entry.getVacancyId());
+            if (vacancy == null || Boolean.TRUE.equals(vacancy.getSentToTelegram())) {
+                stale.add(entry.getId());
+            } else {
+                pending.add(entry);
+            }
+        }
+        if (!stale.isEmpty()) {
+            outboxRepository.deleteClaimed(stale, nodeId);
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        String token = tokenFor(chatId);
+        if (token == null) {
+            fail(chatId, pending, "token unavailable");
+            return null;
+        }
+
+        pending.sort(Comparator.comparing(entry -> vacancies.get(entry.getVacancyId()).getPublishedAt(),
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        List<DigestMessage> messages = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += maxVacanciesPerMessage) {
+            List<TelegramOutboxEntry> part = pending.subList(from, Math.min(from + maxVacanciesPerMessage, pending.size()));
+            List<Vacancy> partVacancies = part.stream().map(entry -> vacancies.get(entry.getVacancyId())).toList();
+            messages.add(new DigestMessage(List.copyOf(part), telegramService.formatNewVacanciesMessage(partVacancies)));
+        }
+        return new ChatDigest(chatId, token, messages);
+    }
+
+    /**
+     * Отправляет следующее сообщение дайджеста. При ошибке все оставшиеся сообщения чата уходят на повтор.
+     */
+    private boolean sendNext(ChatDigest digest) {
+        DigestMessage message = digest.messages.remove(0);
+        try {
+            telegramService.sendTextMessage(digest.token, message.text());
+        } catch (Exception e) {
+            rateLimiter.record(digest.chatId, System.currentTimeMillis());
+            failedMessages.increment();
+            List<TelegramOutboxEntry> remaining = new ArrayList<>(message.entries());
+            digest.messages.forEach(rest -> remaining.addAll(rest.entries()));
+            digest.messages.clear();
+            fail(digest.chatId, remaining, e.getMessage());
+            return false;
+        }
+        rateLimiter.record(digest.chatId, System.currentTimeMillis());
+        sentMessages.increment();
+
+        List<String> vacancyIds = message.entries().stream().map(TelegramOutboxEntry::getVacancyId).toList();
+        List<Long> entryIds = message.entries().stream().map(TelegramOutboxEntry::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            vacancyRepository.markAsSentToTelegram(digest.chatId, vacancyIds);
+            outboxRepository.deleteClaimed(entryIds, nodeId);
+        });
+        sentVacancies.increment(vacancyIds.size());
+        log.info("Telegram digest sent to user {}: {} vacancies", digest.chatId, vacancyIds.size());
+        return true;
+    }
+
+    private void fail(Long chatId, List<TelegramOutboxEntry> entries, String error) {
+        int attempts = entries.stream().mapToInt(TelegramOutboxEntry::getAttempts).max().orElse(0) + 1;
+        List<Long> ids = entries.stream().map(TelegramOutboxEntry::getId).toList();
+        if (attempts >= maxAttempts) {
+            outboxRepository.deleteClaimed(ids, nodeId);
+            abandonedVacancies.increment(ids.size());
+            log.error("Telegram delivery to user {} abandoned after {} attempts: {}", chatId, attempts, error);
+            return;
+        }
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plusSeconds(backoffSeconds(attempts));
+        outboxRepository.reschedule(ids, nodeId, nextAttemptAt, truncate(error));
+        log.warn("Telegram delivery to user {} failed (attempt {}), retry at {}: {}", chatId, attempts, nextAttemptAt, error);
+    }
+
+    private long backoffSeconds(int attempts) {
+        long delay = backoffBaseSeconds << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, backoffMaxSeconds);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    private String tokenFor(Long chatId) {
+        try {
+            TokenResponse response = authServiceClient.getTokenByTelegramId(chatId);
+            if (response == null || response.getToken() == null || response.getToken().isBlank()) {
+                return null;
+            }
+            return response.getToken();
+        } catch (Exception e) {
+            log.warn("Failed to get token for user {}: {}", chatId, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static final class ChatDigest {
+        private final Long chatId;
+        private final String token;
+        private final List<DigestMessage> messages;
+
+        private ChatDigest(Long chatId, String token, List<DigestMessage> messages) {
+            this.chatId = chatId;
+            this.token = token;
+            this.messages = messages;
+        }
+    }
+
+    private record DigestMessage(List<TelegramOutboxEntry> entries, String text) {
+    }
+}
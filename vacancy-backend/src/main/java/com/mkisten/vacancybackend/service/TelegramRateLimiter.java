@@ -0,0 +1,40 @@
+package com.mkisten.vacancybackend.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Лимиты Telegram Bot API: общий поток сообщений бота и минимальный интервал между сообщениями в один чат.
+ * Не потокобезопасен — используется одним потоком диспетчера.
+ */
+public final class TelegramRateLimiter {
+
+    private final long globalIntervalMs;
+    private final long perChatIntervalMs;
+    private final Map<Long, Long> lastSentByChat = new HashMap<>();
+    private long lastGlobalSendMs = Long.MIN_VALUE / 2;
+
+    public TelegramRateLimiter(double globalPerSecond, long perChatIntervalMs) {
+        this.globalIntervalMs = globalPerSecond <= 0 ? 0 : (long) Math.ceil(1000.0 / globalPerSecond);
+        this.perChatIntervalMs = Math.max(0, perChatIntervalMs);
+    }
+
+    /**
+     * Сколько миллисекунд осталось до момента, когда в чат можно отправить следующее сообщение.
+     */
+    public long delayMillis(Long chatId, long nowMs) {
+        long globalReady = lastGlobalSendMs + globalIntervalMs;
+        Long chatLast = lastSentByChat.get(chatId);
+        long chatReady = chatLast == null ? Long.MIN_VALUE : chatLast + perChatIntervalMs;
+        return Math.max(0, Math.max(globalReady, chatReady) - nowMs);
+    }
+
+    public void record(Long chatId, long nowMs) {
+        lastGlobalSendMs = nowMs;
+        lastSentByChat.put(chatId, nowMs);
+        // Чаты, для которых интервал уже истёк, больше не ограничены
+        if (lastSentByChat.size() > 1024) {
+            lastSentByChat.values().removeIf(sentAt -> sentAt + perChatIntervalMs <= nowMs);
+        }
+    }
+}
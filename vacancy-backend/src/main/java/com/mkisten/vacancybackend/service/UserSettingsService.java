@@ -7,15 +7,13 @@ import com.mkisten.vacancybackend.entity.UserSettingsAudit;
 import com.mkisten.vacancybackend.repository.VacancyRepository;
 import com.mkisten.vacancybackend.repository.UserSettingsRepository;
 import com.mkisten.vacancybackend.repository.UserSettingsAuditRepository;
+import com.mkisten.vacancybackend.security.RequestPrincipal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.LocalDateTime;
-import java.util.LinkedHashSet;
-import java.util.Locale;
-import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
@@ -27,13 +25,21 @@ public class UserSettingsService {
     private final TelegramNotificationService telegramService;
     private final VacancyRepository vacancyRepository;
     private final UserSettingsAuditRepository auditRepository;
+    private final VacancyFilterCache vacancyFilterCache;
 
     @Autowired
     public UserSettingsService(UserSettingsRepository settingsRepository, AuthServiceClient authServiceClient,
                                TelegramNotificationService telegramService, VacancyRepository vacancyRepository,
-                               UserSettingsAuditRepository auditRepository) {
+                               UserSettingsAuditRepository auditRepository, VacancyFilterCache vacancyFilterCache) {
         this.settingsRepository = settingsRepository; this.authServiceClient = authServiceClient;
         this.telegramService = telegramService; this.vacancyRepository = vacancyRepository; this.auditRepository = auditRepository;
+        this.vacancyFilterCache = vacancyFilterCache;
+    }
+
+    public UserSettingsService(UserSettingsRepository settingsRepository, AuthServiceClient authServiceClient,
+                               TelegramNotificationService telegramService, VacancyRepository vacancyRepository,
+                               UserSettingsAuditRepository auditRepository) {
+        this(settingsRepository, authServiceClient, telegramService, vacancyRepository, auditRepository, null);
     }
 
     public UserSettingsService(UserSettingsRepository settingsRepository, AuthServiceClient authServiceClient,
@@ -43,8 +49,7 @@ public class UserSettingsService {
 
     /** Получить текущего пользователя из токена */
     private Long getTelegramIdByToken(String token) {
-
-        return authServiceClient.getCurrentUserProfile(token).getTelegramId();
+        return RequestPrincipal.telegramId(token, authServiceClient);
     }
 
     /** Получить Telegram ID из токена без обращения к настройкам */
@@ -124,6 +129,9 @@ public class UserSettingsService {
         applyAutoUpdateSchedule(existingSettings);
         UserSettings saved = settingsRepository.save(existingSettings);
         auditChanges(telegramId, before, saved);
+        if (vacancyFilterCache != null) {
+            vacancyFilterCache.invalidate(telegramId);
+        }
         removeExcludedCompaniesVacancies(saved);
 
         // Отправить уведомление об обновлении
@@ -228,35 +236,12 @@ public class UserSettingsService {
     }
 
     private void removeExcludedCompaniesVacancies(UserSettings settings) {
-        Set<String> excludedCompanies = parseCsvLowercase(settings.getExcludeCompanies());
+        KeywordMatcher excludedCompanies = KeywordMatcher.fromCsv(settings.getExcludeCompanies());
         if (excludedCompanies.isEmpty()) {
             return;
         }
         vacancyRepository.findByUserTelegramIdOrderByStatusAscLoadedAtDesc(settings.getTelegramId()).stream()
-                .filter(vacancy -> {
-                    String employer = vacancy.getEmployer();
-                    if (employer == null || employer.isBlank()) {
-                        return false;
-                    }
-                    String normalizedEmployer = employer.trim().toLowerCase(Locale.ROOT);
-                    return excludedCompanies.stream().anyMatch(normalizedEmployer::contains);
-                })
+                .filter(vacancy -> excludedCompanies.matches(vacancy.getEmployer()))
                 .forEach(vacancy -> vacancyRepository.deleteByUserAndId(settings.getTelegramId(), vacancy.getId()));
     }
-
-    private Set<String> parseCsvLowercase(String rawValue) {
-        Set<String> values = new LinkedHashSet<>();
-        if (rawValue == null || rawValue.isBlank()) {
-            return values;
-        }
-        for (String raw : rawValue.split(",")) {
-            String normalized = raw.trim().toLowerCase(Locale.ROOT);
-            if (!normalized.isEmpty()) {
-                values.add(normalized);
-            }
-        }
-        return values;
-    }
 }
-
-
@@ -2,23 +2,31 @@ package com.mkisten.vacancybackend.service;
 
 import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.dto.SearchRequest;
+import com.mkisten.vacancybackend.dto.SubscriptionStatusBatchItem;
 import com.mkisten.vacancybackend.dto.SubscriptionStatusResponse;
 import com.mkisten.vacancybackend.dto.TokenResponse;
 import com.mkisten.vacancybackend.entity.UserSettings;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import com.mkisten.vacancybackend.repository.UserSettingsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.net.InetAddress;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -37,21 +45,36 @@ public class VacancyAutoUpdater {
     private final UserSettingsRepository userSettingsRepository;
     private final VacancySmartService vacancySmartService;
     private final AuthServiceClient authServiceClient;
+    private final MeterRegistry meterRegistry;
 
     private static final int BATCH_SIZE = 200;
-    private static final int BATCH_PROCESS_SIZE = 10;
     private static final int JITTER_PERCENT = 20;
 
     @Value("${app.auto-update.workers:1}")
     private int workerCount;
 
+    @Value("${app.auto-update.lease-minutes:10}")
+    private int leaseMinutes;
+
+    @Value("${app.auto-update.batch-size:50}")
+    private int batchSize;
+
     private final BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
     private final Set<Long> queuedUsers = ConcurrentHashMap.newKeySet();
     private ExecutorService workerPool;
     private volatile boolean running = true;
+    private String nodeId;
+    private Counter plannedSearches;
+    private Counter executedSearches;
+    private DistributionSummary dedupRatio;
 
     @PostConstruct
     public void startWorkers() {
+        nodeId = resolveNodeId();
+        batchSize = Math.max(1, batchSize);
+        plannedSearches = Counter.builder("vacancy.auto_update.searches").tag("kind", "planned").register(meterRegistry);
+        executedSearches = Counter.builder("vacancy.auto_update.searches").tag("kind", "executed").register(meterRegistry);
+        dedupRatio = DistributionSummary.builder("vacancy.auto_update.dedup_ratio").register(meterRegistry);
         int threads = Math.max(1, workerCount);
         AtomicInteger index = new AtomicInteger(1);
         workerPool = Executors.newFixedThreadPool(threads, task -> {
@@ -63,7 +86,7 @@ public class VacancyAutoUpdater {
         for (int i = 0; i < threads; i++) {
             workerPool.submit(this::workerLoop);
         }
-        log.info("Auto-update workers started: {}", threads);
+        log.info("Auto-update workers started: {}, node: {}", threads, nodeId);
     }
 
     @PreDestroy
@@ -77,26 +100,43 @@ public class VacancyAutoUpdater {
     @Scheduled(fixedRate = 60000)
     public void updateAllUsers() {
         log.info("== Автообновление вакансий (пачка) ==");
+        renewLeases();
+        // Берём в аренду не больше, чем успеем разобрать: остальных заберут другие узлы
+        int capacity = BATCH_SIZE - queue.size();
+        if (capacity <= 0) {
+            log.info("== Очередь автообновления заполнена ({}), новых пользователей не берём ==", queue.size());
+            return;
+        }
         LocalDateTime now = LocalDateTime.now();
-        List<UserSettings> settingsList = userSettingsRepository.findDueUsers(
-                now,
-                PageRequest.of(0, BATCH_SIZE, Sort.by(Sort.Order.asc("nextRunAt")))
-        );
+        List<Long> claimed = userSettingsRepository.claimDueUsers(
+                now, nodeId, now.plusMinutes(Math.max(1, leaseMinutes)), capacity);
 
         int enqueued = 0;
-        for (UserSettings settings : settingsList) {
-            if (settings.getTelegramId() == null) {
-                continue;
-            }
-            Long telegramId = settings.getTelegramId();
-            if (queuedUsers.add(telegramId)) {
+        for (Long telegramId : claimed) {
+            if (telegramId != null && queuedUsers.add(telegramId)) {
                 queue.offer(telegramId);
                 enqueued++;
             }
         }
 
-        log.info("== Автообновление вакансий завершено. Обработано: {}, в очереди: {} ==",
-                settingsList.size(), enqueued);
+        log.info("== Автообновление вакансий завершено. Взято в аренду: {}, в очереди: {} ==",
+                claimed.size(), enqueued);
+    }
+
+    /**
+     * Продлевает аренду всех пользователей узла — и ждущих в очереди, и обрабатываемых сейчас,
+     * чтобы долгая пачка не отдала их другому узлу по истечении аренды.
+     */
+    private void renewLeases() {
+        if (queuedUsers.isEmpty()) {
+            return;
+        }
+        try {
+            userSettingsRepository.renewLease(
+                    List.copyOf(queuedUsers), nodeId, LocalDateTime.now().plusMinutes(Math.max(1, leaseMinutes)));
+        } catch (Exception e) {
+            log.warn("Не удалось продлить аренду автообновления: {}", e.getMessage());
+        }
     }
 
     private void workerLoop() {
@@ -111,37 +151,74 @@ public class VacancyAutoUpdater {
     }
 
     private void processBatch(Long firstTelegramId) {
-        List<Long> batch = new java.util.ArrayList<>(BATCH_PROCESS_SIZE);
+        List<Long> batch = new ArrayList<>(batchSize);
         batch.add(firstTelegramId);
-        queue.drainTo(batch, BATCH_PROCESS_SIZE - 1);
+        queue.drainTo(batch, Math.max(0, batchSize - 1));
+        Set<Long> leased = new LinkedHashSet<>(batch);
+
+        try {
+            Map<Long, SubscriptionStatusBatchItem> prefetched = fetchBatchAccess(batch);
+            Map<SearchCriteriaKey, List<PlannedUser>> plan = new LinkedHashMap<>();
+            for (Long telegramId : batch) {
+                PlannedUser user = planUser(telegramId, prefetched.get(telegramId));
+                if (user != null) {
+                    plan.computeIfAbsent(SearchCriteriaKey.of(user.request()), key -> new ArrayList<>()).add(user);
+                } else {
+                    finishUser(telegramId, leased);
+                }
+            }
+            executePlan(plan, leased);
+        } finally {
+            for (Long telegramId : List.copyOf(leased)) {
+                finishUser(telegramId, leased);
+            }
+        }
+    }
 
-        for (Long telegramId : batch) {
-            processUser(telegramId);
+    /**
+     * Токены и статусы подписки для всей пачки одним запросом.
+     * Если межсервисный ключ не настроен или вызов упал — пустая карта, пользователи обработаются по одному.
+     */
+    private Map<Long, SubscriptionStatusBatchItem> fetchBatchAccess(List<Long> batch) {
+        if (!authServiceClient.isBatchStatusEnabled()) {
+            return Map.of();
+        }
+        try {
+            return authServiceClient.getSubscriptionStatusBatch(batch);
+        } catch (Exception e) {
+            log.warn("Пакетное получение статусов подписки не удалось, переходим на запросы по одному: {}", e.getMessage());
+            return Map.of();
         }
     }
 
-    private void processUser(Long telegramId) {
+    /**
+     * Проверяет пользователя и готовит его запрос. null — пользователя в этом цикле пропускаем.
+     */
+    private PlannedUser planUser(Long telegramId, SubscriptionStatusBatchItem prefetched) {
         try {
             Optional<UserSettings> optionalSettings = userSettingsRepository.findByTelegramId(telegramId);
             if (optionalSettings.isEmpty()) {
-                return;
+                return null;
             }
             UserSettings settings = optionalSettings.get();
             if (settings.getAutoUpdateEnabled() == null || !settings.getAutoUpdateEnabled()) {
-                return;
+                return null;
             }
 
-            String token = getTokenForUser(settings);
+            boolean hasPrefetched = prefetched != null && prefetched.getToken() != null && !prefetched.getToken().isBlank();
+            String token = hasPrefetched ? prefetched.getToken() : getTokenForUser(settings);
             if (token == null) {
                 log.warn("Токен для пользователя {} не получен, пропускаем", settings.getTelegramId());
-                return;
+                return null;
             }
 
-            SubscriptionStatusResponse status = authServiceClient.getSubscriptionStatus(token);
+            SubscriptionStatusResponse status = hasPrefetched && prefetched.getStatus() != null
+                    ? prefetched.getStatus()
+                    : authServiceClient.getSubscriptionStatus(token);
             if (status == null || !Boolean.TRUE.equals(status.getActive())) {
                 log.info("Подписка не активна для пользователя {}, автообновление пропущено",
                         settings.getTelegramId());
-                return;
+                return null;
             }
 
             // Подготовка запроса на основе пользовательских настроек
@@ -150,28 +227,72 @@ public class VacancyAutoUpdater {
             request.setDays(settings.getDays());
             request.setWorkTypes(settings.getWorkTypes());
             request.setCountries(settings.getCountries());
+            request.setCityId(settings.getCityId());
             request.setExcludeKeywords(settings.getExcludeKeywords());
+            request.setExcludeCompanies(settings.getExcludeCompanies());
             request.setTelegramNotify(settings.getTelegramNotify());
+            return new PlannedUser(telegramId, token, request);
+        } catch (Exception e) {
+            log.error("Ошибка автообновления для user: {} — {}", telegramId, e.getMessage(), e);
+            return null;
+        }
+    }
 
-            // Поиск, сохранение и отправка
-            List<Vacancy> foundVacancies = vacancySmartService.searchWithUserSettings(
-                    request, token, settings.getTelegramId());
+    /**
+     * Каждый уникальный набор критериев ищется один раз (токеном первого пользователя группы),
+     * результат раздаётся всем пользователям группы со своими исключениями.
+     */
+    private void executePlan(Map<SearchCriteriaKey, List<PlannedUser>> plan, Set<Long> leased) {
+        int planned = plan.values().stream().mapToInt(List::size).sum();
+        if (planned == 0) {
+            return;
+        }
+        plannedSearches.increment(planned);
+        executedSearches.increment(plan.size());
+        dedupRatio.record(1.0 - (double) plan.size() / planned);
+        log.info("План автообновления: пользователей {}, уникальных поисков {}", planned, plan.size());
+
+        for (List<PlannedUser> group : plan.values()) {
+            PlannedUser leader = group.get(0);
+            List<Vacancy> shared;
+            try {
+                shared = vacancySmartService.searchShared(leader.request(), leader.token(), leader.telegramId());
+            } catch (Exception e) {
+                log.error("Ошибка общего поиска для пользователей {} — {}",
+                        group.stream().map(PlannedUser::telegramId).toList(), e.getMessage(), e);
+                group.forEach(user -> finishUser(user.telegramId(), leased));
+                continue;
+            }
+            for (PlannedUser user : group) {
+                try {
+                    // Сохранение и отправка
+                    List<Vacancy> foundVacancies = vacancySmartService.deliverSharedResults(
+                            user.request(), user.token(), user.telegramId(), shared);
+                    log.info("Auto-update completed for user {}. Found {} vacancies",
+                            user.telegramId(), foundVacancies.size());
+                } catch (Exception e) {
+                    log.error("Ошибка автообновления для user: {} — {}", user.telegramId(), e.getMessage(), e);
+                } finally {
+                    // Снимаем аренду сразу после доставки, не дожидаясь остальных групп пачки
+                    finishUser(user.telegramId(), leased);
+                }
+            }
+        }
+    }
 
-            log.info("Auto-update completed for user {}. Found {} vacancies",
-                    settings.getTelegramId(), foundVacancies.size());
+    private void finishUser(Long telegramId, Set<Long> leased) {
+        if (leased.remove(telegramId)) {
+            releaseUser(telegramId);
+        }
+    }
 
+    private void releaseUser(Long telegramId) {
+        try {
+            completeLease(telegramId);
         } catch (Exception e) {
-            log.error("Ошибка автообновления для user: {} — {}", telegramId, e.getMessage(), e);
+            log.warn("Не удалось снять аренду автообновления для user {}: {}", telegramId, e.getMessage());
         } finally {
-            try {
-                LocalDateTime now = LocalDateTime.now();
-                userSettingsRepository.findByTelegramId(telegramId).ifPresent(settings -> {
-                    scheduleNextRun(settings, now);
-                    userSettingsRepository.save(settings);
-                });
-            } finally {
-                queuedUsers.remove(telegramId);
-            }
+            queuedUsers.remove(telegramId);
         }
     }
 
@@ -191,15 +312,42 @@ public class VacancyAutoUpdater {
         }
     }
 
-    private void scheduleNextRun(UserSettings settings, LocalDateTime baseTime) {
-        int interval = settings.getAutoUpdateInterval() == null ? 30 : settings.getAutoUpdateInterval();
+    /**
+     * Планирует следующий запуск и снимает аренду одним UPDATE.
+     * Если аренда уже истекла и перешла к другому узлу, запись не меняется.
+     */
+    private void completeLease(Long telegramId) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer intervalSetting = userSettingsRepository.findByTelegramId(telegramId)
+                .map(UserSettings::getAutoUpdateInterval)
+                .orElse(null);
+        int updated = userSettingsRepository.completeLease(
+                telegramId, nodeId, now, nextRunAt(intervalSetting, now));
+        if (updated == 0) {
+            log.warn("Аренда автообновления для user {} уже не принадлежит узлу {}", telegramId, nodeId);
+        }
+    }
+
+    private LocalDateTime nextRunAt(Integer intervalSetting, LocalDateTime baseTime) {
+        int interval = intervalSetting == null ? 30 : intervalSetting;
         if (interval < 1) {
             interval = 1;
         }
         int jitterMax = Math.max(1, (int) Math.round(interval * (JITTER_PERCENT / 100.0)));
         int jitter = ThreadLocalRandom.current().nextInt(jitterMax + 1);
+        return baseTime.plusMinutes(interval + jitter);
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
 
-        settings.setLastRunAt(baseTime);
-        settings.setNextRunAt(baseTime.plusMinutes(interval + jitter));
+    private record PlannedUser(Long telegramId, String token, SearchRequest request) {
     }
 }
@@ -0,0 +1,107 @@
+package com.mkisten.vacancybackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Принимает события о новых вакансиях с других узлов (Postgres LISTEN) и отдаёт их в VacancyStreamService.
+ * Держит одно соединение из пула на всё время работы, при обрыве переподключается с нарастающей паузой.
+ */
+@Slf4j
+@Component
+public class VacancyEventListener {
+
+    private static final int POLL_TIMEOUT_MS = 5000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final VacancyStreamService vacancyStreamService;
+    private final boolean enabled;
+    private volatile boolean running;
+    private Thread worker;
+
+    public VacancyEventListener(DataSource dataSource,
+                                ObjectMapper objectMapper,
+                                VacancyStreamService vacancyStreamService,
+                                @Value("${app.sse.cross-node.enabled:true}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.vacancyStreamService = vacancyStreamService;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::listenLoop, "vacancy-event-listener");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void listenLoop() {
+        long backoffMs = 1000;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + VacancyStreamService.NOTIFY_CHANNEL);
+                }
+                log.info("Listening for vacancy events on channel {}", VacancyStreamService.NOTIFY_CHANNEL);
+                backoffMs = 1000;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Vacancy event listener disconnected: {}, retry in {} ms", e.getMessage(), backoffMs);
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        try {
+            VacancyStreamService.NodeEvent event = objectMapper.readValue(payload, VacancyStreamService.NodeEvent.class);
+            vacancyStreamService.deliverFromNode(event.node(), event.telegramId(), event.ids());
+        } catch (Exception e) {
+            log.warn("Failed to handle vacancy event: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mkisten.vacancybackend.service;
+
+import com.mkisten.vacancybackend.entity.Vacancy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Скомпилированные фильтры пользователя: исключения по словам в названии, по компаниям
+ * и допустимые типы работы. Каждое поле вакансии проверяется за один проход.
+ */
+public final class VacancyFilter {
+
+    private final String excludeKeywords;
+    private final String excludeCompanies;
+    private final Set<String> workTypes;
+    private final KeywordMatcher keywordMatcher;
+    private final KeywordMatcher companyMatcher;
+    private final KeywordMatcher scheduleMatcher;
+
+    private VacancyFilter(String excludeKeywords, String excludeCompanies, Set<String> workTypes) {
+        this.excludeKeywords = excludeKeywords;
+        this.excludeCompanies = excludeCompanies;
+        this.workTypes = workTypes == null ? Set.of() : Set.copyOf(workTypes);
+        this.keywordMatcher = KeywordMatcher.fromCsv(excludeKeywords);
+        this.companyMatcher = KeywordMatcher.fromCsv(excludeCompanies);
+        this.scheduleMatcher = KeywordMatcher.of(scheduleLabels(this.workTypes));
+    }
+
+    public static VacancyFilter compile(String excludeKeywords, String excludeCompanies, Set<String> workTypes) {
+        return new VacancyFilter(excludeKeywords, excludeCompanies, workTypes);
+    }
+
+    /**
+     * Собран ли фильтр из тех же настроек (сравниваются исходные строки, без перекомпиляции).
+     */
+    public boolean isCompiledFrom(String excludeKeywords, String excludeCompanies, Set<String> workTypes) {
+        return Objects.equals(this.excludeKeywords, excludeKeywords)
+                && Objects.equals(this.excludeCompanies, excludeCompanies)
+                && this.workTypes.equals(workTypes == null ? Set.of() : workTypes);
+    }
+
+    public boolean accepts(Vacancy vacancy) {
+        if (!scheduleMatcher.isEmpty() && !scheduleMatcher.matches(vacancy.getSchedule())) {
+            return false;
+        }
+        return !keywordMatcher.matches(vacancy.getTitle()) && !companyMatcher.matches(vacancy.getEmployer());
+    }
+
+    public boolean excludesCompany(String employer) {
+        return companyMatcher.matches(employer);
+    }
+
+    public List<Vacancy> apply(List<Vacancy> vacancies) {
+        if (vacancies == null || vacancies.isEmpty()) {
+            return vacancies;
+        }
+        List<Vacancy> result = new ArrayList<>(vacancies.size());
+        for (Vacancy vacancy : vacancies) {
+            if (accepts(vacancy)) {
+                result.add(vacancy);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> scheduleLabels(Set<String> workTypes) {
+        List<String> labels = new ArrayList<>();
+        for (String type : workTypes) {
+            switch (type) {
+                case "remote":
+                    labels.add("удал");
+                    break;
+                case "hybrid":
+                    labels.add("гибрид");
+                    break;
+                case "office":
+                    labels.add("офис");
+                    break;
+            }
+        }
+        return labels;
+    }
+}
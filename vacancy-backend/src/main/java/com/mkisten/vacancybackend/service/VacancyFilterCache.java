@@ -0,0 +1,49 @@
+package com.mkisten.vacancybackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mkisten.vacancybackend.entity.UserSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Скомпилированные фильтры по пользователям. Фильтр пересобирается, только если
+ * изменились исходные настройки; UserSettingsService сбрасывает запись при обновлении настроек.
+ */
+@Component
+public class VacancyFilterCache {
+
+    private final Cache<Long, VacancyFilter> filters;
+
+    public VacancyFilterCache(@Value("${app.filter-cache.max-size:10000}") long maxSize,
+                              @Value("${app.filter-cache.expire-after-access-minutes:120}") long expireAfterAccessMinutes) {
+        this.filters = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .build();
+    }
+
+    public VacancyFilter forUser(Long telegramId, String excludeKeywords, String excludeCompanies, Set<String> workTypes) {
+        if (telegramId == null) {
+            return VacancyFilter.compile(excludeKeywords, excludeCompanies, workTypes);
+        }
+        return filters.asMap().compute(telegramId, (id, cached) ->
+                cached != null && cached.isCompiledFrom(excludeKeywords, excludeCompanies, workTypes)
+                        ? cached
+                        : VacancyFilter.compile(excludeKeywords, excludeCompanies, workTypes));
+    }
+
+    public VacancyFilter forSettings(UserSettings settings) {
+        return forUser(settings.getTelegramId(), settings.getExcludeKeywords(), settings.getExcludeCompanies(),
+                settings.getWorkTypes());
+    }
+
+    public void invalidate(Long telegramId) {
+        if (telegramId != null) {
+            filters.invalidate(telegramId);
+        }
+    }
+}
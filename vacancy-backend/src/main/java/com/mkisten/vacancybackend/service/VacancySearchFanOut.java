@@ -0,0 +1,147 @@
+package com.mkisten.vacancybackend.service;
+
+import com.mkisten.vacancybackend.entity.Vacancy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Параллельный запуск поиска по источникам вакансий.
+ * У каждого источника свой ограниченный пул (bulkhead) и свой таймаут,
+ * поэтому медленный источник не задерживает остальные.
+ * Таймаут отсчитывается с запуска задачи, ожидание в очереди ограничено тем же таймаутом отдельно.
+ * Отмена по таймауту прерывает поток, но RestTemplate на чтении сокета прерывание не замечает:
+ * поток освобождается по app.http.read-timeout-ms, поэтому он должен быть меньше таймаута источника.
+ */
+@Slf4j
+@Service
+public class VacancySearchFanOut {
+
+    private final MeterRegistry meterRegistry;
+    private final long defaultTimeoutMs;
+    private final Map<String, Long> sourceTimeoutsMs;
+    private final int maxConcurrencyPerSource;
+    private final int queueCapacityPerSource;
+    private final Map<String, ThreadPoolExecutor> bulkheads = new ConcurrentHashMap<>();
+
+    public VacancySearchFanOut(MeterRegistry meterRegistry,
+                               @Value("${app.search.fan-out.timeout-ms:45000}") long defaultTimeoutMs,
+                               @Value("#{${app.search.fan-out.source-timeouts-ms:{:}}}") Map<String, Long> sourceTimeoutsMs,
+                               @Value("${app.search.fan-out.max-concurrency-per-source:4}") int maxConcurrencyPerSource,
+                               @Value("${app.search.fan-out.queue-capacity-per-source:100}") int queueCapacityPerSource) {
+        this.meterRegistry = meterRegistry;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.sourceTimeoutsMs = sourceTimeoutsMs == null ? Map.of() : Map.copyOf(sourceTimeoutsMs);
+        this.maxConcurrencyPerSource = Math.max(1, maxConcurrencyPerSource);
+        this.queueCapacityPerSource = Math.max(1, queueCapacityPerSource);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkheads.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    public SourceCall submit(String source, Supplier<List<Vacancy>> search) {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(sourceTimeoutsMs.getOrDefault(source, defaultTimeoutMs));
+        Timer latency = Timer.builder("vacancy.search.source.latency")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        CompletableFuture<Long> started = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        try {
+            Future<List<Vacancy>> future = bulkhead(source).submit(() -> {
+                started.complete(System.nanoTime());
+                return latency.record(search);
+            });
+            return new SourceCall(source, future, started, submittedAt, timeoutNanos);
+        } catch (RejectedExecutionException e) {
+            failure(source, "rejected");
+            log.warn("Source {} is saturated, search skipped", source);
+            return new SourceCall(source, CompletableFuture.completedFuture(List.of()),
+                    CompletableFuture.completedFuture(submittedAt), submittedAt, timeoutNanos);
+        }
+    }
+
+    public List<Vacancy> await(SourceCall call) {
+        try {
+            long startedAt;
+            try {
+                startedAt = call.started().get(remaining(call.submittedAt(), call.timeoutNanos()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Задача так и не получила поток: снимаем её, чтобы не занимала bulkhead впустую
+                call.future().cancel(false);
+                failure(call.source(), "queued");
+                log.warn("Source {} queue is stuck, search skipped", call.source());
+                return List.of();
+            }
+            List<Vacancy> result = call.future().get(remaining(startedAt, call.timeoutNanos()), TimeUnit.NANOSECONDS);
+            return result == null ? List.of() : result;
+        } catch (TimeoutException e) {
+            call.future().cancel(true);
+            failure(call.source(), "timeout");
+            log.warn("Source {} timed out, results skipped", call.source());
+        } catch (InterruptedException e) {
+            call.future().cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            failure(call.source(), "error");
+            log.warn("Source {} failed: {}", call.source(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+        return List.of();
+    }
+
+    private static long remaining(long from, long timeoutNanos) {
+        return Math.max(0, from + timeoutNanos - System.nanoTime());
+    }
+
+    private ThreadPoolExecutor bulkhead(String source) {
+        return bulkheads.computeIfAbsent(source, name -> {
+            AtomicInteger index = new AtomicInteger(1);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    maxConcurrencyPerSource,
+                    maxConcurrencyPerSource,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacityPerSource),
+                    task -> {
+                        Thread thread = new Thread(task);
+                        thread.setName("vacancy-source-" + name + "-" + index.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    private void failure(String source, String reason) {
+        Counter.builder("vacancy.search.source.failures")
+                .tag("source", source)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public record SourceCall(String source, Future<List<Vacancy>> future, CompletableFuture<Long> started,
+                             long submittedAt, long timeoutNanos) {
+    }
+}
@@ -1,19 +1,26 @@
 package com.mkisten.vacancybackend.service;
 
 import com.mkisten.vacancybackend.client.AuthServiceClient;
-import com.mkisten.vacancybackend.dto.ProfileResponse;
+import com.mkisten.vacancybackend.dto.VacancyCursor;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import com.mkisten.vacancybackend.entity.VacancyStatus;
+import com.mkisten.vacancybackend.repository.TelegramOutboxRepository;
 import com.mkisten.vacancybackend.repository.UserSettingsRepository;
 import com.mkisten.vacancybackend.repository.VacancyRepository;
+import com.mkisten.vacancybackend.security.RequestPrincipal;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,11 +32,10 @@ public class VacancyService {
     private final UserSettingsRepository userSettingsRepository;
     private final AuthServiceClient authServiceClient;
     private final VacancyStreamService vacancyStreamService;
+    private final TelegramOutboxRepository telegramOutboxRepository;
 
     private Long getTelegramId(String token) {
-
-        ProfileResponse profile = authServiceClient.getCurrentUserProfile(token);
-        return profile.getTelegramId();
+        return RequestPrincipal.telegramId(token, authServiceClient);
     }
 
     /**
@@ -39,26 +45,48 @@ public class VacancyService {
      */
     @Transactional
     public List<Vacancy> saveVacancies(String token, List<Vacancy> newVacancies) {
+        return saveVacancies(token, newVacancies, false);
+    }
+
+    /**
+     * Сохраняет новые вакансии и, если notifyTelegram, ставит все неотправленные вакансии пользователя
+     * в telegram_outbox в той же транзакции. Саму отправку выполняет TelegramOutboxDispatcher.
+     */
+    @Transactional
+    public List<Vacancy> saveVacancies(String token, List<Vacancy> newVacancies, boolean notifyTelegram) {
         Long userTelegramId = getTelegramId(token);
+        List<Vacancy> saved = insertNew(userTelegramId, newVacancies);
+        if (notifyTelegram) {
+            int queued = telegramOutboxRepository.enqueueUnsent(userTelegramId, LocalDateTime.now());
+            if (queued > 0) {
+                log.info("Queued {} vacancies for Telegram delivery to user {}", queued, userTelegramId);
+            }
+        }
+        return saved;
+    }
+
+    private List<Vacancy> insertNew(Long userTelegramId, List<Vacancy> newVacancies) {
         if (newVacancies.isEmpty()) {
             return List.of();
         }
 
-        Set<String> existingIds = vacancyRepository.findVacancyIdsByUser(userTelegramId);
-        List<Vacancy> vacanciesToSave = newVacancies.stream()
-                .filter(v -> !existingIds.contains(v.getId()))
-                .peek(v -> {
-                    v.setUserTelegramId(userTelegramId);
-                    v.setStatus(VacancyStatus.NEW);
-                    v.setSentToTelegram(false); // ЯВНО false для новых!
-                    if (v.getLoadedAt() == null) {
-                        v.setLoadedAt(java.time.LocalDateTime.now());
-                    }
-                })
-                .collect(Collectors.toList());
-
-        if (!vacanciesToSave.isEmpty()) {
-            List<Vacancy> saved = vacancyRepository.saveAll(vacanciesToSave);
+        // Дубликаты внутри пачки схлопываем, конфликты с уже сохранёнными отсекает сама БД
+        Map<String, Vacancy> candidates = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Vacancy v : newVacancies) {
+            if (v.getId() == null || candidates.putIfAbsent(v.getId(), v) != null) {
+                continue;
+            }
+            v.setUserTelegramId(userTelegramId);
+            v.setStatus(VacancyStatus.NEW);
+            v.setSentToTelegram(false); // ЯВНО false для новых!
+            if (v.getLoadedAt() == null) {
+                v.setLoadedAt(now);
+            }
+        }
+
+        List<Vacancy> saved = vacancyRepository.insertIfAbsent(new ArrayList<>(candidates.values()));
+        if (!saved.isEmpty()) {
             log.info("Saved {} new vacancies for user {}", saved.size(), userTelegramId);
             vacancyStreamService.emitNewVacancies(userTelegramId, saved);
             return saved;
@@ -117,19 +145,27 @@ public class VacancyService {
     @Transactional(readOnly = true)
     public List<Vacancy> getUserVacancies(String token, VacancyStatus status) {
         Long userTelegramId = getTelegramId(token);
-        Set<String> excludedCompanies = userSettingsRepository.findByTelegramId(userTelegramId)
-                .map(settings -> parseCsvLowercase(settings.getExcludeCompanies()))
-                .orElseGet(Set::of);
-        if (status == null) {
-            return filterExcludedCompanies(
-                    vacancyRepository.findByUserTelegramIdOrderByStatusAscLoadedAtDesc(userTelegramId),
-                    excludedCompanies
-            );
-        }
-        return filterExcludedCompanies(
-                vacancyRepository.findByUserTelegramIdAndStatusOrderByLoadedAtDesc(userTelegramId, status),
-                excludedCompanies
-        );
+        List<Vacancy> vacancies = new ArrayList<>();
+        vacancyRepository.streamUserVacancies(userTelegramId, status, excludedCompanies(userTelegramId), vacancies::add);
+        return vacancies;
+    }
+
+    /**
+     * Страница вакансий пользователя после курсора (keyset по status, loaded_at, id)
+     */
+    @Transactional(readOnly = true)
+    public List<Vacancy> getUserVacanciesPage(String token, VacancyStatus status, VacancyCursor after, int limit) {
+        Long userTelegramId = getTelegramId(token);
+        return vacancyRepository.findUserVacanciesPage(
+                userTelegramId, status, excludedCompanies(userTelegramId), after, limit);
+    }
+
+    /**
+     * Отдаёт вакансии пользователя по одной по мере чтения из БД (для NDJSON-выгрузки)
+     */
+    @Transactional(readOnly = true)
+    public void streamUserVacancies(Long userTelegramId, VacancyStatus status, Consumer<Vacancy> consumer) {
+        vacancyRepository.streamUserVacancies(userTelegramId, status, excludedCompanies(userTelegramId), consumer);
     }
 
     /**
@@ -161,20 +197,10 @@ public class VacancyService {
         return vacancyRepository.countNewVacancies(userTelegramId);
     }
 
-    private List<Vacancy> filterExcludedCompanies(List<Vacancy> vacancies, Set<String> excludedCompanies) {
-        if (excludedCompanies == null || excludedCompanies.isEmpty()) {
-            return vacancies;
-        }
-        return vacancies.stream()
-                .filter(vacancy -> {
-                    String employer = vacancy.getEmployer();
-                    if (employer == null) {
-                        return true;
-                    }
-                    String normalized = employer.trim().toLowerCase(Locale.ROOT);
-                    return excludedCompanies.stream().noneMatch(normalized::contains);
-                })
-                .collect(Collectors.toList());
+    private Set<String> excludedCompanies(Long userTelegramId) {
+        return userSettingsRepository.findByTelegramId(userTelegramId)
+                .map(settings -> parseCsvLowercase(settings.getExcludeCompanies()))
+                .orElseGet(Set::of);
     }
 
     private Set<String> parseCsvLowercase(String rawValue) {
@@ -11,7 +11,6 @@ import org.springframework.util.StringUtils;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 @Slf4j
@@ -24,12 +23,13 @@ public class VacancySmartService {
     private final GetmatchCareerApiService getmatchCareerApiService;
     private final SuperjobCareerApiService superjobCareerApiService;
     private final RabotaByApiService rabotaByApiService;
-    private final TelegramNotificationService telegramService;
     private final VacancyService vacancyService;
+    private final VacancySearchFanOut vacancySearchFanOut;
+    private final VacancyFilterCache vacancyFilterCache;
 
     /**
      * Выполняет поиск вакансий с подмешиванием user-настроек,
-     * сохраняет новые, и отправляет только неотправленные в Telegram.
+     * сохраняет новые и ставит неотправленные в очередь Telegram.
      */
     public List<Vacancy> searchWithUserSettings(SearchRequest request, String token, Long userTelegramId) {
         UserSettings settings = userSettingsService.getSettings(token);
@@ -51,11 +51,36 @@ public class VacancySmartService {
         if (request.getTelegramNotify() == null)
             request.setTelegramNotify(settings.getTelegramNotify());
 
+        List<Vacancy> filteredVacancies = userFilter(request, userTelegramId).apply(searchShared(request, token, userTelegramId));
+
+        // Неотправленные вакансии ставятся в очередь Telegram вместе с сохранением новых
+        boolean notifyTelegram = false;
+        if (Boolean.TRUE.equals(settings.getTelegramNotify())) {
+            notifyTelegram = userSettingsService.isSubscriptionActive(token);
+            if (!notifyTelegram) {
+                log.info("Подписка не активна для пользователя {}, отправка Telegram отключена", userTelegramId);
+            }
+        }
+
+        // Сохраняем только новые вакансии (проверяется уникальность по (id+userTelegramId))
+        vacancyService.saveVacancies(token, filteredVacancies, notifyTelegram);
+
+        // Возвращаем все найденные вакансии
+        return filteredVacancies;
+    }
+
+    /**
+     * Поиск по всем источникам без пользовательских фильтров.
+     * Результат зависит только от SearchCriteriaKey запроса и может раздаваться нескольким пользователям.
+     */
+    public List<Vacancy> searchShared(SearchRequest request, String token, Long searchTelegramId) {
         List<String> queries = splitQueries(request.getQuery());
-        log.info("Smart search for user {} with queries: {}", userTelegramId, queries);
+        log.info("Smart search for user {} with queries: {}", searchTelegramId, queries);
 
-        // Поиск вакансий по каждому ключевому слову через hhruApiService
-        Map<String, Vacancy> uniqueVacancies = new LinkedHashMap<>();
+        // Поиск по всем ключевым словам и источникам запускается параллельно,
+        // результаты собираются в исходном порядке (запрос, затем источник).
+        // В пуле нет контекста запроса, поэтому telegramId передаётся источникам явно
+        List<VacancySearchFanOut.SourceCall> calls = new ArrayList<>();
         for (String query : queries) {
             SearchRequest perQuery = new SearchRequest();
             perQuery.setQuery(query);
@@ -67,45 +92,64 @@ public class VacancySmartService {
             perQuery.setExcludeCompanies(request.getExcludeCompanies());
             perQuery.setTelegramNotify(request.getTelegramNotify());
 
-            List<Vacancy> batch = new ArrayList<>();
-            batch.addAll(hhruApiService.searchVacancies(perQuery, token));
-            batch.addAll(habrCareerApiService.searchVacancies(perQuery, token));
-            batch.addAll(getmatchCareerApiService.searchVacancies(perQuery, token));
-            batch.addAll(superjobCareerApiService.searchVacancies(perQuery, token));
-            batch.addAll(rabotaByApiService.searchVacancies(perQuery, token));
-            for (Vacancy vacancy : batch) {
+            calls.add(vacancySearchFanOut.submit("hh", () -> hhruApiService.searchVacancies(perQuery, searchTelegramId)));
+            calls.add(vacancySearchFanOut.submit("habr", () -> habrCareerApiService.searchVacancies(perQuery, searchTelegramId)));
+            calls.add(vacancySearchFanOut.submit("getmatch", () -> getmatchCareerApiService.searchVacancies(perQuery, searchTelegramId)));
+            calls.add(vacancySearchFanOut.submit("superjob", () -> superjobCareerApiService.searchVacancies(perQuery, searchTelegramId)));
+            calls.add(vacancySearchFanOut.submit("rabota-by", () -> rabotaByApiService.searchVacancies(perQuery, searchTelegramId)));
+        }
+
+        Map<String, Vacancy> uniqueVacancies = new LinkedHashMap<>();
+        for (VacancySearchFanOut.SourceCall call : calls) {
+            for (Vacancy vacancy : vacancySearchFanOut.await(call)) {
                 uniqueVacancies.putIfAbsent(vacancy.getId(), vacancy);
             }
         }
-        List<Vacancy> byWorkType = filterByWorkTypes(
-                new ArrayList<>(uniqueVacancies.values()),
-                request.getWorkTypes()
-        );
-        List<Vacancy> filteredVacancies = filterByExcludeKeywords(
-                byWorkType,
-                request.getExcludeKeywords()
-        );
-        filteredVacancies = filterByExcludeCompanies(
-                filteredVacancies,
-                request.getExcludeCompanies()
-        );
-
-        // Сохраняем только новые вакансии (проверяется уникальность по (id+userTelegramId))
-        vacancyService.saveVacancies(token, filteredVacancies);
+        return new ArrayList<>(uniqueVacancies.values());
+    }
 
-        // Отправить только неотправленные вакансии в Telegram
-        if (Boolean.TRUE.equals(settings.getTelegramNotify())) {
-            if (userSettingsService.isSubscriptionActive(token)) {
-                telegramService.sendAllUnsentVacanciesToTelegram(token, userTelegramId);
-            } else {
-                log.info("Подписка не активна для пользователя {}, отправка Telegram отключена", userTelegramId);
+    /**
+     * Раздаёт результат общего поиска одному пользователю: применяет его фильтры,
+     * копирует подошедшие вакансии, сохраняет новые и ставит их в очередь Telegram.
+     * Активность подписки должен проверить вызывающий.
+     */
+    public List<Vacancy> deliverSharedResults(SearchRequest request, String token, Long userTelegramId,
+                                              List<Vacancy> shared) {
+        VacancyFilter filter = userFilter(request, userTelegramId);
+        List<Vacancy> filteredVacancies = new ArrayList<>();
+        for (Vacancy vacancy : shared) {
+            if (filter.accepts(vacancy)) {
+                filteredVacancies.add(copyFor(vacancy, userTelegramId));
             }
         }
 
-        // Возвращаем все найденные вакансии
+        vacancyService.saveVacancies(token, filteredVacancies, Boolean.TRUE.equals(request.getTelegramNotify()));
         return filteredVacancies;
     }
 
+    private VacancyFilter userFilter(SearchRequest request, Long userTelegramId) {
+        return vacancyFilterCache.forUser(userTelegramId, request.getExcludeKeywords(),
+                request.getExcludeCompanies(), request.getWorkTypes());
+    }
+
+    private Vacancy copyFor(Vacancy source, Long userTelegramId) {
+        Vacancy copy = new Vacancy();
+        copy.setId(source.getId());
+        copy.setUserTelegramId(userTelegramId);
+        copy.setTitle(source.getTitle());
+        copy.setEmployer(source.getEmployer());
+        copy.setCity(source.getCity());
+        copy.setSchedule(source.getSchedule());
+        copy.setSalary(source.getSalary());
+        copy.setUrl(source.getUrl());
+        copy.setSource(source.getSource());
+        copy.setStatus(source.getStatus());
+        copy.setPublishedAt(source.getPublishedAt());
+        copy.setLoadedAt(source.getLoadedAt());
+        copy.setSentToTelegram(source.getSentToTelegram());
+        return copy;
+    }
+
     private List<String> splitQueries(String query) {
         if (!StringUtils.hasText(query)) {
             return List.of();
@@ -119,124 +163,4 @@ public class VacancySmartService {
         }
         return result.isEmpty() ? List.of() : result;
     }
-
-    private List<Vacancy> filterByExcludeKeywords(List<Vacancy> vacancies, String excludeKeywords) {
-        if (vacancies == null || vacancies.isEmpty()) {
-            return vacancies;
-        }
-        if (!StringUtils.hasText(excludeKeywords)) {
-            return vacancies;
-        }
-
-        List<String> keywords = new ArrayList<>();
-        for (String raw : excludeKeywords.split(",")) {
-            String trimmed = raw.trim();
-            if (!trimmed.isEmpty()) {
-                keywords.add(trimmed.toLowerCase(Locale.ROOT));
-            }
-        }
-        if (keywords.isEmpty()) {
-            return vacancies;
-        }
-
-        List<Vacancy> result = new ArrayList<>(vacancies.size());
-        for (Vacancy vacancy : vacancies) {
-            String title = vacancy.getTitle();
-            String normalized = title == null ? "" : title.toLowerCase(Locale.ROOT);
-            boolean excluded = false;
-            for (String keyword : keywords) {
-                if (normalized.contains(keyword)) {
-                    excluded = true;
-                    break;
-                }
-            }
-            if (!excluded) {
-                result.add(vacancy);
-            }
-        }
-
-        return result;
-    }
-
-    private List<Vacancy> filterByWorkTypes(List<Vacancy> vacancies, java.util.Set<String> workTypes) {
-        if (vacancies == null || vacancies.isEmpty()) {
-            return vacancies;
-        }
-        if (workTypes == null || workTypes.isEmpty()) {
-            return vacancies;
-        }
-
-        List<String> labels = new ArrayList<>();
-        for (String type : workTypes) {
-            switch (type) {
-                case "remote":
-                    labels.add("удал");
-                    break;
-                case "hybrid":
-                    labels.add("гибрид");
-                    break;
-                case "office":
-                    labels.add("офис");
-                    break;
-            }
-        }
-        if (labels.isEmpty()) {
-            return vacancies;
-        }
-
-        List<Vacancy> result = new ArrayList<>(vacancies.size());
-        for (Vacancy vacancy : vacancies) {
-            String schedule = vacancy.getSchedule();
-            String normalized = schedule == null ? "" : schedule.toLowerCase(Locale.ROOT);
-            boolean matches = false;
-            for (String label : labels) {
-                if (normalized.contains(label)) {
-                    matches = true;
-                    break;
-                }
-            }
-            if (matches) {
-                result.add(vacancy);
-            }
-        }
-        return result;
-    }
-
-    private List<Vacancy> filterByExcludeCompanies(List<Vacancy> vacancies, String excludeCompanies) {
-        if (vacancies == null || vacancies.isEmpty()) {
-            return vacancies;
-        }
-        if (!StringUtils.hasText(excludeCompanies)) {
-            return vacancies;
-        }
-
-        List<String> companies = new ArrayList<>();
-        for (String raw : excludeCompanies.split(",")) {
-            String trimmed = raw.trim();
-            if (!trimmed.isEmpty()) {
-                companies.add(trimmed.toLowerCase(Locale.ROOT));
-            }
-        }
-        if (companies.isEmpty()) {
-            return vacancies;
-        }
-
-        List<Vacancy> result = new ArrayList<>(vacancies.size());
-        for (Vacancy vacancy : vacancies) {
-            String employer = vacancy.getEmployer();
-            String normalized = employer == null ? "" : employer.toLowerCase(Locale.ROOT);
-            boolean excluded = false;
-            for (String company : companies) {
-                if (normalized.contains(company)) {
-                    excluded = true;
-                    break;
-                }
-            }
-            if (!excluded) {
-                result.add(vacancy);
-            }
-        }
-
-        return result;
-    }
 }
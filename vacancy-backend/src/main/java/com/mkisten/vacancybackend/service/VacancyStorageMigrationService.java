@@ -0,0 +1,80 @@
+package com.mkisten.vacancybackend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Переносит старую таблицу vacancies (полная копия вакансии на каждого пользователя)
+ * в vacancy_catalog + user_vacancies. Старая таблица переименовывается в vacancies_legacy,
+ * поэтому перенос выполняется один раз и его можно откатить вручную.
+ * Выполняется до запуска планировщиков и HTTP-сервера: пока перенос не закончен,
+ * никто не должен писать в user_vacancies, иначе статусы из старой таблицы потеряются.
+ */
+@Slf4j
+@Service
+public class VacancyStorageMigrationService implements SmartInitializingSingleton {
+
+    private static final long MIGRATION_LOCK_ID = 0x7661636174616c6fL;
+
+    private static final String COPY_CATALOG = """
+            INSERT INTO vacancy_catalog (source, external_id, title, employer, city, schedule, salary, url, published_at, updated_at)
+            SELECT DISTINCT ON (COALESCE(source, ''), id)
+                   COALESCE(source, ''), id, title, employer, city, schedule, salary, url, published_at, loaded_at
+            FROM vacancies
+            ORDER BY COALESCE(source, ''), id, loaded_at DESC NULLS LAST
+            ON CONFLICT (source, external_id) DO NOTHING
+            """;
+
+    private static final String COPY_LINKS = """
+            INSERT INTO user_vacancies (id, user_telegram_id, source, status, loaded_at, sent_to_telegram)
+            SELECT id, user_telegram_id, COALESCE(source, ''), status, loaded_at, COALESCE(sent_to_telegram, false)
+            FROM vacancies
+            ON CONFLICT (id, user_telegram_id) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+
+    public VacancyStorageMigrationService(JdbcTemplate jdbcTemplate,
+                                          TransactionTemplate transactionTemplate,
+                                          @Value("${app.vacancy-storage.migrate-legacy:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        migrateLegacyTable();
+    }
+
+    public void migrateLegacyTable() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Несколько узлов стартуют одновременно: переносит только тот, кто взял блокировку
+                jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, MIGRATION_LOCK_ID);
+                String legacy = jdbcTemplate.queryForObject(
+                        "SELECT to_regclass('public.vacancies')::text", String.class);
+                if (legacy == null) {
+                    return;
+                }
+                int catalogRows = jdbcTemplate.update(COPY_CATALOG);
+                int linkRows = jdbcTemplate.update(COPY_LINKS);
+                jdbcTemplate.execute("ALTER TABLE vacancies RENAME TO vacancies_legacy");
+                log.info("Vacancy storage migrated: catalog rows {}, user links {}, old table renamed to vacancies_legacy",
+                        catalogRows, linkRows);
+            });
+        } catch (Exception e) {
+            // Без переноса стартовать нельзя: автообновление заполнит user_vacancies заново
+            throw new IllegalStateException("Vacancy storage migration failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,75 +1,354 @@
 package com.mkisten.vacancybackend.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mkisten.vacancybackend.dto.VacancyResponse;
 import com.mkisten.vacancybackend.entity.Vacancy;
+import com.mkisten.vacancybackend.repository.VacancyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * SSE-рассылка новых вакансий. Отправка идёт в отдельном пуле: у каждого подписчика своя
+ * ограниченная очередь, поэтому медленный клиент не задерживает сохранение вакансий.
+ * При переполнении очереди пачки вакансий склеиваются, а самые старые вакансии сверх лимита отбрасываются.
+ * Другим узлам событие уходит через Postgres NOTIFY (см. VacancyEventListener).
+ */
 @Slf4j
 @Service
 public class VacancyStreamService {
 
-    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    public static final String NOTIFY_CHANNEL = "vacancy_events";
+    // NOTIFY принимает payload короче 8000 байт
+    private static final int NOTIFY_MAX_PAYLOAD_BYTES = 7999;
 
-    public SseEmitter subscribe(Long telegramId) {
-        SseEmitter emitter = new SseEmitter(0L);
-        emitters.computeIfAbsent(telegramId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final VacancyRepository vacancyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int queueCapacity;
+    private final int maxCoalescedVacancies;
+    private final boolean crossNodeEnabled;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService dispatchPool;
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final Counter sentEvents;
+    private final Counter droppedVacancies;
+    private final Counter coalescedEvents;
 
-        emitter.onCompletion(() -> removeEmitter(telegramId, emitter));
-        emitter.onTimeout(() -> removeEmitter(telegramId, emitter));
-        emitter.onError((e) -> removeEmitter(telegramId, emitter));
+    public VacancyStreamService(MeterRegistry meterRegistry,
+                                ObjectMapper objectMapper,
+                                VacancyRepository vacancyRepository,
+                                JdbcTemplate jdbcTemplate,
+                                @Value("${app.sse.queue-capacity:16}") int queueCapacity,
+                                @Value("${app.sse.max-coalesced-vacancies:500}") int maxCoalescedVacancies,
+                                @Value("${app.sse.dispatch-threads:2}") int dispatchThreads,
+                                @Value("${app.sse.heartbeat-seconds:25}") long heartbeatSeconds,
+                                @Value("${app.sse.cross-node.enabled:true}") boolean crossNodeEnabled) {
+        this.objectMapper = objectMapper;
+        this.vacancyRepository = vacancyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxCoalescedVacancies = Math.max(1, maxCoalescedVacancies);
+        this.crossNodeEnabled = crossNodeEnabled;
 
-        try {
-            emitter.send(SseEmitter.event()
-                    .name("connected")
-                    .data(Map.of("timestamp", Instant.now().toString())));
-        } catch (IOException e) {
-            log.warn("Failed to send initial SSE event for user {}", telegramId, e);
+        AtomicInteger index = new AtomicInteger(1);
+        this.dispatchPool = Executors.newFixedThreadPool(Math.max(1, dispatchThreads), task -> {
+            Thread thread = new Thread(task);
+            thread.setName("vacancy-sse-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setName("vacancy-sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatSeconds > 0) {
+            heartbeatScheduler.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
         }
 
+        meterRegistry.gauge("vacancy.sse.subscribers", subscribers,
+                map -> map.values().stream().mapToInt(Set::size).sum());
+        meterRegistry.gauge("vacancy.sse.queue.depth", queueDepth);
+        this.sentEvents = meterRegistry.counter("vacancy.sse.events.sent");
+        this.droppedVacancies = meterRegistry.counter("vacancy.sse.events.dropped");
+        this.coalescedEvents = meterRegistry.counter("vacancy.sse.events.coalesced");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+        dispatchPool.shutdownNow();
+    }
+
+    public SseEmitter subscribe(Long telegramId) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(telegramId, emitter);
+        subscribers.computeIfAbsent(telegramId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        emitter.onCompletion(() -> removeSubscriber(subscriber));
+        emitter.onTimeout(() -> removeSubscriber(subscriber));
+        emitter.onError((e) -> removeSubscriber(subscriber));
+
+        enqueue(subscriber, new StreamEvent("connected", Map.of("timestamp", Instant.now().toString())));
         return emitter;
     }
 
+    /**
+     * Вызывается внутри транзакции сохранения: NOTIFY уйдёт другим узлам при коммите,
+     * локальные подписчики получат событие после коммита.
+     */
     public void emitNewVacancies(Long telegramId, List<Vacancy> vacancies) {
         if (vacancies == null || vacancies.isEmpty()) {
             return;
         }
-        Set<SseEmitter> userEmitters = emitters.get(telegramId);
-        if (userEmitters == null || userEmitters.isEmpty()) {
+        if (crossNodeEnabled) {
+            notifyOtherNodes(telegramId, vacancies);
+        }
+        if (!hasSubscribers(telegramId)) {
             return;
         }
-
         List<VacancyResponse> payload = vacancies.stream()
                 .map(VacancyResponse::new)
                 .toList();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deliverLocally(telegramId, payload);
+                }
+            });
+        } else {
+            deliverLocally(telegramId, payload);
+        }
+    }
+
+    /**
+     * Событие с другого узла: вакансии уже закоммичены, подгружаем их только если у пользователя есть подписчики здесь.
+     */
+    public void deliverFromNode(String originNodeId, Long telegramId, List<String> vacancyIds) {
+        if (nodeId.equals(originNodeId) || vacancyIds == null || vacancyIds.isEmpty() || !hasSubscribers(telegramId)) {
+            return;
+        }
+        List<VacancyResponse> payload = vacancyRepository.findByUserTelegramIdAndIdIn(telegramId, vacancyIds).stream()
+                .map(VacancyResponse::new)
+                .toList();
+        deliverLocally(telegramId, payload);
+    }
+
+    public boolean hasSubscribers(Long telegramId) {
+        Set<Subscriber> userSubscribers = subscribers.get(telegramId);
+        return userSubscribers != null && !userSubscribers.isEmpty();
+    }
+
+    private void deliverLocally(Long telegramId, List<VacancyResponse> payload) {
+        if (payload.isEmpty()) {
+            return;
+        }
+        Set<Subscriber> userSubscribers = subscribers.get(telegramId);
+        if (userSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            enqueue(subscriber, new StreamEvent("vacancies", new ArrayList<>(payload)));
+        }
+    }
+
+    /**
+     * NOTIFY идёт в транзакции сохранения, и ошибка в нём прерывает всю транзакцию.
+     * Поэтому пачки id ограничены по байтам, а ошибка не глотается: сохранение откатывается явно, а не на коммите.
+     */
+    private void notifyOtherNodes(Long telegramId, List<Vacancy> vacancies) {
+        int emptyBytes = payloadBytes(new NodeEvent(nodeId, telegramId, List.of()));
+        List<String> ids = new ArrayList<>();
+        int batchBytes = emptyBytes;
+        for (Vacancy vacancy : vacancies) {
+            // id в кавычках и запятая перед ним
+            int idBytes = payloadBytes(vacancy.getId()) + 1;
+            if (emptyBytes + idBytes > NOTIFY_MAX_PAYLOAD_BYTES) {
+                log.warn("Vacancy id is too long for NOTIFY, user {}: {} bytes", telegramId, idBytes);
+                continue;
+            }
+            if (batchBytes + idBytes > NOTIFY_MAX_PAYLOAD_BYTES) {
+                publish(telegramId, ids);
+                ids = new ArrayList<>();
+                batchBytes = emptyBytes;
+            }
+            ids.add(vacancy.getId());
+            batchBytes += idBytes;
+        }
+        if (!ids.isEmpty()) {
+            publish(telegramId, ids);
+        }
+    }
 
-        for (SseEmitter emitter : userEmitters) {
+    private void publish(Long telegramId, List<String> ids) {
+        String message = toJson(new NodeEvent(nodeId, telegramId, ids));
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, NOTIFY_CHANNEL, message);
+    }
+
+    private int payloadBytes(Object value) {
+        return toJson(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize vacancy event", e);
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                enqueue(subscriber, StreamEvent.HEARTBEAT);
+            }
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, StreamEvent event) {
+        synchronized (subscriber) {
+            if (event == StreamEvent.HEARTBEAT && !subscriber.queue.isEmpty()) {
+                // Очередь не пуста — соединение и так получит данные
+                return;
+            }
+            if (subscriber.queue.size() >= queueCapacity) {
+                coalesce(subscriber, event);
+            } else {
+                subscriber.queue.addLast(event);
+                queueDepth.incrementAndGet();
+            }
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            dispatchPool.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Очередь полна: все ожидающие пачки вакансий и новое событие склеиваются в одну пачку
+     * не длиннее maxCoalescedVacancies, остальные события (кроме heartbeat) сохраняются.
+     */
+    @SuppressWarnings("unchecked")
+    private void coalesce(Subscriber subscriber, StreamEvent incoming) {
+        Deque<StreamEvent> kept = new ArrayDeque<>();
+        List<VacancyResponse> merged = new ArrayList<>();
+        int before = subscriber.queue.size();
+        for (StreamEvent queued : subscriber.queue) {
+            if ("vacancies".equals(queued.name())) {
+                merged.addAll((List<VacancyResponse>) queued.data());
+            } else if (queued != StreamEvent.HEARTBEAT) {
+                kept.addLast(queued);
+            }
+        }
+        if ("vacancies".equals(incoming.name())) {
+            merged.addAll((List<VacancyResponse>) incoming.data());
+        } else if (incoming != StreamEvent.HEARTBEAT) {
+            kept.addLast(incoming);
+        }
+        if (merged.size() > maxCoalescedVacancies) {
+            droppedVacancies.increment(merged.size() - maxCoalescedVacancies);
+            merged = new ArrayList<>(merged.subList(merged.size() - maxCoalescedVacancies, merged.size()));
+        }
+        if (!merged.isEmpty()) {
+            kept.addLast(new StreamEvent("vacancies", merged));
+        }
+        // Если служебных событий больше ёмкости — отбрасываем самые старые
+        while (kept.size() > queueCapacity) {
+            kept.pollFirst();
+            droppedVacancies.increment();
+        }
+        subscriber.queue.clear();
+        subscriber.queue.addAll(kept);
+        queueDepth.addAndGet(kept.size() - before);
+        coalescedEvents.increment();
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            StreamEvent event;
+            synchronized (subscriber) {
+                event = subscriber.queue.pollFirst();
+                if (event == null) {
+                    subscriber.draining.set(false);
+                    return;
+                }
+                queueDepth.decrementAndGet();
+            }
             try {
-                emitter.send(SseEmitter.event()
-                        .name("vacancies")
-                        .data(payload));
-            } catch (IOException e) {
-                log.warn("Failed to send SSE update for user {}", telegramId, e);
-                removeEmitter(telegramId, emitter);
+                if (event == StreamEvent.HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+                    sentEvents.increment();
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("SSE subscriber of user {} disconnected: {}", subscriber.telegramId, e.getMessage());
+                removeSubscriber(subscriber);
+                subscriber.emitter.completeWithError(e);
             }
         }
     }
 
-    private void removeEmitter(Long telegramId, SseEmitter emitter) {
-        Set<SseEmitter> userEmitters = emitters.get(telegramId);
-        if (userEmitters != null) {
-            userEmitters.remove(emitter);
-            if (userEmitters.isEmpty()) {
-                emitters.remove(telegramId);
+    private void removeSubscriber(Subscriber subscriber) {
+        Set<Subscriber> userSubscribers = subscribers.get(subscriber.telegramId);
+        if (userSubscribers != null) {
+            userSubscribers.remove(subscriber);
+            if (userSubscribers.isEmpty()) {
+                subscribers.remove(subscriber.telegramId, userSubscribers);
             }
         }
+        synchronized (subscriber) {
+            queueDepth.addAndGet(-subscriber.queue.size());
+            subscriber.queue.clear();
+        }
+    }
+
+    private static final class Subscriber {
+        private final Long telegramId;
+        private final SseEmitter emitter;
+        private final Deque<StreamEvent> queue = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(Long telegramId, SseEmitter emitter) {
+            this.telegramId = telegramId;
+            this.emitter = emitter;
+        }
+    }
+
+    private record StreamEvent(String name, Object data) {
+        private static final StreamEvent HEARTBEAT = new StreamEvent("heartbeat", null);
+    }
+
+    public record NodeEvent(String node, Long telegramId, List<String> ids) {
     }
 }
@@ -17,12 +17,17 @@ import com.mkisten.vacancybackend.service.UserSettingsService;
 import com.mkisten.vacancybackend.service.VacancyService;
 import com.mkisten.vacancybackend.service.VacancySmartService;
 import com.mkisten.vacancybackend.service.VacancyStreamService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -90,7 +95,8 @@ class VacancyBackendControllerTest {
                 vacancyService,
                 vacancySmartService,
                 userSettingsService,
-                vacancyStreamService
+                vacancyStreamService,
+                new ObjectMapper()
         );
 
         when(vacancyService.getNewVacanciesCount("token")).thenReturn(5L);
@@ -135,7 +141,8 @@ class VacancyBackendControllerTest {
                 vacancyService,
                 vacancySmartService,
                 userSettingsService,
-                vacancyStreamService
+                vacancyStreamService,
+                new ObjectMapper()
         );
 
         UserSettings settings = new UserSettings(1L);
@@ -150,6 +157,49 @@ class VacancyBackendControllerTest {
         assertEquals(1, response.getBody().size());
     }
 
+    @Test
+    void vacancyControllerPagesByCursorAndStreamsNdjson() throws Exception {
+        VacancyService vacancyService = mock(VacancyService.class);
+        UserSettingsService userSettingsService = mock(UserSettingsService.class);
+        VacancyController controller = new VacancyController(
+                vacancyService,
+                mock(VacancySmartService.class),
+                userSettingsService,
+                mock(VacancyStreamService.class),
+                new ObjectMapper().findAndRegisterModules()
+        );
+
+        Vacancy first = new Vacancy("1", 1L, "First");
+        first.setStatus(VacancyStatus.NEW);
+        first.setLoadedAt(LocalDateTime.of(2024, 5, 1, 12, 0));
+        Vacancy second = new Vacancy("2", 1L, "Second");
+        second.setStatus(VacancyStatus.NEW);
+        when(vacancyService.getUserVacanciesPage("token", null, null, 2)).thenReturn(List.of(first, second));
+
+        ResponseEntity<List<VacancyResponse>> page = controller.getUserVacancies("Bearer token", null, null, 1);
+        assertEquals(1, page.getBody().size());
+        String nextCursor = page.getHeaders().getFirst("X-Next-Cursor");
+        assertEquals(new VacancyCursor(VacancyStatus.NEW, first.getLoadedAt(), "1"), VacancyCursor.decode(nextCursor));
+        verify(vacancyService, never()).getUserVacancies(any(), any());
+
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getUserVacancies("Bearer token", null, "%%%", 10).getStatusCode());
+
+        when(userSettingsService.getTelegramId("token")).thenReturn(1L);
+        doAnswer(invocation -> {
+            Consumer<Vacancy> consumer = invocation.getArgument(2);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(vacancyService).streamUserVacancies(eq(1L), isNull(), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        controller.streamUserVacancies("Bearer token", null).getBody().writeTo(out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"title\":\"First\""));
+        assertTrue(lines[1].contains("\"id\":\"2\""));
+    }
+
     @Test
     void controllerGlobalExceptionHandlerSubscriptionRequired() {
         com.mkisten.vacancybackend.api.error.GlobalExceptionHandler handler =
@@ -46,6 +46,31 @@ class VacancyBackendModelTest {
         assertEquals(VacancyStatus.NEW, response.getStatus());
     }
 
+    @Test
+    void vacancyReadsContentFromSharedCatalog() {
+        VacancyCatalogEntry entry = new VacancyCatalogEntry();
+        entry.setSource("HH");
+        entry.setExternalId("123");
+        entry.setTitle("Engineer");
+        entry.setEmployer("Acme");
+        entry.setPublishedAt(LocalDateTime.of(2024, 1, 1, 10, 0));
+
+        Vacancy vacancy = new Vacancy();
+        vacancy.setId("123");
+        vacancy.setUserTelegramId(10L);
+        vacancy.setSource("HH");
+        vacancy.setCatalog(entry);
+
+        VacancyResponse response = new VacancyResponse(vacancy);
+        assertEquals("Engineer", response.getTitle());
+        assertEquals("Acme", response.getEmployer());
+        assertEquals(entry.getPublishedAt(), response.getPublishedAt());
+
+        vacancy.setTitle("Parsed title");
+        assertEquals("Parsed title", vacancy.getTitle());
+        assertEquals(new VacancyCatalogKey("HH", "123"), new VacancyCatalogKey("HH", "123"));
+    }
+
     @Test
     void apiErrorResponseBuilderSetsFields() {
         ApiErrorResponse response = ApiErrorResponse.builder()
@@ -1,26 +1,52 @@
 package com.mkisten.vacancybackend;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mkisten.vacancybackend.client.AuthServiceClient;
 import com.mkisten.vacancybackend.dto.ProfileResponse;
 import com.mkisten.vacancybackend.dto.SearchRequest;
+import com.mkisten.vacancybackend.dto.SubscriptionStatusBatchItem;
 import com.mkisten.vacancybackend.dto.SubscriptionStatusResponse;
 import com.mkisten.vacancybackend.dto.TokenResponse;
+import com.mkisten.vacancybackend.entity.TelegramOutboxEntry;
 import com.mkisten.vacancybackend.entity.UserSettings;
 import com.mkisten.vacancybackend.entity.Vacancy;
 import com.mkisten.vacancybackend.entity.VacancyStatus;
+import com.mkisten.vacancybackend.repository.TelegramOutboxRepository;
 import com.mkisten.vacancybackend.repository.UserSettingsRepository;
+import com.mkisten.vacancybackend.repository.VacancyBulkRepositoryImpl;
 import com.mkisten.vacancybackend.repository.VacancyRepository;
+import com.mkisten.vacancybackend.security.LocalJwtVerifier;
 import com.mkisten.vacancybackend.service.*;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.data.domain.Pageable;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -33,7 +59,8 @@ class VacancyBackendServiceTest {
         UserSettingsRepository userSettingsRepository = mock(UserSettingsRepository.class);
         AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
         VacancyStreamService vacancyStreamService = mock(VacancyStreamService.class);
-        VacancyService service = new VacancyService(vacancyRepository, userSettingsRepository, authServiceClient, vacancyStreamService);
+        VacancyService service = new VacancyService(vacancyRepository, userSettingsRepository, authServiceClient, vacancyStreamService,
+                mock(TelegramOutboxRepository.class));
 
         ProfileResponse profile = new ProfileResponse();
         profile.setTelegramId(10L);
@@ -44,10 +71,16 @@ class VacancyBackendServiceTest {
         Vacancy v2 = new Vacancy();
         v2.setId("2");
 
-        when(vacancyRepository.findVacancyIdsByUser(10L)).thenReturn(Set.of("1"));
-        when(vacancyRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        Vacancy duplicate = new Vacancy();
+        duplicate.setId("2");
 
-        List<Vacancy> saved = service.saveVacancies("token", List.of(v1, v2));
+        // "1" уже сохранена: ON CONFLICT DO NOTHING не вернёт её
+        when(vacancyRepository.insertIfAbsent(anyList())).thenAnswer(invocation -> {
+            List<Vacancy> rows = invocation.getArgument(0);
+            return rows.stream().filter(v -> !"1".equals(v.getId())).toList();
+        });
+
+        List<Vacancy> saved = service.saveVacancies("token", List.of(v1, v2, duplicate));
 
         assertEquals(1, saved.size());
         Vacancy savedVacancy = saved.get(0);
@@ -56,6 +89,34 @@ class VacancyBackendServiceTest {
         assertEquals(VacancyStatus.NEW, savedVacancy.getStatus());
         assertFalse(savedVacancy.getSentToTelegram());
         assertNotNull(savedVacancy.getLoadedAt());
+        verify(vacancyRepository).insertIfAbsent(argThat(rows -> rows.size() == 2));
+        verify(vacancyRepository, never()).saveAll(anyList());
+        verify(vacancyStreamService).emitNewVacancies(10L, saved);
+    }
+
+    @Test
+    void vacancyServiceUsesTelegramIdResolvedByAuthFilter() {
+        VacancyRepository vacancyRepository = mock(VacancyRepository.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        VacancyService service = new VacancyService(vacancyRepository, mock(UserSettingsRepository.class),
+                authServiceClient, mock(VacancyStreamService.class), mock(TelegramOutboxRepository.class));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer token");
+        request.setAttribute("telegramId", 10L);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            Vacancy vacancy = new Vacancy();
+            vacancy.setId("1");
+            when(vacancyRepository.insertIfAbsent(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+            List<Vacancy> saved = service.saveVacancies("token", List.of(vacancy));
+
+            assertEquals(10L, saved.get(0).getUserTelegramId());
+            verify(authServiceClient, never()).getCurrentUserProfile(anyString());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
     }
 
     @Test
@@ -66,7 +127,6 @@ class VacancyBackendServiceTest {
         GetmatchCareerApiService getmatchApiService = mock(GetmatchCareerApiService.class);
         SuperjobCareerApiService superjobApiService = mock(SuperjobCareerApiService.class);
         RabotaByApiService rabotaByApiService = mock(RabotaByApiService.class);
-        TelegramNotificationService telegramService = mock(TelegramNotificationService.class);
         VacancyRepository vacancyRepository = mock(VacancyRepository.class);
         VacancyService vacancyService = mock(VacancyService.class);
 
@@ -77,8 +137,9 @@ class VacancyBackendServiceTest {
                 getmatchApiService,
                 superjobApiService,
                 rabotaByApiService,
-                telegramService,
-                vacancyService
+                vacancyService,
+                new VacancySearchFanOut(new SimpleMeterRegistry(), 5000, Map.of(), 4, 100),
+                new VacancyFilterCache(100, 10)
         );
 
         UserSettings settings = new UserSettings(10L);
@@ -89,12 +150,12 @@ class VacancyBackendServiceTest {
         when(settingsService.getSettings("token")).thenReturn(settings);
         when(settingsService.isSubscriptionActive("token")).thenReturn(true);
 
-        when(apiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(habrApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(getmatchApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(superjobApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(rabotaByApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(vacancyService.saveVacancies(eq("token"), anyList())).thenReturn(List.of());
+        when(apiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(habrApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(getmatchApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(superjobApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(rabotaByApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(vacancyService.saveVacancies(eq("token"), anyList(), anyBoolean())).thenReturn(List.of());
 
         SearchRequest request = new SearchRequest();
         request.setDays(null);
@@ -104,7 +165,7 @@ class VacancyBackendServiceTest {
         assertEquals(3, request.getDays());
         assertEquals("intern", request.getExcludeKeywords());
         assertEquals(0, result.size());
-        verify(telegramService).sendAllUnsentVacanciesToTelegram("token", 10L);
+        verify(vacancyService).saveVacancies(eq("token"), anyList(), eq(true));
     }
 
     @Test
@@ -115,7 +176,6 @@ class VacancyBackendServiceTest {
         GetmatchCareerApiService getmatchApiService = mock(GetmatchCareerApiService.class);
         SuperjobCareerApiService superjobApiService = mock(SuperjobCareerApiService.class);
         RabotaByApiService rabotaByApiService = mock(RabotaByApiService.class);
-        TelegramNotificationService telegramService = mock(TelegramNotificationService.class);
         VacancyService vacancyService = mock(VacancyService.class);
 
         VacancySmartService service = new VacancySmartService(
@@ -125,8 +185,9 @@ class VacancyBackendServiceTest {
                 getmatchApiService,
                 superjobApiService,
                 rabotaByApiService,
-                telegramService,
-                vacancyService
+                vacancyService,
+                new VacancySearchFanOut(new SimpleMeterRegistry(), 5000, Map.of(), 4, 100),
+                new VacancyFilterCache(100, 10)
         );
 
         UserSettings settings = new UserSettings(10L);
@@ -136,34 +197,199 @@ class VacancyBackendServiceTest {
         settings.setTelegramNotify(false);
         when(settingsService.getSettings("token")).thenReturn(settings);
 
-        when(apiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(habrApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(getmatchApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
-        when(superjobApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of());
+        when(apiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(habrApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(getmatchApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(superjobApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
 
         Vacancy rabotaVacancy = new Vacancy();
         rabotaVacancy.setId("rabota-by-1");
         rabotaVacancy.setTitle("Java Developer");
         rabotaVacancy.setSchedule("Удалённо");
-        when(rabotaByApiService.searchVacancies(any(), eq("token"))).thenReturn(List.of(rabotaVacancy));
-        when(vacancyService.saveVacancies(eq("token"), anyList())).thenReturn(List.of(rabotaVacancy));
+        when(rabotaByApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of(rabotaVacancy));
+        when(vacancyService.saveVacancies(eq("token"), anyList(), anyBoolean())).thenReturn(List.of(rabotaVacancy));
 
         SearchRequest request = new SearchRequest();
         request.setCountries(Set.of("belarus"));
         List<Vacancy> result = service.searchWithUserSettings(request, "token", 10L);
 
-        verify(rabotaByApiService).searchVacancies(any(), eq("token"));
+        verify(rabotaByApiService).searchVacancies(any(), eq(10L));
         assertEquals(1, result.size());
         assertEquals("rabota-by-1", result.get(0).getId());
     }
 
+    @Test
+    void vacancySmartServiceSkipsSlowSourceAndKeepsOthers() {
+        UserSettingsService settingsService = mock(UserSettingsService.class);
+        HHruApiService apiService = mock(HHruApiService.class);
+        HabrCareerApiService habrApiService = mock(HabrCareerApiService.class);
+        GetmatchCareerApiService getmatchApiService = mock(GetmatchCareerApiService.class);
+        SuperjobCareerApiService superjobApiService = mock(SuperjobCareerApiService.class);
+        RabotaByApiService rabotaByApiService = mock(RabotaByApiService.class);
+        VacancyService vacancyService = mock(VacancyService.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        VacancySmartService service = new VacancySmartService(
+                settingsService,
+                apiService,
+                habrApiService,
+                getmatchApiService,
+                superjobApiService,
+                rabotaByApiService,
+                vacancyService,
+                new VacancySearchFanOut(meterRegistry, 5000, Map.of("habr", 100L), 4, 100),
+                new VacancyFilterCache(100, 10)
+        );
+
+        UserSettings settings = new UserSettings(10L);
+        settings.setSearchQuery("java, kotlin");
+        settings.setWorkTypes(Set.of());
+        settings.setTelegramNotify(false);
+        when(settingsService.getSettings("token")).thenReturn(settings);
+
+        Vacancy shared = new Vacancy();
+        shared.setId("hh-1");
+        shared.setTitle("Java Developer");
+        Vacancy kotlin = new Vacancy();
+        kotlin.setId("hh-2");
+        kotlin.setTitle("Kotlin Developer");
+        when(apiService.searchVacancies(argThat(r -> r != null && "java".equals(r.getQuery())), eq(10L))).thenReturn(List.of(shared));
+        when(apiService.searchVacancies(argThat(r -> r != null && "kotlin".equals(r.getQuery())), eq(10L))).thenReturn(List.of(kotlin, shared));
+        when(habrApiService.searchVacancies(any(), eq(10L))).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return List.of();
+        });
+        when(getmatchApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(superjobApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+        when(rabotaByApiService.searchVacancies(any(), eq(10L))).thenReturn(List.of());
+
+        long startedAt = System.nanoTime();
+        List<Vacancy> result = service.searchWithUserSettings(new SearchRequest(), "token", 10L);
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        assertEquals(List.of("hh-1", "hh-2"), result.stream().map(Vacancy::getId).toList());
+        assertTrue(elapsedMs < 1500, "slow source must not hold up the search, took " + elapsedMs + " ms");
+        assertEquals(2.0, meterRegistry.get("vacancy.search.source.failures").tag("source", "habr").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    void vacancySearchFanOutStartsTimeoutWhenTaskRunsAndDropsStuckQueue() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VacancySearchFanOut fanOut = new VacancySearchFanOut(meterRegistry, 500, Map.of(), 1, 10);
+        try {
+            Vacancy vacancy = new Vacancy();
+            vacancy.setId("hh-1");
+            VacancySearchFanOut.SourceCall first = fanOut.submit("hh", () -> {
+                sleepQuietly(400);
+                return List.of();
+            });
+            // Вторая задача ждёт в очереди 400 мс: с отсчётом от постановки в очередь она бы не уложилась в 500 мс
+            VacancySearchFanOut.SourceCall queued = fanOut.submit("hh", () -> {
+                sleepQuietly(200);
+                return List.of(vacancy);
+            });
+            assertEquals(List.of(), fanOut.await(first));
+            assertEquals(List.of(vacancy), fanOut.await(queued));
+
+            // Поток занят вызовом, который не реагирует на прерывание, как чтение сокета
+            AtomicBoolean release = new AtomicBoolean();
+            AtomicBoolean stuckRan = new AtomicBoolean();
+            VacancySearchFanOut.SourceCall blocking = fanOut.submit("hh", () -> {
+                while (!release.get()) {
+                    sleepQuietly(10);
+                }
+                return List.of();
+            });
+            VacancySearchFanOut.SourceCall stuck = fanOut.submit("hh", () -> {
+                stuckRan.set(true);
+                return List.of(vacancy);
+            });
+            assertEquals(List.of(), fanOut.await(blocking));
+            assertEquals(List.of(), fanOut.await(stuck));
+            release.set(true);
+
+            VacancySearchFanOut.SourceCall next = fanOut.submit("hh", () -> List.of(vacancy));
+            assertEquals(List.of(vacancy), fanOut.await(next));
+            assertFalse(stuckRan.get());
+            assertEquals(1.0, meterRegistry.get("vacancy.search.source.failures").tag("reason", "timeout").counter().count());
+            assertEquals(1.0, meterRegistry.get("vacancy.search.source.failures").tag("reason", "queued").counter().count());
+        } finally {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    void vacancySmartServicePassesResolvedTelegramIdThroughFanOut() {
+        UserSettingsService settingsService = mock(UserSettingsService.class);
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        HHruApiService apiService = new HHruApiService(restTemplate);
+        ReflectionTestUtils.setField(apiService, "baseUrl", "http://example");
+        ReflectionTestUtils.setField(apiService, "maxPages", 1);
+        HabrCareerApiService habrApiService = mock(HabrCareerApiService.class);
+        GetmatchCareerApiService getmatchApiService = mock(GetmatchCareerApiService.class);
+        SuperjobCareerApiService superjobApiService = mock(SuperjobCareerApiService.class);
+        RabotaByApiService rabotaByApiService = mock(RabotaByApiService.class);
+        VacancyService vacancyService = mock(VacancyService.class);
+
+        VacancySmartService service = new VacancySmartService(
+                settingsService,
+                apiService,
+                habrApiService,
+                getmatchApiService,
+                superjobApiService,
+                rabotaByApiService,
+                vacancyService,
+                new VacancySearchFanOut(new SimpleMeterRegistry(), 5000, Map.of(), 4, 100),
+                new VacancyFilterCache(100, 10)
+        );
+
+        UserSettings settings = new UserSettings(10L);
+        settings.setSearchQuery("java");
+        settings.setWorkTypes(Set.of());
+        settings.setTelegramNotify(false);
+        when(settingsService.getSettings("token")).thenReturn(settings);
+        when(habrApiService.searchVacancies(any(), any())).thenReturn(List.of());
+        when(getmatchApiService.searchVacancies(any(), any())).thenReturn(List.of());
+        when(superjobApiService.searchVacancies(any(), any())).thenReturn(List.of());
+        when(rabotaByApiService.searchVacancies(any(), any())).thenReturn(List.of());
+
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", "1");
+        item.put("name", "Java Developer");
+        item.put("alternate_url", "http://hh");
+        item.put("published_at", LocalDateTime.now().toString());
+        List<String> sourceThreads = Collections.synchronizedList(new ArrayList<>());
+        when(restTemplate.exchange(any(java.net.URI.class), eq(HttpMethod.GET), any(), eq(Map.class))).thenAnswer(invocation -> {
+            sourceThreads.add(Thread.currentThread().getName());
+            return ResponseEntity.ok(Map.of("items", List.of(item), "pages", 1));
+        });
+
+        // telegramId определён фильтром в потоке запроса, источник же выполняется в пуле
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.addHeader("Authorization", "Bearer token");
+        httpRequest.setAttribute("telegramId", 10L);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(httpRequest));
+        List<Vacancy> result;
+        try {
+            result = service.searchWithUserSettings(new SearchRequest(), "token", 10L);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertEquals(1, result.size());
+        assertEquals(10L, result.get(0).getUserTelegramId());
+        assertEquals(1, sourceThreads.size());
+        assertTrue(sourceThreads.get(0).startsWith("vacancy-source-hh-"), sourceThreads.get(0));
+        verify(habrApiService).searchVacancies(any(), eq(10L));
+    }
+
     @Test
     void vacancyAutoUpdaterSkipsWhenTokenMissing() {
         UserSettingsRepository settingsRepository = mock(UserSettingsRepository.class);
         VacancySmartService smartService = mock(VacancySmartService.class);
         AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
 
-        VacancyAutoUpdater updater = new VacancyAutoUpdater(settingsRepository, smartService, authServiceClient);
+        VacancyAutoUpdater updater = new VacancyAutoUpdater(settingsRepository, smartService, authServiceClient, new SimpleMeterRegistry());
         ReflectionTestUtils.setField(updater, "workerCount", 1);
         updater.startWorkers();
 
@@ -173,7 +399,7 @@ class VacancyBackendServiceTest {
         UserSettings s2 = new UserSettings(2L);
         s2.setAutoUpdateEnabled(true);
         s2.setNextRunAt(LocalDateTime.now().minusMinutes(1));
-        when(settingsRepository.findDueUsers(any(), any(Pageable.class))).thenReturn(List.of(s1, s2));
+        when(settingsRepository.claimDueUsers(any(), any(), any(), anyInt())).thenReturn(List.of(1L, 2L));
         when(settingsRepository.findByTelegramId(1L)).thenReturn(Optional.of(s1));
         when(settingsRepository.findByTelegramId(2L)).thenReturn(Optional.of(s2));
 
@@ -185,27 +411,226 @@ class VacancyBackendServiceTest {
         active.setActive(true);
         when(authServiceClient.getSubscriptionStatus("t")).thenReturn(active);
 
-        when(smartService.searchWithUserSettings(any(), eq("t"), eq(1L))).thenReturn(List.of());
+        when(smartService.searchShared(any(), eq("t"), eq(1L))).thenReturn(List.of());
 
         updater.updateAllUsers();
 
-        verify(smartService, timeout(1000).times(1)).searchWithUserSettings(any(), eq("t"), eq(1L));
-        verify(smartService, after(1000).never()).searchWithUserSettings(any(), eq("t"), eq(2L));
+        verify(smartService, timeout(1000).times(1)).deliverSharedResults(any(), eq("t"), eq(1L), anyList());
+        verify(smartService, after(1000).never()).deliverSharedResults(any(), any(), eq(2L), anyList());
+        verify(smartService, times(1)).searchShared(any(), any(), any());
         updater.stopWorkers();
     }
 
     @Test
-    void hhruApiServiceSearchVacanciesMapsResponse() {
-        RestTemplate restTemplate = mock(RestTemplate.class);
+    void vacancyAutoUpdaterUsesBatchedTokensAndStatuses() {
+        UserSettingsRepository settingsRepository = mock(UserSettingsRepository.class);
+        VacancySmartService smartService = mock(VacancySmartService.class);
         AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
-        HHruApiService service = new HHruApiService(restTemplate, authServiceClient);
+        VacancyAutoUpdater updater = new VacancyAutoUpdater(settingsRepository, smartService, authServiceClient, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(updater, "workerCount", 1);
 
-        ReflectionTestUtils.setField(service, "baseUrl", "http://example");
-        ReflectionTestUtils.setField(service, "maxPages", 1);
+        UserSettings s1 = new UserSettings(1L);
+        s1.setAutoUpdateEnabled(true);
+        s1.setNextRunAt(LocalDateTime.now().minusMinutes(1));
+        when(settingsRepository.claimDueUsers(any(), any(), any(), anyInt())).thenReturn(List.of(1L));
+        when(settingsRepository.findByTelegramId(1L)).thenReturn(Optional.of(s1));
+
+        SubscriptionStatusResponse active = new SubscriptionStatusResponse();
+        active.setActive(true);
+        SubscriptionStatusBatchItem item = new SubscriptionStatusBatchItem();
+        item.setTelegramId(1L);
+        item.setToken("batch-token");
+        item.setStatus(active);
+        when(authServiceClient.isBatchStatusEnabled()).thenReturn(true);
+        when(authServiceClient.getSubscriptionStatusBatch(anyList())).thenReturn(Map.of(1L, item));
+        when(smartService.searchShared(any(), eq("batch-token"), eq(1L))).thenReturn(List.of());
+
+        updater.updateAllUsers();
+        updater.startWorkers();
+
+        verify(smartService, timeout(1000).times(1)).deliverSharedResults(any(), eq("batch-token"), eq(1L), anyList());
+        verify(authServiceClient, never()).getTokenByTelegramId(any());
+        verify(authServiceClient, never()).getSubscriptionStatus(any());
+        verify(settingsRepository, timeout(1000)).completeLease(eq(1L), any(), any(), any());
+        verify(settingsRepository, never()).save(any(UserSettings.class));
+        updater.stopWorkers();
+    }
+
+    @Test
+    void vacancyAutoUpdaterRunsOneSearchPerDistinctCriteria() {
+        UserSettingsRepository settingsRepository = mock(UserSettingsRepository.class);
+        VacancySmartService smartService = mock(VacancySmartService.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VacancyAutoUpdater updater = new VacancyAutoUpdater(settingsRepository, smartService, authServiceClient, meterRegistry);
+        ReflectionTestUtils.setField(updater, "workerCount", 1);
+        ReflectionTestUtils.setField(updater, "batchSize", 10);
+
+        UserSettings s1 = new UserSettings(1L);
+        s1.setAutoUpdateEnabled(true);
+        s1.setSearchQuery("Java, Kotlin");
+        s1.setExcludeKeywords("senior");
+        UserSettings s2 = new UserSettings(2L);
+        s2.setAutoUpdateEnabled(true);
+        s2.setSearchQuery("kotlin,  java");
+        s2.setExcludeCompanies("Acme");
+        UserSettings s3 = new UserSettings(3L);
+        s3.setAutoUpdateEnabled(true);
+        s3.setSearchQuery("Go");
+        when(settingsRepository.claimDueUsers(any(), any(), any(), anyInt())).thenReturn(List.of(1L, 2L, 3L));
+        when(settingsRepository.findByTelegramId(1L)).thenReturn(Optional.of(s1));
+        when(settingsRepository.findByTelegramId(2L)).thenReturn(Optional.of(s2));
+        when(settingsRepository.findByTelegramId(3L)).thenReturn(Optional.of(s3));
+
+        SubscriptionStatusResponse active = new SubscriptionStatusResponse();
+        active.setActive(true);
+        Map<Long, SubscriptionStatusBatchItem> items = new HashMap<>();
+        for (long id = 1; id <= 3; id++) {
+            SubscriptionStatusBatchItem item = new SubscriptionStatusBatchItem();
+            item.setTelegramId(id);
+            item.setToken("token-" + id);
+            item.setStatus(active);
+            items.put(id, item);
+        }
+        when(authServiceClient.isBatchStatusEnabled()).thenReturn(true);
+        when(authServiceClient.getSubscriptionStatusBatch(anyList())).thenReturn(items);
+        List<Vacancy> shared = List.of(new Vacancy("v1", 1L, "Java developer"));
+        when(smartService.searchShared(any(), any(), any())).thenReturn(shared);
+
+        updater.updateAllUsers();
+        updater.startWorkers();
+
+        verify(smartService, timeout(1000)).deliverSharedResults(any(), eq("token-3"), eq(3L), anyList());
+        verify(smartService, times(2)).searchShared(any(), any(), any());
+        verify(smartService).deliverSharedResults(
+                argThat(request -> "senior".equals(request.getExcludeKeywords())), eq("token-1"), eq(1L), eq(shared));
+        verify(smartService).deliverSharedResults(
+                argThat(request -> "Acme".equals(request.getExcludeCompanies())), eq("token-2"), eq(2L), eq(shared));
+        assertEquals(3.0, meterRegistry.counter("vacancy.auto_update.searches", "kind", "planned").count());
+        assertEquals(2.0, meterRegistry.counter("vacancy.auto_update.searches", "kind", "executed").count());
+        updater.stopWorkers();
+    }
+
+    @Test
+    void vacancyAutoUpdaterReleasesDeliveredUsersAndRenewsLeaseOfTheRest() throws Exception {
+        UserSettingsRepository settingsRepository = mock(UserSettingsRepository.class);
+        VacancySmartService smartService = mock(VacancySmartService.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        VacancyAutoUpdater updater = new VacancyAutoUpdater(settingsRepository, smartService, authServiceClient, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(updater, "workerCount", 1);
+        ReflectionTestUtils.setField(updater, "batchSize", 10);
+
+        UserSettings s1 = new UserSettings(1L);
+        s1.setAutoUpdateEnabled(true);
+        s1.setSearchQuery("Java");
+        UserSettings s2 = new UserSettings(2L);
+        s2.setAutoUpdateEnabled(true);
+        s2.setSearchQuery("Go");
+        when(settingsRepository.claimDueUsers(any(), any(), any(), anyInt())).thenReturn(List.of(1L, 2L));
+        when(settingsRepository.findByTelegramId(1L)).thenReturn(Optional.of(s1));
+        when(settingsRepository.findByTelegramId(2L)).thenReturn(Optional.of(s2));
+        when(settingsRepository.completeLease(any(), any(), any(), any())).thenReturn(1);
+
+        SubscriptionStatusResponse active = new SubscriptionStatusResponse();
+        active.setActive(true);
+        Map<Long, SubscriptionStatusBatchItem> items = new HashMap<>();
+        for (long id = 1; id <= 2; id++) {
+            SubscriptionStatusBatchItem item = new SubscriptionStatusBatchItem();
+            item.setTelegramId(id);
+            item.setToken("token-" + id);
+            item.setStatus(active);
+            items.put(id, item);
+        }
+        when(authServiceClient.isBatchStatusEnabled()).thenReturn(true);
+        when(authServiceClient.getSubscriptionStatusBatch(anyList())).thenReturn(items);
+
+        CountDownLatch secondSearchStarted = new CountDownLatch(1);
+        CountDownLatch releaseSecondSearch = new CountDownLatch(1);
+        when(smartService.searchShared(any(), eq("token-1"), eq(1L))).thenReturn(List.of());
+        when(smartService.searchShared(any(), eq("token-2"), eq(2L))).thenAnswer(invocation -> {
+            secondSearchStarted.countDown();
+            releaseSecondSearch.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        updater.updateAllUsers();
+        updater.startWorkers();
+        try {
+            assertTrue(secondSearchStarted.await(5, TimeUnit.SECONDS));
+            // Первый пользователь уже доставлен — его аренда снята до окончания всей пачки
+            verify(settingsRepository).completeLease(eq(1L), any(), any(), any());
+            verify(settingsRepository, never()).completeLease(eq(2L), any(), any(), any());
+
+            updater.updateAllUsers();
+            verify(settingsRepository).renewLease(eq(List.of(2L)), any(), any());
+        } finally {
+            releaseSecondSearch.countDown();
+        }
+        verify(settingsRepository, timeout(1000)).completeLease(eq(2L), any(), any(), any());
+        updater.stopWorkers();
+    }
 
+    @Test
+    void keywordMatcherAgreesWithNaiveContainsAndFoldsCyrillicCase() {
+        String excludeKeywords = "Senior, lead,1С, Битрикс, he, she, hers, his, ТИМЛИД, , стажёр";
+        KeywordMatcher matcher = KeywordMatcher.fromCsv(excludeKeywords);
+        List<String> patterns = Arrays.stream(excludeKeywords.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .map(value -> value.toLowerCase(Locale.ROOT))
+                .toList();
+        List<String> titles = List.of(
+                "Senior Java Developer", "Python разработчик", "Тимлид backend", "Программист 1с",
+                "ushers", "Junior QA", "Разработчик БИТРИКС24", "Стажёр-аналитик", "Go developer", "");
+        for (String title : titles) {
+            String normalized = title.toLowerCase(Locale.ROOT);
+            boolean expected = patterns.stream().anyMatch(normalized::contains);
+            assertEquals(expected, matcher.matches(title), title);
+        }
+        assertFalse(matcher.matches(null));
+        assertTrue(KeywordMatcher.fromCsv(" , ").isEmpty());
+    }
+
+    @Test
+    void vacancyFilterCacheReusesCompiledFilterUntilSettingsChange() {
+        VacancyFilterCache cache = new VacancyFilterCache(100, 10);
+        VacancyFilter filter = cache.forUser(1L, "senior", "Acme", Set.of("remote"));
+        assertSame(filter, cache.forUser(1L, "senior", "Acme", Set.of("remote")));
+        assertNotSame(filter, cache.forUser(1L, "senior, lead", "Acme", Set.of("remote")));
+
+        Vacancy remote = new Vacancy("1", 1L, "Java developer");
+        remote.setEmployer("Good Corp");
+        remote.setSchedule("Удалённая работа");
+        Vacancy office = new Vacancy("2", 1L, "Java developer");
+        office.setSchedule("Полный день, офис");
+        Vacancy excluded = new Vacancy("3", 1L, "Lead Java developer");
+        excluded.setSchedule("удаленно");
+        assertEquals(List.of(remote), cache.forUser(1L, "senior, lead", "Acme", Set.of("remote"))
+                .apply(List.of(remote, office, excluded)));
+
+        UserSettingsRepository settingsRepository = mock(UserSettingsRepository.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        UserSettingsService service = new UserSettingsService(settingsRepository, authServiceClient,
+                mock(TelegramNotificationService.class), mock(VacancyRepository.class), null, cache);
         ProfileResponse profile = new ProfileResponse();
-        profile.setTelegramId(99L);
+        profile.setTelegramId(1L);
         when(authServiceClient.getCurrentUserProfile("token")).thenReturn(profile);
+        when(settingsRepository.findByTelegramId(1L)).thenReturn(Optional.of(new UserSettings(1L)));
+        when(settingsRepository.save(any(UserSettings.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        VacancyFilter beforeUpdate = cache.forUser(1L, "x", null, Set.of());
+
+        service.updateSettings("token", new UserSettings());
+
+        assertNotSame(beforeUpdate, cache.forUser(1L, "x", null, Set.of()));
+    }
+
+    @Test
+    void hhruApiServiceSearchVacanciesMapsResponse() {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        HHruApiService service = new HHruApiService(restTemplate);
+
+        ReflectionTestUtils.setField(service, "baseUrl", "http://example");
+        ReflectionTestUtils.setField(service, "maxPages", 1);
 
         Map<String, Object> item = new HashMap<>();
         item.put("id", "1");
@@ -228,33 +653,160 @@ class VacancyBackendServiceTest {
         request.setQuery("dev");
         request.setDays(1);
 
-        List<Vacancy> vacancies = service.searchVacancies(request, "token");
+        List<Vacancy> vacancies = service.searchVacancies(request, 99L);
         assertEquals(1, vacancies.size());
         assertEquals("1", vacancies.get(0).getId());
         assertEquals(99L, vacancies.get(0).getUserTelegramId());
     }
 
     @Test
-    void telegramNotificationServiceMarksSent() {
+    void vacancyServiceQueuesUnsentVacanciesForTelegramInSameTransaction() {
+        VacancyRepository vacancyRepository = mock(VacancyRepository.class);
+        TelegramOutboxRepository outboxRepository = mock(TelegramOutboxRepository.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        VacancyService service = new VacancyService(vacancyRepository, mock(UserSettingsRepository.class),
+                authServiceClient, mock(VacancyStreamService.class), outboxRepository);
+
+        ProfileResponse profile = new ProfileResponse();
+        profile.setTelegramId(10L);
+        when(authServiceClient.getCurrentUserProfile("token")).thenReturn(profile);
+
+        service.saveVacancies("token", List.of(), true);
+        service.saveVacancies("token", List.of(), false);
+
+        verify(outboxRepository, times(1)).enqueueUnsent(eq(10L), any());
+    }
+
+    @Test
+    void telegramOutboxDispatcherSendsDigestsAndMarksSentWithOutboxDelete() {
+        TelegramOutboxRepository outboxRepository = mock(TelegramOutboxRepository.class);
+        VacancyRepository vacancyRepository = mock(VacancyRepository.class);
         AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        TelegramNotificationService telegramService = spy(new TelegramNotificationService(authServiceClient));
+        TelegramOutboxDispatcher dispatcher = new TelegramOutboxDispatcher(outboxRepository, vacancyRepository,
+                authServiceClient, telegramService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), false, 1000, 50, 2, 1000, 0, 3, 30, 3600, 5, 60);
+
+        List<TelegramOutboxEntry> entries = new ArrayList<>();
+        List<Vacancy> vacancies = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            TelegramOutboxEntry entry = new TelegramOutboxEntry();
+            entry.setId((long) i);
+            entry.setUserTelegramId(1L);
+            entry.setVacancyId("v" + i);
+            entries.add(entry);
+            Vacancy vacancy = new Vacancy();
+            vacancy.setId("v" + i);
+            vacancy.setUserTelegramId(1L);
+            vacancy.setTitle("title " + i);
+            vacancy.setPublishedAt(LocalDateTime.now().minusHours(i));
+            vacancy.setSentToTelegram(i == 3);
+            vacancies.add(vacancy);
+        }
+        when(outboxRepository.claimDue(any(), anyString(), any(), eq(50))).thenReturn(entries);
+        when(vacancyRepository.findByUserTelegramIdAndIdIn(eq(1L), anyList())).thenReturn(vacancies);
+        TokenResponse token = new TokenResponse();
+        token.setToken("token");
+        when(authServiceClient.getTokenByTelegramId(1L)).thenReturn(token);
+
+        assertEquals(1, dispatcher.dispatchOnce());
+
+        // Уже отправленная вакансия убирается из очереди без повторной отправки
+        verify(outboxRepository).deleteClaimed(eq(List.of(3L)), anyString());
+        verify(authServiceClient, times(1)).sendTelegramNotification(eq("token"), anyString());
+        verify(vacancyRepository).markAsSentToTelegram(eq(1L), eq(List.of("v2", "v1")));
+        verify(outboxRepository).deleteClaimed(eq(List.of(2L, 1L)), anyString());
+    }
+
+    @Test
+    void telegramOutboxDispatcherRenewsLeaseBetweenDigests() {
+        TelegramOutboxRepository outboxRepository = mock(TelegramOutboxRepository.class);
         VacancyRepository vacancyRepository = mock(VacancyRepository.class);
-        TelegramNotificationService service = new TelegramNotificationService(authServiceClient, vacancyRepository);
-        ReflectionTestUtils.setField(service, "maxVacanciesPerMessage", 10);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        // Интервал продления 0: аренда продлевается перед каждым дайджестом
+        TelegramOutboxDispatcher dispatcher = new TelegramOutboxDispatcher(outboxRepository, vacancyRepository,
+                authServiceClient, new TelegramNotificationService(authServiceClient),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), false, 1000, 50, 1, 1000, 0, 3, 30, 3600, 5, 0);
+
+        List<TelegramOutboxEntry> entries = new ArrayList<>();
+        List<Vacancy> vacancies = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            TelegramOutboxEntry entry = new TelegramOutboxEntry();
+            entry.setId((long) i);
+            entry.setUserTelegramId(1L);
+            entry.setVacancyId("v" + i);
+            entries.add(entry);
+            Vacancy vacancy = new Vacancy();
+            vacancy.setId("v" + i);
+            vacancy.setUserTelegramId(1L);
+            vacancy.setTitle("title " + i);
+            vacancy.setPublishedAt(LocalDateTime.now().minusHours(10 - i));
+            vacancy.setSentToTelegram(false);
+            vacancies.add(vacancy);
+        }
+        when(outboxRepository.claimDue(any(), anyString(), any(), eq(50))).thenReturn(entries);
+        when(vacancyRepository.findByUserTelegramIdAndIdIn(eq(1L), anyList())).thenReturn(vacancies);
+        when(outboxRepository.renewLease(anyList(), anyString(), any())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+        TokenResponse token = new TokenResponse();
+        token.setToken("token");
+        when(authServiceClient.getTokenByTelegramId(1L)).thenReturn(token);
+
+        assertEquals(1, dispatcher.dispatchOnce());
+
+        InOrder inOrder = inOrder(outboxRepository);
+        for (List<Long> remaining : List.of(List.of(1L, 2L, 3L), List.of(2L, 3L), List.of(3L))) {
+            inOrder.verify(outboxRepository).renewLease(eq(remaining), anyString(),
+                    argThat(leaseUntil -> leaseUntil.isAfter(LocalDateTime.now().plusMinutes(4))));
+            inOrder.verify(outboxRepository).deleteClaimed(eq(List.of(remaining.get(0))), anyString());
+        }
+        verify(authServiceClient, times(3)).sendTelegramNotification(eq("token"), anyString());
+    }
 
+    @Test
+    void telegramOutboxDispatcherReschedulesFailedDigest() {
+        TelegramOutboxRepository outboxRepository = mock(TelegramOutboxRepository.class);
+        VacancyRepository vacancyRepository = mock(VacancyRepository.class);
+        AuthServiceClient authServiceClient = mock(AuthServiceClient.class);
+        TelegramOutboxDispatcher dispatcher = new TelegramOutboxDispatcher(outboxRepository, vacancyRepository,
+                authServiceClient, new TelegramNotificationService(authServiceClient),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), false, 1000, 50, 10, 1000, 0, 3, 30, 3600, 5, 60);
+
+        TelegramOutboxEntry entry = new TelegramOutboxEntry();
+        entry.setId(7L);
+        entry.setUserTelegramId(1L);
+        entry.setVacancyId("v1");
         Vacancy vacancy = new Vacancy();
         vacancy.setId("v1");
         vacancy.setUserTelegramId(1L);
         vacancy.setTitle("title");
-        vacancy.setPublishedAt(LocalDateTime.now());
         vacancy.setSentToTelegram(false);
+        when(outboxRepository.claimDue(any(), anyString(), any(), anyInt())).thenReturn(List.of(entry));
+        when(vacancyRepository.findByUserTelegramIdAndIdIn(eq(1L), anyList())).thenReturn(List.of(vacancy));
+        TokenResponse token = new TokenResponse();
+        token.setToken("token");
+        when(authServiceClient.getTokenByTelegramId(1L)).thenReturn(token);
+        doThrow(new RuntimeException("429")).when(authServiceClient).sendTelegramNotification(eq("token"), anyString());
+
+        dispatcher.dispatchOnce();
+
+        verify(outboxRepository).reschedule(eq(List.of(7L)), anyString(),
+                argThat(next -> next.isAfter(LocalDateTime.now().plusSeconds(29))), anyString());
+        verify(vacancyRepository, never()).markAsSentToTelegram(anyLong(), anyList());
+    }
 
-        when(vacancyRepository.findByUserTelegramIdAndSentToTelegramFalseOrderByPublishedAtAsc(1L))
-                .thenReturn(List.of(vacancy));
-
-        service.sendAllUnsentVacanciesToTelegram("token", 1L);
-
-        verify(authServiceClient, atLeastOnce()).sendTelegramNotification(eq("token"), anyString());
-        verify(vacancyRepository).markAsSentToTelegram(eq(1L), eq(List.of("v1")));
+    @Test
+    void telegramRateLimiterEnforcesGlobalAndPerChatIntervals() {
+        TelegramRateLimiter limiter = new TelegramRateLimiter(10, 1000);
+
+        assertEquals(0, limiter.delayMillis(1L, 0));
+        limiter.record(1L, 0);
+        assertEquals(100, limiter.delayMillis(2L, 0));
+        assertEquals(1000, limiter.delayMillis(1L, 0));
+        assertEquals(0, limiter.delayMillis(2L, 100));
+        assertEquals(0, limiter.delayMillis(1L, 1000));
     }
 
     @Test
@@ -330,4 +882,139 @@ class VacancyBackendServiceTest {
 
         assertFalse(service.isSubscriptionActive("token"));
     }
+
+    @Test
+    void localJwtVerifierAcceptsCurrentAndRotatedKeys() {
+        String current = "currentSecretKeyThatIsAtLeast32CharactersLong";
+        String previous = "previousSecretKeyThatIsAtLeast32CharactersLong";
+        LocalJwtVerifier verifier = new LocalJwtVerifier(true, current + "," + previous, 30);
+
+        assertEquals(10L, verifier.verify(signedToken(current, 10L)));
+        assertEquals(11L, verifier.verify(signedToken(previous, 11L)));
+        assertThrows(JwtException.class, () -> verifier.verify(signedToken("unknownSecretKeyThatIsAtLeast32CharactersLong", 12L)));
+    }
+
+    @Test
+    void vacancyBulkRepositoryBindsRowsInGlobalKeyOrderAcrossChunks() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        List<String> catalogKeys = new ArrayList<>();
+        List<Integer> catalogStatementRows = new ArrayList<>();
+        when(jdbcTemplate.update(startsWith("INSERT INTO vacancy_catalog"), any(PreparedStatementSetter.class))).thenAnswer(invocation -> {
+            Map<Integer, String> binds = new TreeMap<>();
+            PreparedStatement ps = mock(PreparedStatement.class);
+            doAnswer(call -> binds.put(call.getArgument(0), call.getArgument(1))).when(ps).setString(anyInt(), any());
+            invocation.<PreparedStatementSetter>getArgument(1).setValues(ps);
+            int rows = binds.size() / 8;
+            for (int row = 0; row < rows; row++) {
+                catalogKeys.add(binds.get(row * 10 + 1) + ":" + binds.get(row * 10 + 2));
+            }
+            catalogStatementRows.add(rows);
+            return rows;
+        });
+        when(jdbcTemplate.query(startsWith("INSERT INTO user_vacancies"), any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenReturn(List.of());
+        VacancyBulkRepositoryImpl repository = new VacancyBulkRepositoryImpl(jdbcTemplate);
+
+        // Обратный порядок и два источника вперемешку, строк больше одного чанка
+        List<Vacancy> vacancies = new ArrayList<>();
+        for (int i = 599; i >= 0; i--) {
+            Vacancy vacancy = new Vacancy(String.format("v%04d", i), 7L, "Java");
+            vacancy.setSource(i % 2 == 0 ? "hh" : "habr");
+            vacancies.add(vacancy);
+        }
+        repository.insertIfAbsent(vacancies);
+
+        List<String> expected = vacancies.stream()
+                .map(vacancy -> vacancy.getSource() + ":" + vacancy.getId())
+                .sorted()
+                .toList();
+        assertEquals(List.of(500, 100), catalogStatementRows);
+        assertEquals(expected, catalogKeys);
+    }
+
+    @Test
+    void vacancyStreamServicePublishesToOtherNodesAndSkipsRemoteEventsWithoutSubscribers() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VacancyRepository vacancyRepository = mock(VacancyRepository.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        VacancyStreamService service = new VacancyStreamService(meterRegistry,
+                new ObjectMapper(), vacancyRepository, jdbcTemplate, 4, 100, 1, 0, true);
+        try {
+            service.subscribe(7L);
+            assertEquals(1.0, meterRegistry.get("vacancy.sse.subscribers").gauge().value());
+
+            Vacancy vacancy = new Vacancy();
+            vacancy.setId("v-1");
+            vacancy.setTitle("Java Developer");
+            vacancy.setUserTelegramId(7L);
+            service.emitNewVacancies(7L, List.of(vacancy));
+
+            verify(jdbcTemplate).queryForObject(eq("SELECT pg_notify(?, ?)"), eq(Object.class),
+                    eq(VacancyStreamService.NOTIFY_CHANNEL), argThat(payload -> payload.toString().contains("\"v-1\"")));
+
+            service.deliverFromNode("other-node", 8L, List.of("v-2"));
+            verify(vacancyRepository, never()).findByUserTelegramIdAndIdIn(any(), any());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void vacancyStreamServiceSplitsNotifyPayloadByBytesAndPropagatesFailures() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        VacancyStreamService service = new VacancyStreamService(new SimpleMeterRegistry(),
+                objectMapper, mock(VacancyRepository.class), jdbcTemplate, 4, 100, 1, 0, true);
+        try {
+            List<String> payloads = new ArrayList<>();
+            when(jdbcTemplate.queryForObject(eq("SELECT pg_notify(?, ?)"), eq(Object.class),
+                    eq(VacancyStreamService.NOTIFY_CHANNEL), anyString())).thenAnswer(invocation -> {
+                payloads.add(invocation.getArgument(3));
+                return null;
+            });
+
+            // Кириллица занимает по два байта: по числу id пачку уже не ограничить
+            List<Vacancy> vacancies = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                Vacancy vacancy = new Vacancy();
+                vacancy.setId("вакансия-" + "я".repeat(50) + "-" + i);
+                vacancies.add(vacancy);
+            }
+            service.emitNewVacancies(7L, vacancies);
+
+            assertTrue(payloads.size() > 1);
+            List<String> published = new ArrayList<>();
+            for (String payload : payloads) {
+                assertTrue(payload.getBytes(StandardCharsets.UTF_8).length < 8000, "payload is too long for NOTIFY");
+                published.addAll(objectMapper.readValue(payload, VacancyStreamService.NodeEvent.class).ids());
+            }
+            assertEquals(vacancies.stream().map(Vacancy::getId).toList(), published);
+
+            // Ошибка NOTIFY прерывает транзакцию сохранения, поэтому она не глотается
+            when(jdbcTemplate.queryForObject(eq("SELECT pg_notify(?, ?)"), eq(Object.class),
+                    eq(VacancyStreamService.NOTIFY_CHANNEL), anyString()))
+                    .thenThrow(new DataAccessResourceFailureException("connection lost"));
+            assertThrows(DataAccessResourceFailureException.class,
+                    () -> service.emitNewVacancies(7L, vacancies.subList(0, 1)));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long left;
+        while ((left = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+
+    private static String signedToken(String secret, Long telegramId) {
+        return Jwts.builder()
+                .setSubject(telegramId.toString())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
 }